@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Injects latency (uniformly distributed between a min and max) and errors (with a fixed probability) into a stub
+ **/
+public class FaultInjector {
+    private final long latencyMinMillis;
+    private final long latencyMaxMillis;
+    private final double errorRate;
+
+    /**
+     * FaultInjector constructor
+     *
+     * @param latencyMinMillis the minimum injected latency
+     * @param latencyMaxMillis the maximum injected latency
+     * @param errorRate probability (0.0 - 1.0) that a call fails
+     **/
+    public FaultInjector(final long latencyMinMillis, final long latencyMaxMillis, final double errorRate) {
+        this.latencyMinMillis = latencyMinMillis;
+        this.latencyMaxMillis = Math.max(latencyMinMillis, latencyMaxMillis);
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @return a random latency in milliseconds within the configured bounds
+     **/
+    public long nextLatencyMillis() {
+        if (latencyMaxMillis == latencyMinMillis) {
+            return latencyMinMillis;
+        }
+
+        return ThreadLocalRandom.current().nextLong(latencyMinMillis, latencyMaxMillis + 1);
+    }
+
+    /**
+     * block the calling thread for a random latency
+     **/
+    public void sleep() {
+        final long latency = nextLatencyMillis();
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            }
+
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return true if this call should fail
+     **/
+    public boolean nextIsError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.loadtest;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP stand-in for the InfoBip send ("/sms/1/text/advanced"), logs ("/sms/1/logs") and delivery report
+ * callback APIs. Point the bridge at it by setting the SMS_GATEWAY_BASE_URL configuration to http://localhost:&lt;port&gt;
+ **/
+public class InfoBipServerStub {
+    private static final Logger logger = LoggerFactory.getLogger(InfoBipServerStub.class);
+
+    // InfoBip status groups, see https://dev.infobip.com/getting-started/response-status-and-error-codes
+    private static final int STATUS_GROUP_PENDING = 1;
+    private static final int STATUS_GROUP_UNDELIVERABLE = 2;
+    private static final int STATUS_GROUP_DELIVERED = 3;
+
+    private final int port;
+    private final FaultInjector submitFaultInjector;
+    private final FaultInjector deliveryFaultInjector;
+    private final LatencyTracker latencyTracker;
+    private final ConcurrentHashMap<String, Integer> statusGroups = new ConcurrentHashMap<>();
+    private final AtomicLong messageIdSequence = new AtomicLong();
+    private final JsonParser jsonParser = new JsonParser();
+    private ScheduledExecutorService callbackExecutor;
+    private ExecutorService requestExecutor;
+    private HttpServer server;
+
+    public InfoBipServerStub(final int port, final FaultInjector submitFaultInjector, final FaultInjector deliveryFaultInjector,
+            final LatencyTracker latencyTracker) {
+        this.port = port;
+        this.submitFaultInjector = submitFaultInjector;
+        this.deliveryFaultInjector = deliveryFaultInjector;
+        this.latencyTracker = latencyTracker;
+    }
+
+    /**
+     * start listening for requests
+     **/
+    public void start() throws IOException {
+        this.requestExecutor = Executors.newFixedThreadPool(32);
+        this.callbackExecutor = Executors.newScheduledThreadPool(16);
+        this.server = HttpServer.create(new InetSocketAddress(this.port), 512);
+        this.server.createContext("/sms/1/text/advanced", new SendHandler());
+        this.server.createContext("/sms/1/logs", new LogsHandler());
+        this.server.setExecutor(this.requestExecutor);
+        this.server.start();
+
+        logger.info("InfoBip API stub listening on port " + this.port);
+    }
+
+    /**
+     * stop the server and drop any pending delivery report callbacks
+     **/
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.callbackExecutor.shutdownNow();
+            this.requestExecutor.shutdownNow();
+        }
+    }
+
+    private class SendHandler implements HttpHandler {
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final JsonObject request = jsonParser.parse(new InputStreamReader(exchange.getRequestBody(),
+                    StandardCharsets.UTF_8)).getAsJsonObject();
+            final JsonArray messages = request.getAsJsonArray("messages");
+
+            submitFaultInjector.sleep();
+
+            if (submitFaultInjector.nextIsError()) {
+                for (int i = 0; i < messages.size(); i++) {
+                    latencyTracker.submitFailed();
+                }
+
+                write(exchange, 500, "{\"requestError\":{\"serviceException\":{\"messageId\":\"UNKNOWN\",\"text\":\"Injected error\"}}}");
+                return;
+            }
+
+            final JsonArray responseMessages = new JsonArray();
+
+            for (JsonElement element : messages) {
+                final JsonObject message = element.getAsJsonObject();
+                final String messageId = "lt-" + messageIdSequence.incrementAndGet();
+                final Long internalId = LatencyTracker.internalId(message.get("text").getAsString());
+                final String notifyUrl = message.has("notifyUrl") ? message.get("notifyUrl").getAsString() : null;
+
+                for (JsonElement destination : message.getAsJsonArray("destinations")) {
+                    final String to = destination.getAsJsonObject().get("to").getAsString();
+
+                    statusGroups.put(messageId, STATUS_GROUP_PENDING);
+                    latencyTracker.submitted(internalId);
+
+                    final JsonObject responseMessage = new JsonObject();
+                    responseMessage.addProperty("to", to);
+                    responseMessage.addProperty("messageId", messageId);
+                    responseMessage.add("status", status(STATUS_GROUP_PENDING));
+                    responseMessages.add(responseMessage);
+
+                    if (notifyUrl != null) {
+                        scheduleCallback(notifyUrl, messageId, to, internalId);
+                    }
+                }
+            }
+
+            final JsonObject response = new JsonObject();
+            response.add("messages", responseMessages);
+            write(exchange, 200, response.toString());
+        }
+    }
+
+    private class LogsHandler implements HttpHandler {
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            final JsonArray results = new JsonArray();
+            final String query = exchange.getRequestURI().getRawQuery();
+
+            if (query != null) {
+                for (String parameter : query.split("&")) {
+                    if (parameter.startsWith("messageId=")) {
+                        for (String messageId : URLDecoder.decode(parameter.substring(10), "UTF-8").split(",")) {
+                            final Integer statusGroup = statusGroups.get(messageId);
+
+                            if (statusGroup != null) {
+                                final JsonObject result = new JsonObject();
+                                result.addProperty("messageId", messageId);
+                                result.add("status", status(statusGroup));
+                                results.add(result);
+                            }
+                        }
+                    }
+                }
+            }
+
+            final JsonObject response = new JsonObject();
+            response.add("results", results);
+            write(exchange, 200, response.toString());
+        }
+    }
+
+    private void scheduleCallback(final String notifyUrl, final String messageId, final String to, final Long internalId) {
+        this.callbackExecutor.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                final boolean delivered = !deliveryFaultInjector.nextIsError();
+                final int statusGroup = delivered ? STATUS_GROUP_DELIVERED : STATUS_GROUP_UNDELIVERABLE;
+                statusGroups.put(messageId, statusGroup);
+
+                final JsonObject report = new JsonObject();
+                report.addProperty("messageId", messageId);
+                report.addProperty("to", to);
+                report.addProperty("smsCount", 1);
+                report.add("status", status(statusGroup));
+                final JsonArray results = new JsonArray();
+                results.add(report);
+                final JsonObject body = new JsonObject();
+                body.add("results", results);
+
+                try {
+                    final HttpURLConnection connection = (HttpURLConnection) new URL(notifyUrl).openConnection();
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/json");
+
+                    try (OutputStream outputStream = connection.getOutputStream()) {
+                        outputStream.write(body.toString().getBytes(StandardCharsets.UTF_8));
+                    }
+
+                    final int responseCode = connection.getResponseCode();
+                    connection.disconnect();
+
+                    if (responseCode / 100 == 2) {
+                        latencyTracker.deliveryReported(internalId, delivered);
+                    }
+
+                    else {
+                        logger.warn("Delivery report callback for " + messageId + " returned HTTP " + responseCode);
+                        latencyTracker.deliveryReportFailed();
+                    }
+                }
+
+                catch (IOException e) {
+                    logger.warn("Delivery report callback for " + messageId + " failed: " + e.getMessage());
+                    latencyTracker.deliveryReportFailed();
+                }
+            }
+        }, this.deliveryFaultInjector.nextLatencyMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static JsonObject status(final int statusGroup) {
+        final JsonObject status = new JsonObject();
+        status.addProperty("groupId", statusGroup);
+
+        switch (statusGroup) {
+            case STATUS_GROUP_PENDING:
+                status.addProperty("groupName", "PENDING");
+                status.addProperty("name", "PENDING_ENROUTE");
+            break;
+            case STATUS_GROUP_DELIVERED:
+                status.addProperty("groupName", "DELIVERED");
+                status.addProperty("name", "DELIVERED_TO_HANDSET");
+            break;
+            default:
+                status.addProperty("groupName", "UNDELIVERABLE");
+                status.addProperty("name", "UNDELIVERABLE_NOT_DELIVERED");
+            break;
+        }
+
+        return status;
+    }
+
+    private static void write(final HttpExchange exchange, final int statusCode, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.loadtest;
+
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Tracks every generated message through queue, submit and delivery report, correlating the stubs' view of a
+ * message with the generator's by the "LT&lt;internalId&gt;" token embedded in the message text
+ **/
+public class LatencyTracker {
+    private static final String TOKEN_PREFIX = "LT";
+
+    private final ConcurrentHashMap<Long, long[]> timestamps = new ConcurrentHashMap<>();
+    private final Histogram queueToSubmit = new ConcurrentHistogram(3);
+    private final Histogram submitToDeliveryReport = new ConcurrentHistogram(3);
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong queueErrors = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong submitErrors = new AtomicLong();
+    private final AtomicLong deliveryReports = new AtomicLong();
+    private final AtomicLong failedDeliveryReports = new AtomicLong();
+    private final AtomicLong deliveryReportErrors = new AtomicLong();
+    private final AtomicLong firstQueuedNanos = new AtomicLong();
+    private final AtomicLong lastQueuedNanos = new AtomicLong();
+    private final AtomicLong firstSubmittedNanos = new AtomicLong();
+    private final AtomicLong lastSubmittedNanos = new AtomicLong();
+    private final AtomicLong lastDeliveryReportNanos = new AtomicLong();
+
+    /**
+     * @param internalId the internal id of the generated message
+     * @return the message text carrying the correlation token
+     **/
+    public static String messageText(final long internalId) {
+        return "Load test message " + TOKEN_PREFIX + internalId;
+    }
+
+    /**
+     * @param messageText the text of a message seen by one of the stubs
+     * @return the internal id in the correlation token, null if the text carries no token
+     **/
+    public static Long internalId(final String messageText) {
+        if (messageText == null) {
+            return null;
+        }
+
+        final int start = messageText.lastIndexOf(TOKEN_PREFIX);
+
+        if (start < 0) {
+            return null;
+        }
+
+        int end = start + TOKEN_PREFIX.length();
+
+        while (end < messageText.length() && Character.isDigit(messageText.charAt(end))) {
+            end++;
+        }
+
+        if (end == start + TOKEN_PREFIX.length()) {
+            return null;
+        }
+
+        return Long.valueOf(messageText.substring(start + TOKEN_PREFIX.length(), end));
+    }
+
+    /**
+     * record that the bridge accepted a message on "/sms/queue"
+     **/
+    public void queued(final long internalId) {
+        final long now = System.nanoTime();
+
+        this.timestamps.put(internalId, new long[] { now, 0L });
+        this.queued.incrementAndGet();
+        this.firstQueuedNanos.compareAndSet(0L, now);
+        this.lastQueuedNanos.set(now);
+    }
+
+    /**
+     * record that "/sms/queue" rejected a batch of messages
+     **/
+    public void queueFailed(final int numberOfMessages) {
+        this.queueErrors.addAndGet(numberOfMessages);
+    }
+
+    /**
+     * record that a stub received the message from the bridge
+     **/
+    public void submitted(final Long internalId) {
+        final long now = System.nanoTime();
+        final long[] messageTimestamps = (internalId == null) ? null : this.timestamps.get(internalId);
+
+        if (messageTimestamps != null) {
+            messageTimestamps[1] = now;
+            this.queueToSubmit.recordValue(TimeUnit.NANOSECONDS.toMicros(now - messageTimestamps[0]));
+        }
+
+        this.submitted.incrementAndGet();
+        this.firstSubmittedNanos.compareAndSet(0L, now);
+        this.lastSubmittedNanos.set(now);
+    }
+
+    /**
+     * record that a stub rejected the message (error injection)
+     **/
+    public void submitFailed() {
+        this.submitErrors.incrementAndGet();
+    }
+
+    /**
+     * record that the bridge finished processing the delivery report of a message
+     *
+     * @param delivered false if the stub reported the message as undeliverable
+     **/
+    public void deliveryReported(final Long internalId, final boolean delivered) {
+        final long now = System.nanoTime();
+        final long[] messageTimestamps = (internalId == null) ? null : this.timestamps.get(internalId);
+
+        if (messageTimestamps != null && messageTimestamps[1] > 0L) {
+            this.submitToDeliveryReport.recordValue(TimeUnit.NANOSECONDS.toMicros(now - messageTimestamps[1]));
+        }
+
+        if (!delivered) {
+            this.failedDeliveryReports.incrementAndGet();
+        }
+
+        this.deliveryReports.incrementAndGet();
+        this.lastDeliveryReportNanos.set(now);
+    }
+
+    /**
+     * record that the bridge failed to process a delivery report
+     **/
+    public void deliveryReportFailed() {
+        this.deliveryReportErrors.incrementAndGet();
+    }
+
+    /**
+     * @return true when every queued message has either been rejected by a stub or received a delivery report
+     **/
+    public boolean isComplete(final int numberOfMessages) {
+        return this.queued.get() + this.queueErrors.get() >= numberOfMessages
+                && this.deliveryReports.get() + this.deliveryReportErrors.get() + this.submitErrors.get() >= this.queued.get();
+    }
+
+    /**
+     * print the load test results
+     **/
+    public void report(final PrintStream out) {
+        out.println("queued:                " + this.queued.get() + " (rejected: " + this.queueErrors.get() + ")");
+        out.println("submitted:             " + this.submitted.get() + " (injected errors: " + this.submitErrors.get() + ")");
+        out.println("delivery reports:      " + this.deliveryReports.get() + " (failed: " + this.failedDeliveryReports.get()
+                + ", rejected by bridge: " + this.deliveryReportErrors.get() + ")");
+        out.println("ingest TPS:            " + rate(this.queued.get(), this.firstQueuedNanos.get(), this.lastQueuedNanos.get()));
+        out.println("submit TPS:            " + rate(this.submitted.get(), this.firstSubmittedNanos.get(), this.lastSubmittedNanos.get()));
+        out.println("sustained TPS:         " + rate(this.deliveryReports.get(), this.firstQueuedNanos.get(),
+                this.lastDeliveryReportNanos.get()));
+        printHistogram(out, "queue-to-submit", this.queueToSubmit);
+        printHistogram(out, "submit-to-DLR", this.submitToDeliveryReport);
+    }
+
+    private static String rate(final long count, final long firstNanos, final long lastNanos) {
+        if (count == 0 || lastNanos <= firstNanos) {
+            return "n/a";
+        }
+
+        return String.format("%.1f", count / ((lastNanos - firstNanos) / 1e9));
+    }
+
+    private static void printHistogram(final PrintStream out, final String name, final Histogram histogram) {
+        out.println(name + " latency (ms), " + histogram.getTotalCount() + " samples:");
+
+        if (histogram.getTotalCount() == 0) {
+            return;
+        }
+
+        out.println(String.format("  p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                histogram.getValueAtPercentile(50.0) / 1000.0, histogram.getValueAtPercentile(90.0) / 1000.0,
+                histogram.getValueAtPercentile(99.0) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+        histogram.outputPercentileDistribution(out, 5, 1000.0);
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mifos.sms.gateway.infobip.SMPPServerSimulatorConfiguration;
+
+/**
+ * Load test settings, read from "name=value" program arguments with a fallback to "loadtest.name" system properties
+ **/
+public class LoadTestConfiguration {
+    private final String bridgeUrl;
+    private final String mifosTenantIdentifier;
+    private final String sourceAddress;
+    private final int numberOfMessages;
+    private final int batchSize;
+    private final int ratePerSecond;
+    private final int infoBipPort;
+    private final int smppPort;
+    private final long submitLatencyMinMillis;
+    private final long submitLatencyMaxMillis;
+    private final long deliveryLatencyMinMillis;
+    private final long deliveryLatencyMaxMillis;
+    private final double submitErrorRate;
+    private final double deliveryFailureRate;
+    private final long timeoutSeconds;
+
+    private LoadTestConfiguration(final Map<String, String> arguments) {
+        this.bridgeUrl = value(arguments, "bridgeUrl", "http://localhost:8080/sms-bridge/api/v1");
+        this.mifosTenantIdentifier = value(arguments, "tenant", "loadtest");
+        this.sourceAddress = value(arguments, "sourceAddress", "LoadTest");
+        this.numberOfMessages = Integer.parseInt(value(arguments, "messages", "10000"));
+        this.batchSize = Integer.parseInt(value(arguments, "batchSize", "100"));
+        this.ratePerSecond = Integer.parseInt(value(arguments, "rate", "0"));
+        this.infoBipPort = Integer.parseInt(value(arguments, "infoBipPort", "8057"));
+        this.smppPort = Integer.parseInt(value(arguments, "smppPort",
+                SMPPServerSimulatorConfiguration.SMS_GATEWAY_PORT.getValue().toString()));
+        this.submitLatencyMinMillis = Long.parseLong(value(arguments, "submitLatencyMin", "5"));
+        this.submitLatencyMaxMillis = Long.parseLong(value(arguments, "submitLatencyMax", "50"));
+        this.deliveryLatencyMinMillis = Long.parseLong(value(arguments, "deliveryLatencyMin", "500"));
+        this.deliveryLatencyMaxMillis = Long.parseLong(value(arguments, "deliveryLatencyMax", "5000"));
+        this.submitErrorRate = Double.parseDouble(value(arguments, "submitErrorRate", "0.0"));
+        this.deliveryFailureRate = Double.parseDouble(value(arguments, "deliveryFailureRate", "0.0"));
+        this.timeoutSeconds = Long.parseLong(value(arguments, "timeout", "900"));
+    }
+
+    /**
+     * @param args program arguments in the form "name=value"
+     * @return a new LoadTestConfiguration object
+     **/
+    public static LoadTestConfiguration fromArguments(final String[] args) {
+        final Map<String, String> arguments = new HashMap<>();
+
+        for (String argument : args) {
+            final int separator = argument.indexOf('=');
+
+            if (separator < 1) {
+                throw new IllegalArgumentException("Invalid argument '" + argument + "', expected name=value");
+            }
+
+            arguments.put(argument.substring(0, separator), argument.substring(separator + 1));
+        }
+
+        return new LoadTestConfiguration(arguments);
+    }
+
+    private static String value(final Map<String, String> arguments, final String name, final String defaultValue) {
+        final String value = arguments.get(name);
+
+        if (value != null) {
+            return value;
+        }
+
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    /**
+     * @return the base URL of the sms bridge API, e.g. http://localhost:8080/sms-bridge/api/v1
+     **/
+    public String getBridgeUrl() {
+        return bridgeUrl;
+    }
+
+    /**
+     * @return the mifos tenant identifier used for all generated messages
+     **/
+    public String getMifosTenantIdentifier() {
+        return mifosTenantIdentifier;
+    }
+
+    /**
+     * @return the source address (sender ID) of all generated messages
+     **/
+    public String getSourceAddress() {
+        return sourceAddress;
+    }
+
+    /**
+     * @return the total number of messages pushed through "/sms/queue"
+     **/
+    public int getNumberOfMessages() {
+        return numberOfMessages;
+    }
+
+    /**
+     * @return the number of messages per "/sms/queue" request
+     **/
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the target ingest rate in messages per second, 0 for as fast as possible
+     **/
+    public int getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * @return the port of the local InfoBip API stand-in
+     **/
+    public int getInfoBipPort() {
+        return infoBipPort;
+    }
+
+    /**
+     * @return the port of the in-process SMPP server stub
+     **/
+    public int getSmppPort() {
+        return smppPort;
+    }
+
+    /**
+     * @return fault injector for the submit (send API / submit_sm) leg
+     **/
+    public FaultInjector submitFaultInjector() {
+        return new FaultInjector(submitLatencyMinMillis, submitLatencyMaxMillis, submitErrorRate);
+    }
+
+    /**
+     * @return fault injector for the delivery report (callback / deliver_sm) leg
+     **/
+    public FaultInjector deliveryFaultInjector() {
+        return new FaultInjector(deliveryLatencyMinMillis, deliveryLatencyMaxMillis, deliveryFailureRate);
+    }
+
+    /**
+     * @return the maximum time to wait for all delivery reports
+     **/
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadTestConfiguration [bridgeUrl=" + bridgeUrl + ", mifosTenantIdentifier=" + mifosTenantIdentifier
+                + ", sourceAddress=" + sourceAddress + ", numberOfMessages=" + numberOfMessages + ", batchSize=" + batchSize + ", ratePerSecond=" + ratePerSecond
+                + ", infoBipPort=" + infoBipPort + ", smppPort=" + smppPort + ", submitLatency=" + submitLatencyMinMillis + "-"
+                + submitLatencyMaxMillis + "ms, deliveryLatency=" + deliveryLatencyMinMillis + "-" + deliveryLatencyMaxMillis
+                + "ms, submitErrorRate=" + submitErrorRate + ", deliveryFailureRate=" + deliveryFailureRate + "]";
+    }
+}
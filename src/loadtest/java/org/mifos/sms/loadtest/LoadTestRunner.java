@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.loadtest;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Drives synthetic traffic through a running sms bridge: starts the InfoBip and SMPP stubs, pushes messages through
+ * "/sms/queue" at the configured rate, waits for the delivery reports and prints throughput and latency percentiles.
+ *
+ * Run with "gradle loadTest -Pargs='messages=50000 rate=500 submitErrorRate=0.01'"
+ **/
+public class LoadTestRunner {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+    private static final String MOBILE_NUMBER_PREFIX = "2557";
+
+    /**
+     * internal ids of a run start at its start time in milliseconds times this factor, so that a run does not reuse the
+     * internal ids of an earlier run; the bridge answers a (tenant, internalId) it already knows from the existing message
+     **/
+    private static final long INTERNAL_IDS_PER_MILLISECOND = 1000000L;
+
+    private final LoadTestConfiguration configuration;
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+
+    public LoadTestRunner(final LoadTestConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LoadTestConfiguration configuration = LoadTestConfiguration.fromArguments(args);
+
+        logger.info("Starting load test with " + configuration);
+
+        final boolean complete = new LoadTestRunner(configuration).run();
+
+        System.exit(complete ? 0 : 1);
+    }
+
+    /**
+     * @return true if every message completed within the configured timeout
+     **/
+    public boolean run() throws IOException, InterruptedException {
+        final InfoBipServerStub infoBipServerStub = new InfoBipServerStub(this.configuration.getInfoBipPort(),
+                this.configuration.submitFaultInjector(), this.configuration.deliveryFaultInjector(), this.latencyTracker);
+        final SmppServerStub smppServerStub = new SmppServerStub(this.configuration.getSmppPort(),
+                this.configuration.submitFaultInjector(), this.configuration.deliveryFaultInjector(), this.latencyTracker);
+
+        infoBipServerStub.start();
+        smppServerStub.start();
+
+        try {
+            generate();
+
+            final boolean complete = awaitCompletion();
+
+            if (!complete) {
+                logger.warn("Timed out waiting for delivery reports");
+            }
+
+            this.latencyTracker.report(System.out);
+
+            return complete;
+        }
+
+        finally {
+            smppServerStub.stop();
+            infoBipServerStub.stop();
+        }
+    }
+
+    private void generate() throws InterruptedException {
+        final int numberOfMessages = this.configuration.getNumberOfMessages();
+        final int batchSize = this.configuration.getBatchSize();
+        final int ratePerSecond = this.configuration.getRatePerSecond();
+        final long startNanos = System.nanoTime();
+        final long firstInternalId = System.currentTimeMillis() * INTERNAL_IDS_PER_MILLISECOND;
+
+        for (int offset = 0; offset < numberOfMessages; offset += batchSize) {
+            final int count = Math.min(batchSize, numberOfMessages - offset);
+
+            if (ratePerSecond > 0) {
+                // pace batches against the start time so that a slow request does not lower the overall rate
+                final long dueNanos = startNanos + TimeUnit.SECONDS.toNanos(offset) / ratePerSecond;
+                final long waitNanos = dueNanos - System.nanoTime();
+
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+
+            queue(firstInternalId + offset, offset, count);
+        }
+    }
+
+    private void queue(final long firstInternalId, final int offset, final int count) {
+        final JsonArray messages = new JsonArray();
+
+        for (int index = 0; index < count; index++) {
+            final long internalId = firstInternalId + index;
+            final JsonObject message = new JsonObject();
+            message.addProperty("internalId", internalId);
+            message.addProperty("mifosTenantIdentifier", this.configuration.getMifosTenantIdentifier());
+            message.addProperty("sourceAddress", this.configuration.getSourceAddress());
+            message.addProperty("mobileNumber", MOBILE_NUMBER_PREFIX + String.format("%08d", offset + index + 1));
+            message.addProperty("message", LatencyTracker.messageText(internalId));
+            messages.add(message);
+        }
+
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(this.configuration.getBridgeUrl()
+                    + "/sms/queue").openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(messages.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            final int responseCode = connection.getResponseCode();
+
+            if (responseCode / 100 == 2) {
+                final JsonArray results;
+
+                try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                    results = new JsonParser().parse(reader).getAsJsonObject().getAsJsonArray("data");
+                }
+
+                connection.disconnect();
+
+                // the results are in the order of the messages, a message the bridge did not accept is not sent
+                int failed = 0;
+
+                for (int index = 0; index < count; index++) {
+                    final JsonElement hasError = (index < results.size())
+                            ? results.get(index).getAsJsonObject().get("hasError") : null;
+
+                    if (hasError == null || (!hasError.isJsonNull() && hasError.getAsBoolean())) {
+                        if (failed == 0 && hasError != null) {
+                            logger.warn("/sms/queue did not accept a message: "
+                                    + results.get(index).getAsJsonObject().get("errorMessage"));
+                        }
+
+                        failed++;
+                    }
+
+                    else {
+                        this.latencyTracker.queued(firstInternalId + index);
+                    }
+                }
+
+                if (failed > 0) {
+                    this.latencyTracker.queueFailed(failed);
+                }
+            }
+
+            else {
+                connection.disconnect();
+                logger.warn("/sms/queue returned HTTP " + responseCode);
+                this.latencyTracker.queueFailed(count);
+            }
+        }
+
+        catch (IOException e) {
+            logger.warn("/sms/queue request failed: " + e.getMessage());
+            this.latencyTracker.queueFailed(count);
+        }
+    }
+
+    private boolean awaitCompletion() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.configuration.getTimeoutSeconds());
+
+        while (!this.latencyTracker.isComplete(this.configuration.getNumberOfMessages())) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+
+            TimeUnit.SECONDS.sleep(1);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.loadtest;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsmpp.PDUStringException;
+import org.jsmpp.SMPPConstant;
+import org.jsmpp.bean.Alphabet;
+import org.jsmpp.bean.CancelSm;
+import org.jsmpp.bean.DataSm;
+import org.jsmpp.bean.DeliveryReceipt;
+import org.jsmpp.bean.ESMClass;
+import org.jsmpp.bean.GSMSpecificFeature;
+import org.jsmpp.bean.GeneralDataCoding;
+import org.jsmpp.bean.MessageClass;
+import org.jsmpp.bean.MessageMode;
+import org.jsmpp.bean.MessageType;
+import org.jsmpp.bean.NumberingPlanIndicator;
+import org.jsmpp.bean.QuerySm;
+import org.jsmpp.bean.RegisteredDelivery;
+import org.jsmpp.bean.ReplaceSm;
+import org.jsmpp.bean.SubmitMulti;
+import org.jsmpp.bean.SubmitMultiResult;
+import org.jsmpp.bean.SubmitSm;
+import org.jsmpp.bean.TypeOfNumber;
+import org.jsmpp.extra.ProcessRequestException;
+import org.jsmpp.session.BindRequest;
+import org.jsmpp.session.DataSmResult;
+import org.jsmpp.session.QuerySmResult;
+import org.jsmpp.session.SMPPServerSession;
+import org.jsmpp.session.SMPPServerSessionListener;
+import org.jsmpp.session.ServerMessageReceiverListener;
+import org.jsmpp.session.Session;
+import org.jsmpp.util.DeliveryReceiptState;
+import org.jsmpp.util.MessageId;
+import org.mifos.sms.gateway.infobip.SMPPServerSimulatorConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process SMPP server stub standing in for the simulator described by {@link SMPPServerSimulatorConfiguration}.
+ * It accepts binds with the simulator credentials, answers submit_sm after an injected latency and sends a
+ * delivery receipt (deliver_sm) for every accepted message.
+ **/
+public class SmppServerStub {
+    private static final Logger logger = LoggerFactory.getLogger(SmppServerStub.class);
+
+    private final int port;
+    private final FaultInjector submitFaultInjector;
+    private final FaultInjector deliveryFaultInjector;
+    private final LatencyTracker latencyTracker;
+    private final AtomicLong messageIdSequence = new AtomicLong(0x10000L);
+    private ScheduledExecutorService receiptExecutor;
+    private SMPPServerSessionListener sessionListener;
+    private Thread acceptThread;
+    private volatile boolean running;
+
+    public SmppServerStub(final int port, final FaultInjector submitFaultInjector, final FaultInjector deliveryFaultInjector,
+            final LatencyTracker latencyTracker) {
+        this.port = port;
+        this.submitFaultInjector = submitFaultInjector;
+        this.deliveryFaultInjector = deliveryFaultInjector;
+        this.latencyTracker = latencyTracker;
+    }
+
+    /**
+     * start accepting SMPP sessions
+     **/
+    public void start() throws IOException {
+        this.receiptExecutor = Executors.newScheduledThreadPool(8);
+        this.sessionListener = new SMPPServerSessionListener(this.port);
+        this.sessionListener.setMessageReceiverListener(new SubmitSmListener());
+        this.running = true;
+        this.acceptThread = new Thread("smpp-stub-accept") {
+
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        bind(sessionListener.accept());
+                    }
+
+                    catch (IOException e) {
+                        if (running) {
+                            logger.error("Failed to accept SMPP session", e);
+                        }
+                    }
+                }
+            }
+        };
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+
+        logger.info("SMPP server stub listening on port " + this.port);
+    }
+
+    /**
+     * stop accepting sessions and drop any pending delivery receipts
+     **/
+    public void stop() {
+        this.running = false;
+
+        if (this.sessionListener != null) {
+            try {
+                this.sessionListener.close();
+            }
+
+            catch (IOException e) {
+                logger.warn("Failed to close SMPP server stub", e);
+            }
+
+            this.receiptExecutor.shutdownNow();
+        }
+    }
+
+    private void bind(final SMPPServerSession session) {
+        try {
+            final BindRequest bindRequest = session.waitForBind(5000);
+            final String systemId = SMPPServerSimulatorConfiguration.SMS_GATEWAY_SYSTEM_ID.getValue().toString();
+            final String password = SMPPServerSimulatorConfiguration.SMS_GATEWAY_PASSWORD.getValue().toString();
+
+            if (systemId.equals(bindRequest.getSystemId()) && password.equals(bindRequest.getPassword())) {
+                bindRequest.accept(systemId);
+            }
+
+            else {
+                bindRequest.reject(SMPPConstant.STAT_ESME_RINVPASWD);
+            }
+        }
+
+        catch (TimeoutException | PDUStringException | IOException e) {
+            logger.warn("SMPP bind failed: " + e.getMessage());
+        }
+    }
+
+    private class SubmitSmListener implements ServerMessageReceiverListener {
+
+        @Override
+        public MessageId onAcceptSubmitSm(final SubmitSm submitSm, final SMPPServerSession source) throws ProcessRequestException {
+            submitFaultInjector.sleep();
+
+            if (submitFaultInjector.nextIsError()) {
+                latencyTracker.submitFailed();
+                throw new ProcessRequestException("Injected error", SMPPConstant.STAT_ESME_RSYSERR);
+            }
+
+            final long sequence = messageIdSequence.incrementAndGet();
+            final Long internalId = LatencyTracker.internalId(new String(submitSm.getShortMessage()));
+            latencyTracker.submitted(internalId);
+
+            if (submitSm.getRegisteredDelivery() != 0) {
+                scheduleDeliveryReceipt(source, submitSm, sequence, internalId);
+            }
+
+            try {
+                // the simulator returns hexadecimal message ids and decimal ids in the receipts, see SmsGatewayHelper
+                return new MessageId(Long.toHexString(sequence));
+            }
+
+            catch (PDUStringException e) {
+                throw new ProcessRequestException(e.getMessage(), SMPPConstant.STAT_ESME_RSYSERR);
+            }
+        }
+
+        @Override
+        public SubmitMultiResult onAcceptSubmitMulti(final SubmitMulti submitMulti, final SMPPServerSession source)
+                throws ProcessRequestException {
+            throw new ProcessRequestException("submit_multi is not supported", SMPPConstant.STAT_ESME_RINVCMDID);
+        }
+
+        @Override
+        public QuerySmResult onAcceptQuerySm(final QuerySm querySm, final SMPPServerSession source) throws ProcessRequestException {
+            throw new ProcessRequestException("query_sm is not supported", SMPPConstant.STAT_ESME_RINVCMDID);
+        }
+
+        @Override
+        public void onAcceptReplaceSm(final ReplaceSm replaceSm, final SMPPServerSession source) throws ProcessRequestException {
+            throw new ProcessRequestException("replace_sm is not supported", SMPPConstant.STAT_ESME_RINVCMDID);
+        }
+
+        @Override
+        public void onAcceptCancelSm(final CancelSm cancelSm, final SMPPServerSession source) throws ProcessRequestException {
+            throw new ProcessRequestException("cancel_sm is not supported", SMPPConstant.STAT_ESME_RINVCMDID);
+        }
+
+        @Override
+        public DataSmResult onAcceptDataSm(final DataSm dataSm, final Session source) throws ProcessRequestException {
+            throw new ProcessRequestException("data_sm is not supported", SMPPConstant.STAT_ESME_RINVCMDID);
+        }
+    }
+
+    private void scheduleDeliveryReceipt(final SMPPServerSession session, final SubmitSm submitSm, final long sequence,
+            final Long internalId) {
+        final Date submitDate = new Date();
+
+        this.receiptExecutor.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                final boolean delivered = !deliveryFaultInjector.nextIsError();
+                final DeliveryReceipt deliveryReceipt = new DeliveryReceipt(Long.toString(sequence), 1, delivered ? 1 : 0,
+                        submitDate, new Date(), delivered ? DeliveryReceiptState.DELIVRD : DeliveryReceiptState.UNDELIV,
+                        delivered ? "000" : "001", "");
+
+                try {
+                    session.deliverShortMessage("CMT", TypeOfNumber.valueOf(submitSm.getDestAddrTon()),
+                            NumberingPlanIndicator.valueOf(submitSm.getDestAddrNpi()), submitSm.getDestAddress(),
+                            TypeOfNumber.valueOf(submitSm.getSourceAddrTon()),
+                            NumberingPlanIndicator.valueOf(submitSm.getSourceAddrNpi()), submitSm.getSourceAddr(), new ESMClass(MessageMode.DEFAULT, MessageType.SMSC_DEL_RECEIPT,
+                                    GSMSpecificFeature.DEFAULT), (byte) 0, (byte) 0, new RegisteredDelivery(0),
+                            new GeneralDataCoding(Alphabet.ALPHA_DEFAULT, MessageClass.CLASS1, false),
+                            deliveryReceipt.toString().getBytes());
+
+                    latencyTracker.deliveryReported(internalId, delivered);
+                }
+
+                catch (Exception e) {
+                    logger.warn("Delivery receipt for message " + sequence + " failed: " + e.getMessage());
+                    latencyTracker.deliveryReportFailed();
+                }
+            }
+        }, this.deliveryFaultInjector.nextLatencyMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.api;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mifos.sms.helper.HttpResponseStatusCode;
+import org.mifos.sms.metrics.Counter;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Servlet 3 async front of the API (Jersey 1 has no asynchronous resource methods): {@link AsyncSpringServlet} puts the
+ * request in async mode and the resource is invoked on a bounded worker pool, so the connector thread goes back to
+ * Tomcat while the resource waits on the database. Configured from api.properties.
+ *
+ * A request is answered with 503 and a Retry-After header, without touching the database, if the worker queue is full
+ * or if it waited in the queue longer than "api.async.queueTimeoutMillis"; the clients retry, "/sms/queue" is
+ * idempotent per tenant and internal id.
+ **/
+@Component
+public class AsyncRequestExecutor {
+    public static final String ACTIVE = "sms.api.async.active";
+    public static final String QUEUED = "sms.api.async.queued";
+    public static final String REJECTED = "sms.api.async.rejected";
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncRequestExecutor.class);
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final ThreadPoolExecutor executor;
+    private final long queueTimeoutMillis;
+    private final Counter rejected;
+
+    @Autowired
+    public AsyncRequestExecutor(final MetricsRegistry metricsRegistry,
+            @Value("${api.async.threads}") final int threads,
+            @Value("${api.async.queueSize}") final int queueSize,
+            @Value("${api.async.queueTimeoutMillis}") final long queueTimeoutMillis) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                runnable -> new Thread(runnable, "sms-api-" + threadNumber.incrementAndGet()));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.rejected = metricsRegistry.counter(REJECTED);
+
+        metricsRegistry.gauge(ACTIVE, this.executor::getActiveCount);
+        metricsRegistry.gauge(QUEUED, () -> this.executor.getQueue().size());
+    }
+
+    /**
+     * the processing of a request, run on a worker thread
+     **/
+    public interface RequestHandler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException;
+    }
+
+    /**
+     * process a request on the worker pool, or on the calling thread if the request does not support async mode. Only
+     * the request, the response and the handler are used after this method returned, never objects of the container's
+     * processing of the request such as its filter chain.
+     **/
+    public void execute(final HttpServletRequest request, final HttpServletResponse response, final RequestHandler handler)
+            throws IOException, ServletException {
+        if (!request.isAsyncSupported()) {
+            handler.handle(request, response);
+
+            return;
+        }
+
+        final AsyncContext asyncContext = request.startAsync();
+        // the queue timeout and the pool's maxWait bound a request, not the container
+        asyncContext.setTimeout(0);
+
+        final long queuedAtMillis = System.currentTimeMillis();
+
+        try {
+            this.executor.execute(() -> {
+                try {
+                    if (System.currentTimeMillis() - queuedAtMillis > this.queueTimeoutMillis) {
+                        reject(asyncContext, "The request waited too long to be processed");
+                    }
+
+                    else {
+                        handler.handle((HttpServletRequest) asyncContext.getRequest(),
+                                (HttpServletResponse) asyncContext.getResponse());
+                    }
+                }
+
+                catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+
+                    sendError(asyncContext, HttpResponseStatusCode.INTERNAL_SERVER_ERROR, e.getMessage());
+                }
+
+                finally {
+                    asyncContext.complete();
+                }
+            });
+        }
+
+        catch (RejectedExecutionException e) {
+            reject(asyncContext, "Too many requests in progress");
+            asyncContext.complete();
+        }
+    }
+
+    private void reject(final AsyncContext asyncContext, final String developerMessage) {
+        this.rejected.increment();
+
+        sendError(asyncContext, HttpResponseStatusCode.SERVICE_UNAVAILABLE, developerMessage);
+    }
+
+    /**
+     * write an error in the format of {@link org.mifos.sms.helper.HelperClass.ApiResponse#error}, unless the resource
+     * already started writing its response
+     **/
+    private static void sendError(final AsyncContext asyncContext, final HttpResponseStatusCode statusCode,
+            final String developerMessage) {
+        final HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+
+        if (response.isCommitted()) {
+            return;
+        }
+
+        try {
+            response.reset();
+            response.setStatus(statusCode.getValue());
+
+            if (statusCode == HttpResponseStatusCode.SERVICE_UNAVAILABLE) {
+                response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+            }
+
+            response.setContentType("application/json");
+
+            final JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(),
+                    StandardCharsets.UTF_8)));
+            writer.beginObject();
+            writer.name("httpStatusCode").value(statusCode.getValue());
+            writer.name("developerMessage").value(developerMessage);
+            writer.endObject();
+            writer.flush();
+        }
+
+        catch (IOException | IllegalStateException e) {
+            logger.error(e.getMessage());
+        }
+    }
+
+    /**
+     * stop taking requests and wait for the requests in progress, called when the application context is closed
+     **/
+    @PreDestroy
+    public void close() throws InterruptedException {
+        this.executor.shutdown();
+
+        if (!this.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Requests still in progress after " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.api;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import com.sun.jersey.spi.spring.container.servlet.SpringServlet;
+
+/**
+ * The Jersey servlet of the API, processing each request on the worker pool of {@link AsyncRequestExecutor}. The
+ * worker calls the Jersey servlet directly, the container's filter chain of the request is released once the
+ * connector thread returned and must not be used by the worker.
+ **/
+public class AsyncSpringServlet extends SpringServlet {
+    private static final long serialVersionUID = 1L;
+
+    private transient AsyncRequestExecutor asyncRequestExecutor;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+
+        this.asyncRequestExecutor = WebApplicationContextUtils.getRequiredWebApplicationContext(getServletContext())
+                .getBean(AsyncRequestExecutor.class);
+    }
+
+    @Override
+    public void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException,
+            IOException {
+        this.asyncRequestExecutor.execute(request, response, super::service);
+    }
+}
@@ -18,16 +18,27 @@
  */
 package org.mifos.sms.api;
 
+import java.util.Date;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
-import org.mifos.sms.domain.SmsOutboundMessage;
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
+import org.mifos.sms.domain.SmsMessageStatusType;
 import org.mifos.sms.domain.SmsOutboundMessageRepository;
+import org.mifos.sms.gateway.SmsGatewayExecutor;
+import org.mifos.sms.gateway.SmsGatewayRouteTable;
 import org.mifos.sms.gateway.infobip.InfoBipStatus;
+import org.mifos.sms.metrics.SmsPipelineMetrics;
+import org.mifos.sms.service.DataSourceShardContext;
+import org.mifos.sms.service.DeliveryReceiptCorrelationCache;
+import org.mifos.sms.service.DeliveryStatusWebhookDispatcher;
+import org.mifos.sms.service.SmsGatewayDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,26 +61,90 @@ public class InfoBipApiResource {
     private static final Logger logger = LoggerFactory.getLogger(InfoBipApiResource.class);
 
     private final SmsOutboundMessageRepository smsOutboundMessageRepository;
+    private final SmsPipelineMetrics smsPipelineMetrics;
+    private final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher;
+    private final DeliveryReceiptCorrelationCache deliveryReceiptCorrelationCache;
+    private final SmsGatewayDataSource smsGatewayDataSource;
+    private final SmsGatewayRouteTable smsGatewayRouteTable;
 
     @Autowired
-    public InfoBipApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
+    public InfoBipApiResource(final SmsOutboundMessageRepository smsOutboundMessageRepository,
+            final SmsPipelineMetrics smsPipelineMetrics, final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher,
+            final DeliveryReceiptCorrelationCache deliveryReceiptCorrelationCache, final SmsGatewayDataSource smsGatewayDataSource,
+            final SmsGatewayRouteTable smsGatewayRouteTable) {
         this.smsOutboundMessageRepository = smsOutboundMessageRepository;
+        this.smsPipelineMetrics = smsPipelineMetrics;
+        this.deliveryStatusWebhookDispatcher = deliveryStatusWebhookDispatcher;
+        this.deliveryReceiptCorrelationCache = deliveryReceiptCorrelationCache;
+        this.smsGatewayDataSource = smsGatewayDataSource;
+        this.smsGatewayRouteTable = smsGatewayRouteTable;
     }
 
     @POST
     @Path("{messageId}")
     public ResponseEntity<Void> updateDeliveryStatus(@PathParam("messageId") final Long messageId,
+            @QueryParam("mifosTenantIdentifier") final String mifosTenantIdentifier,
             @RequestBody final SMSReportResponse payload) {
-        final SmsOutboundMessage message = this.smsOutboundMessageRepository.findOne(messageId);
+        final SMSReport report = payload.getResults().get(0);
+        // messages submitted recently are correlated without a DB read, for the others only the status and timestamps are
+        // read. The status is written with a targeted update.
+        SmsOutboundMessageStatusData message = this.deliveryReceiptCorrelationCache.take(report.getMessageId());
+        if (message != null && !isReportedMessage(message, messageId, mifosTenantIdentifier)) {
+            message = null;
+        }
+        if (message == null && mifosTenantIdentifier != null) {
+            // ids are only unique within a shard, the tenant of the notify URL identifies the shard. A message whose
+            // submit result was not recorded yet has no external id, it is found by id.
+            final SmsOutboundMessageStatusData shardMessage = DataSourceShardContext.call(
+                    this.smsGatewayDataSource.getShard(mifosTenantIdentifier),
+                    () -> this.smsOutboundMessageRepository.findStatusDataById(messageId));
+            message = (shardMessage != null && isReportedMessage(shardMessage, messageId, mifosTenantIdentifier))
+                    ? shardMessage : null;
+        }
+        else if (message == null) {
+            // notify URLs registered before they named the tenant, the InfoBip message id identifies the shard
+            message = this.smsGatewayDataSource.findInShards(() -> {
+                final SmsOutboundMessageStatusData shardMessage = this.smsOutboundMessageRepository
+                        .findStatusDataByExternalId(report.getMessageId());
+                return (shardMessage != null && messageId.equals(shardMessage.getId())) ? shardMessage : null;
+            });
+        }
         if (message != null) {
-            final SMSReport report = payload.getResults().get(0);
             logger.debug("Status Callback received from InfoBip for " + messageId + " with status:" + report.getStatus());
-            message.setDeliveryStatus(InfoBipStatus.smsStatus(report.getStatus().getGroupId()));
-            this.smsOutboundMessageRepository.save(message);
+            final SmsMessageStatusType status = InfoBipStatus.smsStatus(report.getStatus().getGroupId());
+            final Date deliveredOnDateTime = (status == SmsMessageStatusType.DELIVERED)
+                    ? ((report.getDoneAt() != null) ? report.getDoneAt() : new Date()) : null;
+            DataSourceShardContext.run(this.smsGatewayDataSource.getShard(message.getMifosTenantIdentifier()), () -> {
+                if (status == SmsMessageStatusType.DELIVERED) {
+                    this.smsOutboundMessageRepository.updateDeliveryStatusAndDeliveredOn(messageId, status.getValue(),
+                            deliveredOnDateTime, deliveredOnDateTime);
+                } else {
+                    this.smsOutboundMessageRepository.updateDeliveryStatus(messageId, status.getValue());
+                }
+            });
+            this.deliveryStatusWebhookDispatcher.statusChanged(message.getMifosTenantIdentifier(),
+                    message.toResponseData(status, deliveredOnDateTime));
+            this.smsPipelineMetrics.deliveryReported(message.getMifosTenantIdentifier(), SmsPipelineMetrics.GATEWAY_INFOBIP, status);
+            this.smsGatewayRouteTable.recordDelivery(message.getMifosTenantIdentifier(), report.getTo(),
+                    SmsGatewayExecutor.INFOBIP, status);
+            // messages submitted before the lifecycle timestamps existed fall back to the time reported by InfoBip
+            final Date submittedOnDateTime = (message.getSubmittedOnDateTime() != null) ? message.getSubmittedOnDateTime()
+                    : report.getSentAt();
+            this.smsPipelineMetrics.recordDeliveryReport(message.getMifosTenantIdentifier(), SmsPipelineMetrics.GATEWAY_INFOBIP,
+                    submittedOnDateTime, message.getQueuedOnDateTime());
         } else {
             logger.info("Message with Message id " + messageId + " Not found");
         }
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
+    /**
+     * @return true if the message is the one of the callback, the tenant is only checked if the notify URL names it
+     **/
+    private static boolean isReportedMessage(final SmsOutboundMessageStatusData message, final Long messageId,
+            final String mifosTenantIdentifier) {
+        return messageId.equals(message.getId())
+                && (mifosTenantIdentifier == null || mifosTenantIdentifier.equals(message.getMifosTenantIdentifier()));
+    }
+
 }
@@ -1,22 +1,32 @@
 package org.mifos.sms.api;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.mifos.sms.data.DeliveryReportRequestData;
+import org.mifos.sms.data.SmsOutboundMessageChangesData;
+import org.mifos.sms.data.SmsOutboundMessageResponseData;
 import org.mifos.sms.domain.SmsOutboundMessage;
+import org.mifos.sms.helper.DecodeResult;
 import org.mifos.sms.helper.HelperClass.ApiResponse;
-import org.mifos.sms.helper.HelperClass.JsonConverter;
+import org.mifos.sms.helper.HelperClass.JsonDataWriter;
 import org.mifos.sms.helper.HttpResponseStatusCode;
+import org.mifos.sms.helper.JsonCodec;
+import org.mifos.sms.helper.ProtobufCodec;
 import org.mifos.sms.service.ReadSmsOutboundMessageService;
+import org.mifos.sms.service.ReadSmsOutboundMessageService.ResultChunkHandler;
 import org.mifos.sms.service.WriteSmsOutboundMessageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +35,7 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 @Path("/sms")
 @Consumes({ MediaType.APPLICATION_JSON })
@@ -36,6 +46,8 @@ public class SmsApiResource {
 	private final WriteSmsOutboundMessageService writeSmsOutboundMessageService;
 	private final ReadSmsOutboundMessageService readSmsOutboundMessageService;
 	private static final Logger logger = LoggerFactory.getLogger(SmsApiResource.class);
+	private static final int DEFAULT_CHANGES_LIMIT = 1000;
+	private static final int MAXIMUM_CHANGES_LIMIT = 10000;
 	
 	@Autowired
 	public SmsApiResource(final WriteSmsOutboundMessageService writeSmsOutboundMessageService, 
@@ -50,61 +62,146 @@ public class SmsApiResource {
 		Response response;
 		
 		// convert API request JSON string to object of class DeliveryReportRequestData
-		Map<String, Object> deliveryReportRequestData = JsonConverter.fromJson(apiRequestJsonString, DeliveryReportRequestData.class);
+		final DecodeResult<DeliveryReportRequestData> deliveryReportRequestData = JsonCodec.readDeliveryReportRequest(
+				apiRequestJsonString);
 		
-		// if the GSON class failed in the conversion, the value of the "hasError" key is set to true
-		if(!(Boolean)deliveryReportRequestData.get("hasError")) {
-			DeliveryReportRequestData deliveryReportRequest = (DeliveryReportRequestData)deliveryReportRequestData.get("object");
-			List<Long> externalIds = deliveryReportRequest.getExternalIds();
-			String mifosTenantIdentifier = deliveryReportRequest.getMifosTenantIdentifier();
+		// if the conversion failed, the result has an error
+		if(!deliveryReportRequestData.hasError()) {
+			DeliveryReportRequestData deliveryReportRequest = deliveryReportRequestData.getObject();
+			final List<Long> externalIds = deliveryReportRequest.getExternalIds();
+			final String mifosTenantIdentifier = deliveryReportRequest.getMifosTenantIdentifier();
 			
 			// make sure a mifos tenant identifier and list of external ids are provided
-			if(StringUtils.isEmpty(mifosTenantIdentifier) || (externalIds.size() < 1)) {
+			if(StringUtils.isEmpty(mifosTenantIdentifier) || (externalIds == null) || (externalIds.size() < 1)) {
 				response = ApiResponse.error(HttpResponseStatusCode.BAD_REQUEST, "Validation errors exist");
 			}
 			
 			else {
-				try {
-					// attempt to fetch the SMS messages
-					response = ApiResponse.success(readSmsOutboundMessageService.findAll(externalIds, mifosTenantIdentifier));
-				}
-				
-				catch(Exception e) {
-					// catch any exception and return as an internal server error
-					response = ApiResponse.error(HttpResponseStatusCode.INTERNAL_SERVER_ERROR, e.getMessage());
+				// the messages are fetched in chunks and written to the response as they are read, errors after the 
+				// first chunk has been written can only be logged
+				response = ApiResponse.success(new JsonDataWriter() {
 					
-					// log error message
-					logger.error(e.getMessage());
-				}
+					@Override
+					public void write(final JsonWriter writer) throws IOException {
+						writer.beginArray();
+						
+						try {
+							readSmsOutboundMessageService.findAll(externalIds, mifosTenantIdentifier, new ResultChunkHandler() {
+								
+								@Override
+								public void handle(Collection<SmsOutboundMessageResponseData> chunk) throws IOException {
+									for (SmsOutboundMessageResponseData smsOutboundMessageResponseData : chunk) {
+										smsOutboundMessageResponseData.toJson(writer);
+									}
+									
+									writer.flush();
+								}
+							});
+						}
+						
+						catch(RuntimeException e) {
+							// log error message
+							logger.error(e.getMessage());
+							
+							throw e;
+						}
+						
+						writer.endArray();
+					}
+				});
 			}
 		}
 		
 		else {
-			response = ApiResponse.error(HttpResponseStatusCode.BAD_REQUEST, (String)deliveryReportRequestData.get("errorMessage"));
+			response = ApiResponse.error(HttpResponseStatusCode.BAD_REQUEST, deliveryReportRequestData.getErrorMessage());
+		}
+		
+		return response;
+	}
+	
+	@GET
+	@Path("/report/changes")
+	public Response getDeliveryReportChanges(@QueryParam("mifosTenantIdentifier") final String mifosTenantIdentifier, 
+			@QueryParam("cursor") @DefaultValue("0") final Long cursor, 
+			@QueryParam("limit") @DefaultValue("" + DEFAULT_CHANGES_LIMIT) final Integer limit) {
+		Response response;
+		
+		if(StringUtils.isEmpty(mifosTenantIdentifier) || (cursor < 0) || (limit < 1) || (limit > MAXIMUM_CHANGES_LIMIT)) {
+			response = ApiResponse.error(HttpResponseStatusCode.BAD_REQUEST, "Validation errors exist");
+		}
+		
+		else {
+			try {
+				final SmsOutboundMessageChangesData changes = readSmsOutboundMessageService.findChangedSince(
+						mifosTenantIdentifier, cursor, limit);
+				
+				response = ApiResponse.success(new JsonDataWriter() {
+					
+					@Override
+					public void write(final JsonWriter writer) throws IOException {
+						writer.beginObject();
+						writer.name("messages").beginArray();
+						
+						for (SmsOutboundMessageResponseData smsOutboundMessageResponseData : changes.getMessages()) {
+							smsOutboundMessageResponseData.toJson(writer);
+						}
+						
+						writer.endArray();
+						writer.name("nextCursor").value(changes.getNextCursor());
+						writer.name("hasMore").value(changes.getHasMore());
+						writer.endObject();
+					}
+				});
+			}
+			
+			catch(Exception e) {
+				// catch any exception and return as an internal server error
+				response = ApiResponse.error(HttpResponseStatusCode.INTERNAL_SERVER_ERROR, e.getMessage());
+				
+				// log error message
+				logger.error(e.getMessage());
+			}
 		}
 		
 		return response;
 	}
 	
-	@SuppressWarnings("unchecked")
 	@POST
 	@Path("/queue")
 	public Response addToQueue(final String apiRequestJsonString) {
-		Response response;
-		
 		// convert the API request JSON string to list of SmsOutboundMessage objects
-		Map<String, Object> smsOutboundMessages = JsonConverter.fromJson(apiRequestJsonString, 
-				new TypeToken<List<SmsOutboundMessage>>(){}.getType());
-		List<SmsOutboundMessage> smsOutboundMessageList = new ArrayList<>();
+		return addToQueue(JsonCodec.readSmsOutboundMessages(apiRequestJsonString));
+	}
+	
+	/** 
+	 * add messages sent as length-delimited protobuf messages, a compact alternative to JSON for bulk producers. The 
+	 * response is the same as for JSON. 
+	 **/
+	@POST
+	@Path("/queue")
+	@Consumes({ ProtobufCodec.MEDIA_TYPE })
+	public Response addToQueue(final InputStream apiRequestInputStream) {
+		// decode the messages as they are read from the request body
+		return addToQueue(ProtobufCodec.readSmsOutboundMessages(apiRequestInputStream));
+	}
+	
+	private Response addToQueue(final DecodeResult<List<SmsOutboundMessage>> smsOutboundMessages) {
+		Response response;
 		
-		// if the GSON class failed in the conversion, the value of the "hasError" key is set to true
-		if(!(Boolean)smsOutboundMessages.get("hasError")) {
-			// get the list of SmsOutboundMessage objects from the map
-			smsOutboundMessageList = (List<SmsOutboundMessage>) smsOutboundMessages.get("object");
-			
+		// if the conversion failed, the result has an error
+		if(!smsOutboundMessages.hasError()) {
 			try {
 				// attempt to add the SMS message to the smsOuntboundMessage table
-				response = ApiResponse.success(writeSmsOutboundMessageService.create(smsOutboundMessageList));
+				final List<SmsOutboundMessageResponseData> smsOutboundMessagesResponseData = writeSmsOutboundMessageService
+						.create(smsOutboundMessages.getObject());
+				
+				response = ApiResponse.success(new JsonDataWriter() {
+					
+					@Override
+					public void write(final JsonWriter writer) throws IOException {
+						JsonCodec.writeResponseData(writer, smsOutboundMessagesResponseData);
+					}
+				});
 			}
 			
 			catch(Exception e) {
@@ -117,7 +214,7 @@ public class SmsApiResource {
 		}
 		
 		else {
-			response = ApiResponse.error(HttpResponseStatusCode.BAD_REQUEST, (String)smsOutboundMessages.get("errorMessage"));
+			response = ApiResponse.error(HttpResponseStatusCode.BAD_REQUEST, smsOutboundMessages.getErrorMessage());
 		}
 		
 		return response;
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.api;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.mifos.sms.helper.HelperClass.ApiResponse;
+import org.mifos.sms.metrics.StageLatencyRecorder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+@Path("/stats")
+@Produces({ MediaType.APPLICATION_JSON })
+@Component
+@Scope("singleton")
+public class StatsApiResource {
+
+    private final StageLatencyRecorder stageLatencyRecorder;
+
+    @Autowired
+    public StatsApiResource(final StageLatencyRecorder stageLatencyRecorder) {
+        this.stageLatencyRecorder = stageLatencyRecorder;
+    }
+
+    @GET
+    public Response getStats() {
+        return ApiResponse.success(this.stageLatencyRecorder.snapshot());
+    }
+}
@@ -0,0 +1,53 @@
+package org.mifos.sms.data;
+
+import java.util.List;
+
+/** 
+ * Immutable data object representing a page of outbound SMS messages whose status changed after a cursor 
+ **/
+public class SmsOutboundMessageChangesData {
+	
+	private List<SmsOutboundMessageResponseData> messages;
+	private Long nextCursor;
+	private Boolean hasMore;
+	
+	/** 
+	 * SmsOutboundMessageChangesData constructor
+	 * 
+	 * @return void 
+	 **/
+	private SmsOutboundMessageChangesData(List<SmsOutboundMessageResponseData> messages, Long nextCursor, Boolean hasMore) {
+		this.messages = messages;
+		this.nextCursor = nextCursor;
+		this.hasMore = hasMore;
+	}
+	
+	/** 
+	 * @return an instance of the SmsOutboundMessageChangesData class
+	 **/
+	public static SmsOutboundMessageChangesData getInstance(List<SmsOutboundMessageResponseData> messages, Long nextCursor, 
+			Boolean hasMore) {
+		return new SmsOutboundMessageChangesData(messages, nextCursor, hasMore);
+	}
+
+	/**
+	 * @return the messages
+	 */
+	public List<SmsOutboundMessageResponseData> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * @return the cursor to pass to get the next page, equal to the cursor of the request if there are no changes
+	 */
+	public Long getNextCursor() {
+		return nextCursor;
+	}
+
+	/**
+	 * @return true if more changes are available after the next cursor
+	 */
+	public Boolean getHasMore() {
+		return hasMore;
+	}
+}
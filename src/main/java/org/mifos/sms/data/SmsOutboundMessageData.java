@@ -18,6 +18,11 @@ public class SmsOutboundMessageData {
 	private Date submittedOnDate;
 	private Date addedOnDate;
 	private Date deliveredOnDate;
+	private Date queuedOnDateTime;
+	private Date claimedOnDateTime;
+	private Date submittedOnDateTime;
+	private Date acknowledgedOnDateTime;
+	private Date deliveredOnDateTime;
 	private EnumOptionData deliveryStatus;
 	private String deliveryErrorMessage;
 	private String mobileNumber;
@@ -30,7 +35,8 @@ public class SmsOutboundMessageData {
 	 **/
 	private SmsOutboundMessageData(final Long id, final String externalId, final Long internalId, final String mifosTenantIdentifier, 
 			final Date createdOnDate, final Date submittedOnDate, final Date addedOnDate, final Date deliveredOnDate, 
-			final EnumOptionData deliveryStatus, final String deliveryErrorMessage, final String mobileNumber, final String message) {
+			final Date queuedOnDateTime, final Date claimedOnDateTime, final Date submittedOnDateTime, 
+			final Date acknowledgedOnDateTime, final Date deliveredOnDateTime, final EnumOptionData deliveryStatus, final String deliveryErrorMessage, final String mobileNumber, final String message) {
 		
 		this.id = id;
 		this.externalId = externalId;
@@ -40,6 +46,11 @@ public class SmsOutboundMessageData {
 		this.submittedOnDate = submittedOnDate;
 		this.addedOnDate = addedOnDate;
 		this.deliveredOnDate = deliveredOnDate;
+		this.queuedOnDateTime = queuedOnDateTime;
+		this.claimedOnDateTime = claimedOnDateTime;
+		this.submittedOnDateTime = submittedOnDateTime;
+		this.acknowledgedOnDateTime = acknowledgedOnDateTime;
+		this.deliveredOnDateTime = deliveredOnDateTime;
 		this.deliveryStatus = deliveryStatus;
 		this.deliveryErrorMessage = deliveryErrorMessage;
 		this.mobileNumber = mobileNumber;
@@ -60,9 +71,12 @@ public class SmsOutboundMessageData {
 	 **/
 	public static SmsOutboundMessageData getInstance(final Long id, final String externalId, final Long internalId, final String mifosTenantIdentifier, 
 			final Date createdOnDate, final Date submittedOnDate, final Date addedOnDate, final Date deliveredOnDate, 
+			final Date queuedOnDateTime, final Date claimedOnDateTime, final Date submittedOnDateTime, 
+			final Date acknowledgedOnDateTime, final Date deliveredOnDateTime, 
 			final EnumOptionData deliveryStatus, final String deliveryErrorMessage, final String mobileNumber, final String message) {
 		
 		return new SmsOutboundMessageData(id, externalId, internalId, mifosTenantIdentifier, createdOnDate, submittedOnDate, addedOnDate, deliveredOnDate, 
+				queuedOnDateTime, claimedOnDateTime, submittedOnDateTime, acknowledgedOnDateTime, deliveredOnDateTime, 
 				deliveryStatus, deliveryErrorMessage, mobileNumber, message);
 	}
 
@@ -122,6 +136,41 @@ public class SmsOutboundMessageData {
 		return deliveredOnDate;
 	}
 	
+	/** 
+	 * @return the queued on date and time 
+	 **/
+	public Date getQueuedOnDateTime() {
+		return queuedOnDateTime;
+	}
+	
+	/** 
+	 * @return the claimed on date and time 
+	 **/
+	public Date getClaimedOnDateTime() {
+		return claimedOnDateTime;
+	}
+	
+	/** 
+	 * @return the submitted on date and time 
+	 **/
+	public Date getSubmittedOnDateTime() {
+		return submittedOnDateTime;
+	}
+	
+	/** 
+	 * @return the acknowledged on date and time 
+	 **/
+	public Date getAcknowledgedOnDateTime() {
+		return acknowledgedOnDateTime;
+	}
+	
+	/** 
+	 * @return the delivered on date and time 
+	 **/
+	public Date getDeliveredOnDateTime() {
+		return deliveredOnDateTime;
+	}
+	
 	/** 
 	 * @return the delivery status 
 	 **/
@@ -1,5 +1,9 @@
 package org.mifos.sms.data;
 
+import java.io.IOException;
+
+import com.google.gson.stream.JsonWriter;
+
 /** 
  * Immutable data object representing an outbound SMS message API response data
  * 
@@ -11,6 +15,11 @@ public class SmsOutboundMessageResponseData {
 	private Long externalId;
 	private String addedOnDate;
 	private String deliveredOnDate;
+	private String queuedOnDateTime;
+	private String claimedOnDateTime;
+	private String submittedOnDateTime;
+	private String acknowledgedOnDateTime;
+	private String deliveredOnDateTime;
 	private Integer deliveryStatus;
 	private Boolean hasError;
 	private String errorMessage;
@@ -21,11 +30,17 @@ public class SmsOutboundMessageResponseData {
 	 * @return void 
 	 **/
 	private SmsOutboundMessageResponseData(Long id, Long externalId, String addedOnDate, String deliveredOnDate, 
-			Integer deliveryStatus, Boolean hasError, String errorMessage) {
+			String queuedOnDateTime, String claimedOnDateTime, String submittedOnDateTime, String acknowledgedOnDateTime, 
+			String deliveredOnDateTime, Integer deliveryStatus, Boolean hasError, String errorMessage) {
 		this.id = id;
 		this.externalId = externalId;
 		this.addedOnDate = addedOnDate;
 		this.deliveredOnDate = deliveredOnDate;
+		this.queuedOnDateTime = queuedOnDateTime;
+		this.claimedOnDateTime = claimedOnDateTime;
+		this.submittedOnDateTime = submittedOnDateTime;
+		this.acknowledgedOnDateTime = acknowledgedOnDateTime;
+		this.deliveredOnDateTime = deliveredOnDateTime;
 		this.deliveryStatus = deliveryStatus;
 		this.hasError = hasError;
 		this.errorMessage = errorMessage;
@@ -42,9 +57,42 @@ public class SmsOutboundMessageResponseData {
 	 * @return an instance of the SmsOutboundMessageResponseData class
 	 **/
 	public static SmsOutboundMessageResponseData getInstance(Long id, Long externalId, String addedOnDate, String deliveredOnDate, 
-			Integer deliveryStatus, Boolean hasError, String errorMessage) {
+			String queuedOnDateTime, String claimedOnDateTime, String submittedOnDateTime, String acknowledgedOnDateTime, 
+			String deliveredOnDateTime, Integer deliveryStatus, Boolean hasError, String errorMessage) {
 		
-		return new SmsOutboundMessageResponseData(id, externalId, addedOnDate, deliveredOnDate, deliveryStatus, hasError, errorMessage);
+		return new SmsOutboundMessageResponseData(id, externalId, addedOnDate, deliveredOnDate, queuedOnDateTime, 
+				claimedOnDateTime, submittedOnDateTime, acknowledgedOnDateTime, deliveredOnDateTime, deliveryStatus, hasError, errorMessage);
+	}
+
+	/** 
+	 * write this object to a streaming JSON writer, with the same property names as the POJO mapping 
+	 * 
+	 * @param writer the JSON writer
+	 **/
+	public void toJson(final JsonWriter writer) throws IOException {
+		writer.beginObject();
+		writer.name("id").value(id);
+		writer.name("externalId").value(externalId);
+		writer.name("addedOnDate").value(addedOnDate);
+		writer.name("deliveredOnDate").value(deliveredOnDate);
+		writer.name("queuedOnDateTime").value(queuedOnDateTime);
+		writer.name("claimedOnDateTime").value(claimedOnDateTime);
+		writer.name("submittedOnDateTime").value(submittedOnDateTime);
+		writer.name("acknowledgedOnDateTime").value(acknowledgedOnDateTime);
+		writer.name("deliveredOnDateTime").value(deliveredOnDateTime);
+		writer.name("deliveryStatus").value(deliveryStatus);
+		writer.name("hasError");
+		
+		if (hasError != null) {
+			writer.value(hasError);
+		}
+		
+		else {
+			writer.nullValue();
+		}
+		
+		writer.name("errorMessage").value(errorMessage);
+		writer.endObject();
 	}
 
 	/**
@@ -75,6 +123,41 @@ public class SmsOutboundMessageResponseData {
 		return deliveredOnDate;
 	}
 
+	/**
+	 * @return the queuedOnDateTime
+	 */
+	public String getQueuedOnDateTime() {
+		return queuedOnDateTime;
+	}
+
+	/**
+	 * @return the claimedOnDateTime
+	 */
+	public String getClaimedOnDateTime() {
+		return claimedOnDateTime;
+	}
+
+	/**
+	 * @return the submittedOnDateTime
+	 */
+	public String getSubmittedOnDateTime() {
+		return submittedOnDateTime;
+	}
+
+	/**
+	 * @return the acknowledgedOnDateTime
+	 */
+	public String getAcknowledgedOnDateTime() {
+		return acknowledgedOnDateTime;
+	}
+
+	/**
+	 * @return the deliveredOnDateTime
+	 */
+	public String getDeliveredOnDateTime() {
+		return deliveredOnDateTime;
+	}
+
 	/**
 	 * @return the deliveryStatus
 	 */
@@ -0,0 +1,148 @@
+package org.mifos.sms.data;
+
+import java.util.Date;
+
+import org.joda.time.LocalDate;
+import org.mifos.sms.domain.SmsMessageStatusType;
+import org.mifos.sms.helper.HelperClass.DateTimeConverter;
+
+/**
+ * Immutable data object holding the status and lifecycle timestamps of an outbound SMS message, without its text.
+ * Selected with a JPQL constructor expression so that status updates and reports do not load the SmsOutboundMessage
+ * entity.
+ **/
+public class SmsOutboundMessageStatusData {
+
+	private final Long id;
+	private final Long internalId;
+	private final String mifosTenantIdentifier;
+	private final Date addedOnDate;
+	private final Date deliveredOnDate;
+	private final Date queuedOnDateTime;
+	private final Date claimedOnDateTime;
+	private final Date submittedOnDateTime;
+	private final Date acknowledgedOnDateTime;
+	private final Date deliveredOnDateTime;
+	private final Integer deliveryStatus;
+	private final Long statusSequence;
+
+	/**
+	 * SmsOutboundMessageStatusData constructor, public for the JPQL constructor expression
+	 *
+	 * @return void
+	 **/
+	public SmsOutboundMessageStatusData(Long id, Long internalId, String mifosTenantIdentifier, Date addedOnDate,
+			Date deliveredOnDate, Date queuedOnDateTime, Date claimedOnDateTime, Date submittedOnDateTime,
+			Date acknowledgedOnDateTime, Date deliveredOnDateTime, Integer deliveryStatus) {
+		this(id, internalId, mifosTenantIdentifier, addedOnDate, deliveredOnDate, queuedOnDateTime, claimedOnDateTime,
+				submittedOnDateTime, acknowledgedOnDateTime, deliveredOnDateTime, deliveryStatus, null);
+	}
+
+	/**
+	 * SmsOutboundMessageStatusData constructor with the status sequence, for the changes feed
+	 *
+	 * @return void
+	 **/
+	public SmsOutboundMessageStatusData(Long id, Long internalId, String mifosTenantIdentifier, Date addedOnDate,
+			Date deliveredOnDate, Date queuedOnDateTime, Date claimedOnDateTime, Date submittedOnDateTime,
+			Date acknowledgedOnDateTime, Date deliveredOnDateTime, Integer deliveryStatus, Long statusSequence) {
+		this.id = id;
+		this.internalId = internalId;
+		this.mifosTenantIdentifier = mifosTenantIdentifier;
+		this.addedOnDate = addedOnDate;
+		this.deliveredOnDate = deliveredOnDate;
+		this.queuedOnDateTime = queuedOnDateTime;
+		this.claimedOnDateTime = claimedOnDateTime;
+		this.submittedOnDateTime = submittedOnDateTime;
+		this.acknowledgedOnDateTime = acknowledgedOnDateTime;
+		this.deliveredOnDateTime = deliveredOnDateTime;
+		this.deliveryStatus = deliveryStatus;
+		this.statusSequence = statusSequence;
+	}
+
+	/**
+	 * the representation returned to Mifos by "/sms/report"
+	 *
+	 * @return object of type SmsOutboundMessageResponseData
+	 **/
+	public SmsOutboundMessageResponseData toResponseData() {
+		return toResponseData(SmsMessageStatusType.fromInt(this.deliveryStatus), null);
+	}
+
+	/**
+	 * the representation returned to Mifos after a status update
+	 *
+	 * @param deliveryStatus the new delivery status
+	 * @param deliveredOnDateTime the new delivery date and time, null if it did not change
+	 * @return object of type SmsOutboundMessageResponseData
+	 **/
+	public SmsOutboundMessageResponseData toResponseData(final SmsMessageStatusType deliveryStatus,
+			final Date deliveredOnDateTime) {
+		final Date deliveredOn = (deliveredOnDateTime != null) ? deliveredOnDateTime : this.deliveredOnDateTime;
+		final Date deliveredOnDate = (deliveredOnDateTime != null) ? deliveredOnDateTime : this.deliveredOnDate;
+
+		return SmsOutboundMessageResponseData.getInstance(this.internalId, this.id,
+				(this.addedOnDate != null) ? new LocalDate(this.addedOnDate).toString() : null,
+				(deliveredOnDate != null) ? new LocalDate(deliveredOnDate).toString() : null,
+				DateTimeConverter.toDateTimeString(this.queuedOnDateTime), DateTimeConverter.toDateTimeString(this.claimedOnDateTime),
+				DateTimeConverter.toDateTimeString(this.submittedOnDateTime),
+				DateTimeConverter.toDateTimeString(this.acknowledgedOnDateTime), DateTimeConverter.toDateTimeString(deliveredOn),
+				deliveryStatus.getValue(), false, "");
+	}
+
+	/**
+	 * @return the id
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * @return the internalId
+	 */
+	public Long getInternalId() {
+		return internalId;
+	}
+
+	/**
+	 * @return the mifosTenantIdentifier
+	 */
+	public String getMifosTenantIdentifier() {
+		return mifosTenantIdentifier;
+	}
+
+	/**
+	 * @return the queuedOnDateTime
+	 */
+	public Date getQueuedOnDateTime() {
+		return queuedOnDateTime;
+	}
+
+	/**
+	 * @return the submittedOnDateTime
+	 */
+	public Date getSubmittedOnDateTime() {
+		return submittedOnDateTime;
+	}
+
+	/**
+	 * @return the deliveredOnDateTime
+	 */
+	public Date getDeliveredOnDateTime() {
+		return deliveredOnDateTime;
+	}
+
+	/**
+	 * @return the deliveryStatus
+	 */
+	public Integer getDeliveryStatus() {
+		return deliveryStatus;
+	}
+
+	/**
+	 * @return the statusSequence
+	 */
+	public Long getStatusSequence() {
+		return statusSequence;
+	}
+}
@@ -0,0 +1,90 @@
+package org.mifos.sms.data;
+
+import java.util.Date;
+
+import org.mifos.sms.domain.SmsMessageStatusType;
+
+/** 
+ * Immutable data object representing the result of the submission of an outbound SMS message to the SMS gateway 
+ **/
+public class SmsOutboundMessageSubmitResult {
+	
+	private final Long id;
+	private final String gateway;
+	private final String externalId;
+	private final SmsMessageStatusType deliveryStatus;
+	private final Date submittedOnDateTime;
+	private final Date acknowledgedOnDateTime;
+	
+	/** 
+	 * SmsOutboundMessageSubmitResult constructor
+	 * 
+	 * @return void 
+	 **/
+	private SmsOutboundMessageSubmitResult(Long id, String gateway, String externalId, SmsMessageStatusType deliveryStatus, 
+			Date submittedOnDateTime, Date acknowledgedOnDateTime) {
+		this.id = id;
+		this.gateway = gateway;
+		this.externalId = externalId;
+		this.deliveryStatus = deliveryStatus;
+		this.submittedOnDateTime = submittedOnDateTime;
+		this.acknowledgedOnDateTime = acknowledgedOnDateTime;
+	}
+	
+	/** 
+	 * @return an instance of the SmsOutboundMessageSubmitResult class for a message accepted by the SMS gateway
+	 **/
+	public static SmsOutboundMessageSubmitResult accepted(Long id, String gateway, String externalId, 
+			SmsMessageStatusType deliveryStatus, Date submittedOnDateTime, Date acknowledgedOnDateTime) {
+		return new SmsOutboundMessageSubmitResult(id, gateway, externalId, deliveryStatus, submittedOnDateTime, 
+				acknowledgedOnDateTime);
+	}
+	
+	/** 
+	 * @return an instance of the SmsOutboundMessageSubmitResult class for a message the SMS gateway did not accept
+	 **/
+	public static SmsOutboundMessageSubmitResult failed(Long id, String gateway, Date submittedOnDateTime) {
+		return new SmsOutboundMessageSubmitResult(id, gateway, null, SmsMessageStatusType.FAILED, submittedOnDateTime, null);
+	}
+
+	/**
+	 * @return the id
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * @return the name of the SMS gateway the message was submitted to
+	 */
+	public String getGateway() {
+		return gateway;
+	}
+	/**
+	 * @return the id assigned by the SMS gateway, null if the message was not accepted
+	 */
+	public String getExternalId() {
+		return externalId;
+	}
+
+	/**
+	 * @return the deliveryStatus
+	 */
+	public SmsMessageStatusType getDeliveryStatus() {
+		return deliveryStatus;
+	}
+
+	/**
+	 * @return the submittedOnDateTime
+	 */
+	public Date getSubmittedOnDateTime() {
+		return submittedOnDateTime;
+	}
+
+	/**
+	 * @return the acknowledgedOnDateTime
+	 */
+	public Date getAcknowledgedOnDateTime() {
+		return acknowledgedOnDateTime;
+	}
+}
@@ -0,0 +1,86 @@
+package org.mifos.sms.domain;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/** 
+ * The SmsGatewayRoute entity class represents the smsGatewayRoute table, the SMS gateway the messages of a tenant 
+ * and/or to a mobile number prefix are sent through 
+ **/
+@Entity
+@Table(name = "smsGatewayRoute")
+public class SmsGatewayRoute extends AbstractPersistable<Long> {
+    
+    private static final long serialVersionUID = 1L;
+
+    @Column(name = "mifosTenantIdentifier", nullable = true)
+    private String mifosTenantIdentifier;
+    
+    @Column(name = "prefix", nullable = true)
+    private String prefix;
+    
+    @Column(name = "gateway", nullable = false)
+    private String gateway;
+    
+    @Column(name = "cost", nullable = false)
+    private BigDecimal cost;
+    
+    @Column(name = "weight", nullable = false)
+    private Integer weight;
+    
+    @Column(name = "isEnabled", nullable = false)
+    private Boolean isEnabled;
+    
+    protected SmsGatewayRoute() { }
+    
+    public SmsGatewayRoute(final String mifosTenantIdentifier, final String prefix, final String gateway, 
+            final BigDecimal cost, final Integer weight, final Boolean isEnabled) {
+        this.mifosTenantIdentifier = mifosTenantIdentifier;
+        this.prefix = prefix;
+        this.gateway = gateway;
+        this.cost = cost;
+        this.weight = weight;
+        this.isEnabled = isEnabled;
+    }
+    
+    /** 
+     * @return the tenant the route applies to, null if it applies to all tenants 
+     **/
+    public String getMifosTenantIdentifier() {
+        return this.mifosTenantIdentifier;
+    }
+    
+    /** 
+     * @return the leading digits of the mobile numbers the route applies to, null if it applies to all numbers 
+     **/
+    public String getPrefix() {
+        return this.prefix;
+    }
+    
+    /** 
+     * @return the name of the SMS gateway, see {@link org.mifos.sms.gateway.SmsGateway#getName()} 
+     **/
+    public String getGateway() {
+        return this.gateway;
+    }
+    
+    public BigDecimal getCost() {
+        return this.cost;
+    }
+    
+    /** 
+     * @return the share of the traffic of the route among the healthy routes of the same prefix and cost 
+     **/
+    public Integer getWeight() {
+        return this.weight;
+    }
+    
+    public Boolean isEnabled() {
+        return this.isEnabled;
+    }
+}
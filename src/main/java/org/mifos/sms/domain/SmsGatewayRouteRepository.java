@@ -0,0 +1,14 @@
+package org.mifos.sms.domain;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+public interface SmsGatewayRouteRepository extends JpaRepository<SmsGatewayRoute, Long>, JpaSpecificationExecutor<SmsGatewayRoute> {
+	
+	/** 
+	 * @return List of enabled {@link SmsGatewayRoute} objects
+	 **/
+	List<SmsGatewayRoute> findByIsEnabledTrue();
+}
@@ -0,0 +1,40 @@
+package org.mifos.sms.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Table;
+
+import org.springframework.data.jpa.domain.AbstractPersistable;
+
+/** 
+ * The SmsMessageBody entity class represents the smsMessageBody table, the distinct texts of the SMS messages keyed by 
+ * their SHA-256 hash. A body is never changed or deleted, the messages with the same text share it. 
+ **/
+@Entity
+@Table(name = "smsMessageBody")
+public class SmsMessageBody extends AbstractPersistable<Long> {
+    
+    private static final long serialVersionUID = 1L;
+
+    @Column(name = "hash", nullable = false)
+    private String hash;
+    
+    @Column(name = "message", nullable = false)
+    private String message;
+    
+    protected SmsMessageBody() { }
+    
+    /** 
+     * @return the SHA-256 hash of the UTF-8 encoded text, in hex 
+     **/
+    public String getHash() {
+        return this.hash;
+    }
+    
+    /** 
+     * @return the sms message text 
+     **/
+    public String getMessage() {
+        return this.message;
+    }
+}
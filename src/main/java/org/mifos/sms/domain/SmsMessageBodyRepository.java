@@ -0,0 +1,17 @@
+package org.mifos.sms.domain;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SmsMessageBodyRepository extends JpaRepository<SmsMessageBody, Long> {
+	
+	/** 
+	 * find {@link SmsMessageBody} objects by hash
+	 * 
+	 * @param hashes -- SHA-256 hashes of the texts, in hex
+	 * @return List of {@link SmsMessageBody} objects
+	 **/
+	List<SmsMessageBody> findByHashIn(Collection<String> hashes);
+}
@@ -8,6 +8,7 @@ package org.mifos.sms.domain;
 public enum SmsMessageStatusType {
     INVALID(0, "smsMessageStatusType.invalid"), // unknown status type
     PENDING(100, "smsMessageStatusType.pending"), // message received from mifostenant and added to table
+    SUBMITTING(120, "smsMessageStatusType.submitting"), // message claimed by the send job, being submitted to the SMS gateway
     WAITING_FOR_REPORT(150, "smsMessageStatusType.pending"),
     SENT(200, "smsMessageStatusType.sent"), // message sent to the SMS gateway
     DELIVERED(300, "smsMessageStatusType.delivered"), // SMS gateway's attempt to deliver message to recipient's phone was successful
@@ -31,6 +32,9 @@ public enum SmsMessageStatusType {
             case 100:
                 enumeration = SmsMessageStatusType.PENDING;
             break;
+            case 120:
+                enumeration = SmsMessageStatusType.SUBMITTING;
+            break;
             case 150:
                 enumeration = SmsMessageStatusType.WAITING_FOR_REPORT;
             break;
@@ -11,6 +11,8 @@ import javax.persistence.TemporalType;
 import org.joda.time.LocalDate;
 import org.mifos.sms.data.EnumOptionData;
 import org.mifos.sms.data.SmsOutboundMessageData;
+import org.mifos.sms.data.SmsOutboundMessageResponseData;
+import org.mifos.sms.helper.HelperClass.DateTimeConverter;
 import org.springframework.data.jpa.domain.AbstractPersistable;
 
 /** 
@@ -49,6 +51,43 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
 	@Temporal(TemporalType.DATE)
     private Date deliveredOnDate;
 	
+	@Column(name = "queuedOnDateTime", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+    private Date queuedOnDateTime;
+	
+	@Column(name = "claimedOnDateTime", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+    private Date claimedOnDateTime;
+	
+	// identifies the send job run that claimed the message, only set by SmsOutboundMessageRepository.claim
+	@Column(name = "claimedBy", nullable = true, insertable = false, updatable = false)
+    private String claimedBy;
+	
+	// name of the SMS gateway the message was submitted to, only set by SmsOutboundMessageRepository.updateSubmitResult
+	@Column(name = "gateway", nullable = true, insertable = false, updatable = false)
+    private String gateway;
+	
+	@Column(name = "submittedOnDateTime", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+    private Date submittedOnDateTime;
+	
+	@Column(name = "acknowledgedOnDateTime", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+    private Date acknowledgedOnDateTime;
+	
+	@Column(name = "deliveredOnDateTime", nullable = true)
+	@Temporal(TemporalType.TIMESTAMP)
+    private Date deliveredOnDateTime;
+	
+	// maintained by the smsOutboundMessage triggers, see sms_outbound_message_status_sequence.sql
+	@Column(name = "statusSequence", nullable = true, insertable = false, updatable = false)
+    private Long statusSequence;
+	
+	// the database time the status sequence was taken, maintained by the triggers too
+	@Column(name = "statusSequenceOnDateTime", nullable = true, insertable = false, updatable = false)
+	@Temporal(TemporalType.TIMESTAMP)
+    private Date statusSequenceOnDateTime;
+	
 	@Column(name = "deliveryStatus", nullable = false)
     private Integer deliveryStatus = SmsMessageStatusType.PENDING.getValue();
 	
@@ -61,9 +100,13 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
 	@Column(name = "mobileNumber", nullable = false)
     private String mobileNumber;
 	
-	@Column(name = "message", nullable = false)
+	// null for the messages whose text is in the smsMessageBody table
+	@Column(name = "message", nullable = true)
     private String message;
 	
+	@Column(name = "messageBodyId", nullable = true)
+    private Long messageBodyId;
+	
 	/** 
 	 * SmsOutboundMessage constructor
 	 * 
@@ -195,6 +238,97 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
 		this.deliveredOnDate = deliveredOnDate;
 	}
 	
+	/** 
+	 * @return the date and time (millisecond precision) the message was added to the queue 
+	 **/
+	public Date getQueuedOnDateTime() {
+		return queuedOnDateTime;
+	}
+	
+	/** 
+	 * set the date and time the message was added to the queue 
+	 **/
+	public void setQueuedOnDateTime(Date queuedOnDateTime) {
+		this.queuedOnDateTime = queuedOnDateTime;
+	}
+	
+	/** 
+	 * @return the date and time (millisecond precision) the send job picked up the message 
+	 **/
+	public Date getClaimedOnDateTime() {
+		return claimedOnDateTime;
+	}
+	
+	/** 
+	 * @return the identifier of the send job run that claimed the message 
+	 **/
+	public String getClaimedBy() {
+		return claimedBy;
+	}
+	
+	/** 
+	 * @return the name of the SMS gateway the message was submitted to, null if it was not submitted yet 
+	 **/
+	public String getGateway() {
+		return gateway;
+	}
+	
+	/** 
+	 * set the date and time the send job picked up the message 
+	 **/
+	public void setClaimedOnDateTime(Date claimedOnDateTime) {
+		this.claimedOnDateTime = claimedOnDateTime;
+	}
+	
+	/** 
+	 * @return the date and time (millisecond precision) the message was submitted to the sms gateway 
+	 **/
+	public Date getSubmittedOnDateTime() {
+		return submittedOnDateTime;
+	}
+	
+	/** 
+	 * set the date and time the message was submitted to the sms gateway 
+	 **/
+	public void setSubmittedOnDateTime(Date submittedOnDateTime) {
+		this.submittedOnDateTime = submittedOnDateTime;
+	}
+	
+	/** 
+	 * @return the date and time (millisecond precision) the sms gateway accepted the message 
+	 **/
+	public Date getAcknowledgedOnDateTime() {
+		return acknowledgedOnDateTime;
+	}
+	
+	/** 
+	 * set the date and time the sms gateway accepted the message 
+	 **/
+	public void setAcknowledgedOnDateTime(Date acknowledgedOnDateTime) {
+		this.acknowledgedOnDateTime = acknowledgedOnDateTime;
+	}
+	
+	/** 
+	 * @return the date and time (millisecond precision) the message was delivered to the recipient phone 
+	 **/
+	public Date getDeliveredOnDateTime() {
+		return deliveredOnDateTime;
+	}
+	
+	/** 
+	 * set the date and time the message was delivered to the recipient phone 
+	 **/
+	public void setDeliveredOnDateTime(Date deliveredOnDateTime) {
+		this.deliveredOnDateTime = deliveredOnDateTime;
+	}
+	
+	/** 
+	 * @return the value of the status sequence when the message was added or its status last changed 
+	 **/
+	public Long getStatusSequence() {
+		return statusSequence;
+	}
+	
 	/** 
 	 * @return the current delivery status 
 	 **/
@@ -236,6 +370,16 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
 		return mobileNumber;
 	}
 	
+	/** 
+	 * set the value of the mobile number
+	 * 
+	 * @param mobileNumber the sms message recipient mobile number
+	 * @return void
+	 **/
+	public void setMobileNumber(String mobileNumber) {
+		this.mobileNumber = mobileNumber;
+	}
+	
 	/** 
 	 * @return the sender of the sms message
 	 **/
@@ -244,12 +388,30 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
 	}
 	
 	/** 
-	 * @return the sms message text 
+	 * @return the sms message text, null if it is stored in the smsMessageBody table 
 	 **/
 	public String getMessage() {
 		return message;
 	}
 	
+	/** 
+	 * @return the id of the text in the smsMessageBody table, null for the messages stored with their text 
+	 **/
+	public Long getMessageBodyId() {
+		return messageBodyId;
+	}
+	
+	/** 
+	 * store the text of the message in the smsMessageBody table
+	 * 
+	 * @param messageBodyId the id of the text in the smsMessageBody table
+	 * @return void
+	 **/
+	public void setMessageBodyId(Long messageBodyId) {
+		this.messageBodyId = messageBodyId;
+		this.message = null;
+	}
+	
 	/** 
 	 * convert SmsOutboundMessage to SmsOutboundMessageData
 	 * 
@@ -259,8 +421,25 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
 	    final EnumOptionData deliveryStatus = SmsMessageEnumerations.status(this.deliveryStatus);
 	    
 	    return SmsOutboundMessageData.getInstance(this.getId(), this.externalId, this.internalId, this.mifosTenantIdentifier, this.createdOnDate, 
-	            this.submittedOnDate, this.addedOnDate, this.deliveredOnDate, deliveryStatus, this.deliveryErrorMessage, this.mobileNumber, 
-	            this.deliveryErrorMessage);
+	            this.submittedOnDate, this.addedOnDate, this.deliveredOnDate, this.queuedOnDateTime, this.claimedOnDateTime, 
+	            this.submittedOnDateTime, this.acknowledgedOnDateTime, this.deliveredOnDateTime, deliveryStatus, 
+	            this.deliveryErrorMessage, this.mobileNumber, this.deliveryErrorMessage);
+	}
+
+	/** 
+	 * convert SmsOutboundMessage to SmsOutboundMessageResponseData, the representation returned to Mifos
+	 * 
+	 * @return object of type SmsOutboundMessageResponseData
+	 **/
+	public SmsOutboundMessageResponseData toResponseData() {
+	    final String addedOn = (this.addedOnDate != null) ? new LocalDate(this.addedOnDate).toString() : null;
+	    final String deliveredOn = (this.deliveredOnDate != null) ? new LocalDate(this.deliveredOnDate).toString() : null;
+	    
+	    return SmsOutboundMessageResponseData.getInstance(this.internalId, this.getId(), addedOn, deliveredOn, 
+	            DateTimeConverter.toDateTimeString(this.queuedOnDateTime), DateTimeConverter.toDateTimeString(this.claimedOnDateTime), 
+	            DateTimeConverter.toDateTimeString(this.submittedOnDateTime), 
+	            DateTimeConverter.toDateTimeString(this.acknowledgedOnDateTime), 
+	            DateTimeConverter.toDateTimeString(this.deliveredOnDateTime), this.deliveryStatus, false, "");
 	}
 
     /* (non-Javadoc)
@@ -271,7 +450,9 @@ public class SmsOutboundMessage extends AbstractPersistable<Long> {
         return "SmsOutboundMessage [externalId=" + externalId + ", internalId=" + internalId
                 + ", mifosTenantIdentifier=" + mifosTenantIdentifier + ", createdOnDate=" + createdOnDate
                 + ", submittedOnDate=" + submittedOnDate + ", addedOnDate=" + addedOnDate + ", deliveredOnDate="
-                + deliveredOnDate + ", deliveryStatus=" + deliveryStatus + ", deliveryErrorMessage="
+                + deliveredOnDate + ", queuedOnDateTime=" + queuedOnDateTime + ", claimedOnDateTime=" + claimedOnDateTime
+                + ", submittedOnDateTime=" + submittedOnDateTime + ", acknowledgedOnDateTime=" + acknowledgedOnDateTime
+                + ", deliveredOnDateTime=" + deliveredOnDateTime + ", deliveryStatus=" + deliveryStatus + ", deliveryErrorMessage="
                 + deliveryErrorMessage + ", sourceAddress=" + sourceAddress + ", mobileNumber=" + mobileNumber
                 + ", message=" + message + "]";
     }
@@ -1,10 +1,17 @@
 package org.mifos.sms.domain;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface SmsOutboundMessageRepository extends JpaRepository<SmsOutboundMessage, Long>, JpaSpecificationExecutor<SmsOutboundMessage> {
 	
@@ -16,6 +23,14 @@ public interface SmsOutboundMessageRepository extends JpaRepository<SmsOutboundM
      * @return List of {@link SmsMessageStatusType} list
      **/
     List<SmsOutboundMessage> findByDeliveryStatus(Integer deliveryStatus, Pageable pageable);
+    
+    /** 
+     * count {@link SmsOutboundMessage} objects by delivery status
+     * 
+     * @param deliveryStatus -- {@link SmsMessageStatusType} deliveryStatus
+     * @return number of messages with the given delivery status
+     **/
+    long countByDeliveryStatus(Integer deliveryStatus);
 	
 	/** 
 	 * find {@link SmsMessageStatusType} object by externalId
@@ -26,11 +41,370 @@ public interface SmsOutboundMessageRepository extends JpaRepository<SmsOutboundM
 	SmsOutboundMessage findByExternalId(String externalId);
 	
 	/** 
-	 * find {@link SmsMessageStatusType} objects with id in "idList" and mifosTenantIdentifier equal to "mifosTenantIdentifier"
+	 * find the status and lifecycle timestamps of the messages with id in "idList" and mifosTenantIdentifier equal to 
+	 * "mifosTenantIdentifier", without loading the entities 
+	 * 
+	 * @param idList -- {@link SmsOutboundMessage} id list
+	 * @param mifosTenantIdentifier -- Mifos X tenant identifier e.g. demo
+	 * @return List of {@link SmsOutboundMessageStatusData} objects
+	 **/
+	@Query("select new org.mifos.sms.data.SmsOutboundMessageStatusData(message.id, message.internalId, "
+			+ "message.mifosTenantIdentifier, message.addedOnDate, message.deliveredOnDate, message.queuedOnDateTime, "
+			+ "message.claimedOnDateTime, message.submittedOnDateTime, message.acknowledgedOnDateTime, "
+			+ "message.deliveredOnDateTime, message.deliveryStatus) from SmsOutboundMessage message "
+			+ "where message.id in :idList and message.mifosTenantIdentifier = :mifosTenantIdentifier")
+	List<SmsOutboundMessageStatusData> findStatusDataByIdInAndMifosTenantIdentifier(@Param("idList") List<Long> idList, 
+			@Param("mifosTenantIdentifier") String mifosTenantIdentifier);
+	
+	/** 
+	 * find {@link SmsOutboundMessage} objects of a gateway waiting for a delivery report that was not received in time, 
+	 * ordered by id. Messages submitted before the lifecycle timestamps existed are matched on their submit date, messages 
+	 * submitted before the gateway was recorded are matched for every gateway.
+	 * 
+	 * @param gateway -- the name of the SMS gateway the messages were submitted to
+	 * @param deliveryStatuses -- {@link SmsMessageStatusType} values of messages waiting for a delivery report
+	 * @param id -- only messages with an id greater than this one are returned
+	 * @param submittedAfter -- only messages submitted after this date are returned
+	 * @param submittedBefore -- only messages submitted before this date are returned
+	 * @param pageable -- Abstract interface for pagination information.
+	 * @return List of {@link SmsOutboundMessage} objects
+	 **/
+	@Query("select message from SmsOutboundMessage message where message.deliveryStatus in :deliveryStatuses "
+			+ "and (message.gateway = :gateway or message.gateway is null) "
+			+ "and message.id > :id and message.externalId is not null "
+			+ "and ((message.submittedOnDateTime > :submittedAfter and message.submittedOnDateTime < :submittedBefore) "
+			+ "or (message.submittedOnDateTime is null and message.submittedOnDate > :submittedAfter "
+			+ "and message.submittedOnDate < :submittedBefore)) order by message.id asc")
+	List<SmsOutboundMessage> findOverdueDeliveryReports(@Param("gateway") String gateway, 
+			@Param("deliveryStatuses") List<Integer> deliveryStatuses, 
+			@Param("id") Long id, @Param("submittedAfter") Date submittedAfter, 
+			@Param("submittedBefore") Date submittedBefore, Pageable pageable);
+	
+	/** 
+	 * find the status and lifecycle timestamps of the messages of a tenant added or whose status changed after the given 
+	 * status sequence, ordered by status sequence, without loading the entities. The sequences are taken before the 
+	 * transactions commit, so only the changes before the first held back sequence (see 
+	 * {@link #findFirstHeldBackStatusSequence(String, Long, Date)}) that were taken before heldBackAfter are returned. 
 	 * 
-	 * @param idList -- {@link SmsMessageStatusType} id list
 	 * @param mifosTenantIdentifier -- Mifos X tenant identifier e.g. demo
-	 * @return List of {@link SmsMessageStatusType} objects
+	 * @param statusSequence -- the status sequence (cursor) of the last change already seen
+	 * @param heldBackStatusSequence -- the first held back status sequence, the upper bound of the changes
+	 * @param heldBackAfter -- the changes whose sequence was taken after this database time are held back
+	 * @param pageable -- Abstract interface for pagination information.
+	 * @return List of {@link SmsOutboundMessageStatusData} objects
+	 **/
+	@Query("select new org.mifos.sms.data.SmsOutboundMessageStatusData(message.id, message.internalId, "
+			+ "message.mifosTenantIdentifier, message.addedOnDate, message.deliveredOnDate, message.queuedOnDateTime, "
+			+ "message.claimedOnDateTime, message.submittedOnDateTime, message.acknowledgedOnDateTime, "
+			+ "message.deliveredOnDateTime, message.deliveryStatus, message.statusSequence) from SmsOutboundMessage message "
+			+ "where message.mifosTenantIdentifier = :mifosTenantIdentifier and message.statusSequence > :statusSequence "
+			+ "and message.statusSequence < :heldBackStatusSequence and (message.statusSequenceOnDateTime is null "
+			+ "or message.statusSequenceOnDateTime <= :heldBackAfter) "
+			+ "order by message.statusSequence asc")
+	List<SmsOutboundMessageStatusData> findStatusDataChangedSince(@Param("mifosTenantIdentifier") String mifosTenantIdentifier, 
+			@Param("statusSequence") Long statusSequence, @Param("heldBackStatusSequence") Long heldBackStatusSequence, 
+			@Param("heldBackAfter") Date heldBackAfter, Pageable pageable);
+	
+	/** 
+	 * find the first status sequence of a tenant after the given one that was taken after heldBackAfter, read from the 
+	 * mifosTenantIdentifier_statusSequenceOnDateTime index 
+	 * 
+	 * @param mifosTenantIdentifier -- Mifos X tenant identifier e.g. demo
+	 * @param statusSequence -- the status sequence (cursor) of the last change already seen
+	 * @param heldBackAfter -- database time from which on the sequences are held back
+	 * @return the status sequence, null if no change after the cursor is held back
+	 **/
+	@Query("select min(message.statusSequence) from SmsOutboundMessage message "
+			+ "where message.mifosTenantIdentifier = :mifosTenantIdentifier "
+			+ "and message.statusSequenceOnDateTime > :heldBackAfter and message.statusSequence > :statusSequence")
+	Long findFirstHeldBackStatusSequence(@Param("mifosTenantIdentifier") String mifosTenantIdentifier, 
+			@Param("statusSequence") Long statusSequence, @Param("heldBackAfter") Date heldBackAfter);
+	
+	/** 
+	 * delete the tickets of the status sequence below the highest one, the highest stays so that the auto-increment 
+	 * value survives a restart of the database 
+	 * 
+	 * @return number of deleted tickets, at most 10000 per call
+	 **/
+	@Modifying
+	@Transactional
+	@Query(value = "delete from smsOutboundMessageStatusSequence where id < (select latest.id from "
+			+ "(select max(id) as id from smsOutboundMessageStatusSequence) latest) order by id limit 10000", nativeQuery = true)
+	int deleteOldStatusSequenceTickets();
+	
+	/** 
+	 * @return the current date and time of the database, the clock of the status sequence timestamps 
+	 **/
+	@Query(value = "select sysdate(3)", nativeQuery = true)
+	Date getDatabaseDateTime();
+	
+	/** 
+	 * find the status and lifecycle timestamps of a message by id, without loading the entity 
+	 * 
+	 * @param id -- {@link SmsOutboundMessage} id
+	 * @return {@link SmsOutboundMessageStatusData}, null if there is no such message
+	 **/
+	@Query("select new org.mifos.sms.data.SmsOutboundMessageStatusData(message.id, message.internalId, "
+			+ "message.mifosTenantIdentifier, message.addedOnDate, message.deliveredOnDate, message.queuedOnDateTime, "
+			+ "message.claimedOnDateTime, message.submittedOnDateTime, message.acknowledgedOnDateTime, "
+			+ "message.deliveredOnDateTime, message.deliveryStatus) from SmsOutboundMessage message where message.id = :id")
+	SmsOutboundMessageStatusData findStatusDataById(@Param("id") Long id);
+	
+	/** 
+	 * find the status and lifecycle timestamps of a message by the id assigned by the SMS gateway, without loading the entity 
+	 * 
+	 * @param externalId -- {@link SmsOutboundMessage} externalId
+	 * @return {@link SmsOutboundMessageStatusData}, null if there is no such message
+	 **/
+	@Query("select new org.mifos.sms.data.SmsOutboundMessageStatusData(message.id, message.internalId, "
+			+ "message.mifosTenantIdentifier, message.addedOnDate, message.deliveredOnDate, message.queuedOnDateTime, "
+			+ "message.claimedOnDateTime, message.submittedOnDateTime, message.acknowledgedOnDateTime, "
+			+ "message.deliveredOnDateTime, message.deliveryStatus) from SmsOutboundMessage message "
+			+ "where message.externalId = :externalId")
+	SmsOutboundMessageStatusData findStatusDataByExternalId(@Param("externalId") String externalId);
+	
+	/** 
+	 * find the status and lifecycle timestamps of the messages of a tenant by their id in the Mifos tenant 
+	 * 
+	 * @param mifosTenantIdentifier -- Mifos X tenant identifier e.g. demo
+	 * @param internalIds -- ids of the messages in the Mifos tenant
+	 * @return List of {@link SmsOutboundMessageStatusData} objects
+	 **/
+	@Query("select new org.mifos.sms.data.SmsOutboundMessageStatusData(message.id, message.internalId, "
+			+ "message.mifosTenantIdentifier, message.addedOnDate, message.deliveredOnDate, message.queuedOnDateTime, "
+			+ "message.claimedOnDateTime, message.submittedOnDateTime, message.acknowledgedOnDateTime, "
+			+ "message.deliveredOnDateTime, message.deliveryStatus) from SmsOutboundMessage message "
+			+ "where message.mifosTenantIdentifier = :mifosTenantIdentifier and message.internalId in :internalIds")
+	List<SmsOutboundMessageStatusData> findStatusDataByInternalIds(@Param("mifosTenantIdentifier") String mifosTenantIdentifier, 
+			@Param("internalIds") Collection<Long> internalIds);
+	
+	/** 
+	 * set the delivery status of a message, without loading the entity 
+	 * 
+	 * @param id -- {@link SmsOutboundMessage} id
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus where message.id = :id")
+	int updateDeliveryStatus(@Param("id") Long id, @Param("deliveryStatus") Integer deliveryStatus);
+	
+	/** 
+	 * set the delivery status of several messages, without loading the entities 
+	 * 
+	 * @param ids -- {@link SmsOutboundMessage} ids
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus where message.id in :ids")
+	int updateDeliveryStatus(@Param("ids") Collection<Long> ids, @Param("deliveryStatus") Integer deliveryStatus);
+	
+	/** 
+	 * set the delivery status of a message by the id assigned by the SMS gateway, without loading the entity 
+	 * 
+	 * @param externalId -- {@link SmsOutboundMessage} externalId
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus where message.externalId = :externalId")
+	int updateDeliveryStatusByExternalId(@Param("externalId") String externalId, @Param("deliveryStatus") Integer deliveryStatus);
+	
+	/** 
+	 * set the delivery status and delivery date of a message, without loading the entity 
+	 * 
+	 * @param id -- {@link SmsOutboundMessage} id
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @param deliveredOnDate -- the delivery date
+	 * @param deliveredOnDateTime -- the delivery date and time
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus, "
+			+ "message.deliveredOnDate = :deliveredOnDate, message.deliveredOnDateTime = :deliveredOnDateTime "
+			+ "where message.id = :id")
+	int updateDeliveryStatusAndDeliveredOn(@Param("id") Long id, @Param("deliveryStatus") Integer deliveryStatus, 
+			@Param("deliveredOnDate") Date deliveredOnDate, @Param("deliveredOnDateTime") Date deliveredOnDateTime);
+	
+	/** 
+	 * set the delivery status and delivery date of a message by the id assigned by the SMS gateway, without loading the entity 
+	 * 
+	 * @param externalId -- {@link SmsOutboundMessage} externalId
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value
+	 * @param deliveredOnDate -- the delivery date
+	 * @param deliveredOnDateTime -- the delivery date and time
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus, "
+			+ "message.deliveredOnDate = :deliveredOnDate, message.deliveredOnDateTime = :deliveredOnDateTime "
+			+ "where message.externalId = :externalId")
+	int updateDeliveryStatusAndDeliveredOnByExternalId(@Param("externalId") String externalId, 
+			@Param("deliveryStatus") Integer deliveryStatus, @Param("deliveredOnDate") Date deliveredOnDate, 
+			@Param("deliveredOnDateTime") Date deliveredOnDateTime);
+	
+	/** 
+	 * record the result of the submission of a message to the SMS gateway, without loading the entity. The status is set 
+	 * separately with {@link #updateDeliveryStatus(Collection, Integer, Integer)} so that it does not overwrite the status 
+	 * of a delivery report received in the meantime.
+	 * 
+	 * @param id -- {@link SmsOutboundMessage} id
+	 * @param gateway -- the name of the SMS gateway the message was submitted to
+	 * @param externalId -- the id assigned by the SMS gateway, null if the gateway rejected the message
+	 * @param submittedOnDate -- the date the message was submitted to the SMS gateway
+	 * @param submittedOnDateTime -- the date and time the message was submitted to the SMS gateway
+	 * @param acknowledgedOnDateTime -- the date and time the SMS gateway accepted the message, null if it was rejected
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.gateway = :gateway, message.externalId = :externalId, "
+			+ "message.submittedOnDate = :submittedOnDate, message.submittedOnDateTime = :submittedOnDateTime, "
+			+ "message.acknowledgedOnDateTime = :acknowledgedOnDateTime where message.id = :id")
+	int updateSubmitResult(@Param("id") Long id, @Param("gateway") String gateway, @Param("externalId") String externalId, 
+			@Param("submittedOnDate") Date submittedOnDate, @Param("submittedOnDateTime") Date submittedOnDateTime, 
+			@Param("acknowledgedOnDateTime") Date acknowledgedOnDateTime);
+	
+	/** 
+	 * set the delivery status of the messages that still have the given status, without loading the entities 
+	 * 
+	 * @param ids -- {@link SmsOutboundMessage} ids
+	 * @param currentDeliveryStatus -- only messages with this {@link SmsMessageStatusType} value are updated
+	 * @param deliveryStatus -- the new {@link SmsMessageStatusType} value
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus "
+			+ "where message.id in :ids and message.deliveryStatus = :currentDeliveryStatus")
+	int updateDeliveryStatus(@Param("ids") Collection<Long> ids, @Param("currentDeliveryStatus") Integer currentDeliveryStatus, 
+			@Param("deliveryStatus") Integer deliveryStatus);
+	
+	/** 
+	 * set the delivery status of a message if it still has the given status, without loading the entity 
+	 * 
+	 * @param id -- {@link SmsOutboundMessage} id
+	 * @param currentDeliveryStatus -- the message is only updated if it has this {@link SmsMessageStatusType} value
+	 * @param deliveryStatus -- the new {@link SmsMessageStatusType} value
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus "
+			+ "where message.id = :id and message.deliveryStatus = :currentDeliveryStatus")
+	int updateDeliveryStatus(@Param("id") Long id, @Param("currentDeliveryStatus") Integer currentDeliveryStatus, 
+			@Param("deliveryStatus") Integer deliveryStatus);
+	
+	/** 
+	 * set the delivery status and delivery date of a message if it still has the given status, without loading the entity 
+	 * 
+	 * @param id -- {@link SmsOutboundMessage} id
+	 * @param currentDeliveryStatus -- the message is only updated if it has this {@link SmsMessageStatusType} value
+	 * @param deliveryStatus -- the new {@link SmsMessageStatusType} value
+	 * @param deliveredOnDate -- the delivery date
+	 * @param deliveredOnDateTime -- the delivery date and time
+	 * @return number of updated messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :deliveryStatus, "
+			+ "message.deliveredOnDate = :deliveredOnDate, message.deliveredOnDateTime = :deliveredOnDateTime "
+			+ "where message.id = :id and message.deliveryStatus = :currentDeliveryStatus")
+	int updateDeliveryStatusAndDeliveredOn(@Param("id") Long id, @Param("currentDeliveryStatus") Integer currentDeliveryStatus, 
+			@Param("deliveryStatus") Integer deliveryStatus, @Param("deliveredOnDate") Date deliveredOnDate, 
+			@Param("deliveredOnDateTime") Date deliveredOnDateTime);
+	
+	/** 
+	 * find the ids of {@link SmsOutboundMessage} objects by delivery status, ordered by id 
+	 * 
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} deliveryStatus
+	 * @param pageable -- Abstract interface for pagination information.
+	 * @return List of ids
+	 **/
+	@Query("select message.id from SmsOutboundMessage message where message.deliveryStatus = :deliveryStatus order by message.id asc")
+	List<Long> findIdsByDeliveryStatus(@Param("deliveryStatus") Integer deliveryStatus, Pageable pageable);
+	
+	/** 
+	 * claim pending messages for a send job run. A message claimed by another run in the meantime is skipped. 
+	 * 
+	 * @param ids -- {@link SmsOutboundMessage} ids
+	 * @param pendingStatus -- the {@link SmsMessageStatusType} value of messages that can be claimed
+	 * @param claimedStatus -- the {@link SmsMessageStatusType} value of claimed messages
+	 * @param claimedBy -- identifies the send job run
+	 * @param claimedOnDateTime -- the date and time the messages were claimed
+	 * @return number of claimed messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :claimedStatus, message.claimedBy = :claimedBy, "
+			+ "message.claimedOnDateTime = :claimedOnDateTime where message.id in :ids and message.deliveryStatus = :pendingStatus")
+	int claim(@Param("ids") Collection<Long> ids, @Param("pendingStatus") Integer pendingStatus, 
+			@Param("claimedStatus") Integer claimedStatus, @Param("claimedBy") String claimedBy, 
+			@Param("claimedOnDateTime") Date claimedOnDateTime);
+	
+	/** 
+	 * find the messages claimed by a send job run, ordered by id 
+	 * 
+	 * @param claimedBy -- identifies the send job run
+	 * @param deliveryStatus -- {@link SmsMessageStatusType} value of claimed messages
+	 * @return List of {@link SmsOutboundMessage} objects
+	 **/
+	List<SmsOutboundMessage> findByClaimedByAndDeliveryStatusOrderByIdAsc(String claimedBy, Integer deliveryStatus);
+	
+	/** 
+	 * fail the messages that were claimed before the given date and never got a submit result, e.g. because the 
+	 * application stopped while submitting them. They are not sent again since they may have reached the SMS gateway. 
+	 * 
+	 * @param claimedStatus -- the {@link SmsMessageStatusType} value of claimed messages
+	 * @param failedStatus -- the {@link SmsMessageStatusType} value of failed messages
+	 * @param deliveryErrorMessage -- the error message set on the failed messages
+	 * @param claimedBefore -- only messages claimed before this date are failed
+	 * @return number of failed messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :failedStatus, "
+			+ "message.deliveryErrorMessage = :deliveryErrorMessage "
+			+ "where message.deliveryStatus = :claimedStatus and message.claimedOnDateTime < :claimedBefore")
+	int failInterruptedSubmits(@Param("claimedStatus") Integer claimedStatus, @Param("failedStatus") Integer failedStatus, 
+			@Param("deliveryErrorMessage") String deliveryErrorMessage, @Param("claimedBefore") Date claimedBefore);
+	
+	/** 
+	 * give claimed messages that were not submitted back, so that the next send job run on any node claims them 
+	 * 
+	 * @param ids -- {@link SmsOutboundMessage} ids
+	 * @param claimedStatus -- the {@link SmsMessageStatusType} value of claimed messages
+	 * @param pendingStatus -- the {@link SmsMessageStatusType} value of messages that can be claimed
+	 * @return number of released messages
+	 **/
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :pendingStatus, message.claimedBy = null, "
+			+ "message.claimedOnDateTime = null where message.id in :ids and message.deliveryStatus = :claimedStatus")
+	int release(@Param("ids") Collection<Long> ids, @Param("claimedStatus") Integer claimedStatus, 
+			@Param("pendingStatus") Integer pendingStatus);
+	
+	/** 
+	 * fail the messages of a send job run that never got a submit result, see 
+	 * {@link #failInterruptedSubmits(Integer, Integer, String, Date)} 
+	 * 
+	 * @param claimedBy -- identifies the send job run
+	 * @param claimedStatus -- the {@link SmsMessageStatusType} value of claimed messages
+	 * @param failedStatus -- the {@link SmsMessageStatusType} value of failed messages
+	 * @param deliveryErrorMessage -- the error message set on the failed messages
+	 * @return number of failed messages
 	 **/
-	List<SmsOutboundMessage> findByIdInAndMifosTenantIdentifier(List<Long> idList, String mifosTenantIdentifier);
+	@Modifying
+	@Transactional
+	@Query("update SmsOutboundMessage message set message.deliveryStatus = :failedStatus, "
+			+ "message.deliveryErrorMessage = :deliveryErrorMessage "
+			+ "where message.claimedBy = :claimedBy and message.deliveryStatus = :claimedStatus")
+	int failClaim(@Param("claimedBy") String claimedBy, @Param("claimedStatus") Integer claimedStatus, 
+			@Param("failedStatus") Integer failedStatus, @Param("deliveryErrorMessage") String deliveryErrorMessage);
 }
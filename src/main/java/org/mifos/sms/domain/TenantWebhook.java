@@ -0,0 +1,57 @@
+package org.mifos.sms.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/** 
+ * The TenantWebhook entity class represents the tenantWebhook table, the URL delivery status changes of a tenant's 
+ * messages are pushed to 
+ **/
+@Entity
+@Table(name = "tenantWebhook")
+public class TenantWebhook {
+
+    @Id
+    private String mifosTenantIdentifier;
+    
+    @Column(name = "url", nullable = false)
+    private String url;
+    
+    @Column(name = "authorizationHeader", nullable = true)
+    private String authorizationHeader;
+    
+    @Column(name = "isEnabled", nullable = false)
+    private Boolean isEnabled;
+
+    
+    protected TenantWebhook() { }
+    
+    public TenantWebhook(final String mifosTenantIdentifier, final String url, final String authorizationHeader, 
+            final Boolean isEnabled) {
+        this.mifosTenantIdentifier = mifosTenantIdentifier;
+        this.url = url;
+        this.authorizationHeader = authorizationHeader;
+        this.isEnabled = isEnabled;
+    }
+    
+    public String getMifosTenantIdentifier() {
+        return this.mifosTenantIdentifier;
+    }
+    
+    public String getUrl() {
+        return this.url;
+    }
+    
+    /** 
+     * @return value of the "Authorization" header sent with every request, null if none is sent 
+     **/
+    public String getAuthorizationHeader() {
+        return this.authorizationHeader;
+    }
+    
+    public Boolean isEnabled() {
+        return this.isEnabled;
+    }
+}
@@ -0,0 +1,14 @@
+package org.mifos.sms.domain;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+public interface TenantWebhookRepository extends JpaRepository<TenantWebhook, String>, JpaSpecificationExecutor<TenantWebhook> {
+	
+	/** 
+	 * @return List of enabled {@link TenantWebhook} objects
+	 **/
+	List<TenantWebhook> findByIsEnabledTrue();
+}
@@ -0,0 +1,42 @@
+package org.mifos.sms.gateway;
+
+import java.util.List;
+
+import org.mifos.sms.gateway.infobip.SmsGatewayMessage;
+
+/**
+ * SMS gateway provider. The implementations are Spring beans, the {@link SmsGatewayRouter} picks one per message.
+ * The send methods block until the gateway accepted or refused the messages, the send job runs them on the
+ * {@link SmsGatewayExecutor}.
+ **/
+public interface SmsGateway {
+	/**
+	 * @return the name of the gateway, used in the smsGatewayRoute table, as the "gateway" tag of the metrics and as the
+	 * {@link SmsGatewayExecutor} task kind of its submits
+	 **/
+	public String getName();
+
+	/**
+	 * @return true if the gateway can take messages now, e.g. its SMPP session is bound
+	 **/
+	public boolean isAvailable();
+
+	/**
+     * send batch of SMS messages to SMS gateway
+     *
+     * @param smsGatewayMessages List of SmsGatewayMessage objects
+     *
+     * @return List of SmsGatewayMessage objects
+     **/
+    public List<SmsGatewayMessage> sendMessages(List<SmsGatewayMessage> smsGatewayMessages);
+
+    /**
+     * Send SMS message to SMS gateway
+     *
+     * @param smsGatewayMessage SmsGatewayMessage object
+     *
+     * @return the message with the id assigned by the gateway (externalId) and its delivery status, without an
+     * externalId if the gateway did not accept it
+     **/
+    public SmsGatewayMessage sendMessage(SmsGatewayMessage smsGatewayMessage);
+}
@@ -0,0 +1,270 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.gateway;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the blocking gateway I/O, the submits of each {@link SmsGateway} and the processing of SMPP delivery receipts,
+ * configured from gateway.properties. With "gateway.executor=virtual" each task runs on a virtual thread of its own
+ * (when running on JDK 21 and later, looked up by reflection), otherwise on a pool of "gateway.executor.threads" platform
+ * threads.
+ *
+ * Each kind of task is limited by a semaphore of its own, the permit is taken by the thread that submits the task and
+ * released when the task ends. A caller submitting to a saturated gateway waits, so the executor never queues more
+ * tasks than there are permits. An SMPP submit of a concatenated SMS waits for the {@link #SMPP_SEGMENT} tasks of its
+ * parts, so the platform thread pool must be larger than the SMPP submits in flight.
+ **/
+@Component
+public class SmsGatewayExecutor {
+    public static final String INFOBIP = "infobip";
+    public static final String SMPP = "smpp";
+    public static final String SIMULATOR = "simulator";
+    public static final String SMPP_SEGMENT = "smppSegment";
+    public static final String DELIVERY_REPORT = "deliveryReport";
+
+    public static final String IN_FLIGHT = "sms.gateway.inflight";
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsGatewayExecutor.class);
+
+    private static final String VIRTUAL = "virtual";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final ExecutorService executorService;
+    private final boolean virtual;
+    private final Map<String, Semaphore> semaphores = new HashMap<>();
+    private final Map<String, Integer> permits = new HashMap<>();
+
+    @Autowired
+    public SmsGatewayExecutor(final MetricsRegistry metricsRegistry,
+            @Value("${gateway.executor}") final String executor,
+            @Value("${gateway.executor.threads}") final int threads,
+            @Value("${gateway.infobip.maxConcurrentSubmits}") final int maxConcurrentInfoBipSubmits,
+            @Value("${gateway.smpp.maxConcurrentSubmits}") final int maxConcurrentSmppSubmits,
+            @Value("${gateway.smpp.maxConcurrentSegmentSubmits}") final int maxConcurrentSmppSegmentSubmits,
+            @Value("${gateway.simulator.maxConcurrentSubmits}") final int maxConcurrentSimulatorSubmits,
+            @Value("${gateway.deliveryReport.maxConcurrent}") final int maxConcurrentDeliveryReports) {
+        ExecutorService virtualThreadExecutorService = null;
+
+        if (VIRTUAL.equalsIgnoreCase(executor)) {
+            virtualThreadExecutorService = newVirtualThreadPerTaskExecutor();
+        }
+
+        if (virtualThreadExecutorService != null) {
+            this.executorService = virtualThreadExecutorService;
+            this.virtual = true;
+        }
+
+        else {
+            if (threads <= maxConcurrentSmppSubmits) {
+                throw new IllegalArgumentException("gateway.executor.threads (" + threads
+                        + ") must be greater than gateway.smpp.maxConcurrentSubmits (" + maxConcurrentSmppSubmits + ")");
+            }
+
+            final AtomicInteger threadNumber = new AtomicInteger();
+
+            this.executorService = Executors.newFixedThreadPool(threads,
+                    runnable -> new Thread(runnable, "sms-gateway-" + threadNumber.incrementAndGet()));
+            this.virtual = false;
+        }
+
+        this.semaphores.put(INFOBIP, new Semaphore(maxConcurrentInfoBipSubmits));
+        this.semaphores.put(SMPP, new Semaphore(maxConcurrentSmppSubmits));
+        this.semaphores.put(SIMULATOR, new Semaphore(maxConcurrentSimulatorSubmits));
+        this.semaphores.put(SMPP_SEGMENT, new Semaphore(maxConcurrentSmppSegmentSubmits));
+        this.semaphores.put(DELIVERY_REPORT, new Semaphore(maxConcurrentDeliveryReports));
+
+        for (final Map.Entry<String, Semaphore> semaphore : this.semaphores.entrySet()) {
+            final int permits = semaphore.getValue().availablePermits();
+
+            this.permits.put(semaphore.getKey(), permits);
+            metricsRegistry.gauge(IN_FLIGHT, () -> permits - semaphore.getValue().availablePermits(), "task",
+                    semaphore.getKey());
+        }
+
+        logger.info("Gateway I/O runs on " + (this.virtual ? "virtual threads" : threads + " platform threads"));
+    }
+
+    /**
+     * @return the executor of Executors.newVirtualThreadPerTaskExecutor(), null if the JVM has no virtual threads
+     **/
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+
+        catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads need JDK 21 or later, running the gateway I/O on platform threads instead");
+
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the tasks run on virtual threads
+     **/
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * run a task, waiting for a permit of its kind first
+     *
+     * @param kind the kind of task, the name of a gateway ({@link #INFOBIP}, {@link #SMPP}, {@link #SIMULATOR}) for its
+     *        submits, {@link #SMPP_SEGMENT} for the parts of a concatenated SMS or {@link #DELIVERY_REPORT}
+     * @param task the task
+     * @return the result of the task
+     **/
+    public <T> CompletableFuture<T> submit(final String kind, final Supplier<T> task) {
+        final Semaphore semaphore = this.semaphores.get(kind);
+
+        if (semaphore == null) {
+            throw new IllegalArgumentException("Unknown task kind " + kind);
+        }
+
+        semaphore.acquireUninterruptibly();
+
+        return run(semaphore, task);
+    }
+
+    /**
+     * run a task without waiting for its result if a permit of its kind is free, never waits; a failure of the task is
+     * logged
+     *
+     * @param kind the kind of task, see {@link #submit(String, Supplier)}
+     * @param task the task
+     * @return false if no permit was free, the task is not run then
+     **/
+    public boolean tryExecute(final String kind, final Runnable task) {
+        final Semaphore semaphore = this.semaphores.get(kind);
+
+        if (semaphore == null) {
+            throw new IllegalArgumentException("Unknown task kind " + kind);
+        }
+
+        if (!semaphore.tryAcquire()) {
+            return false;
+        }
+
+        logFailure(kind, run(semaphore, () -> {
+            task.run();
+
+            return null;
+        }));
+
+        return true;
+    }
+
+    /**
+     * run a task holding a permit of the semaphore, the permit is released when the task ends
+     **/
+    private <T> CompletableFuture<T> run(final Semaphore semaphore, final Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.get();
+                }
+
+                finally {
+                    semaphore.release();
+                }
+            }, this.executorService);
+        }
+
+        catch (RejectedExecutionException e) {
+            semaphore.release();
+
+            throw e;
+        }
+    }
+
+    /**
+     * run a task without waiting for its result, see {@link #submit(String, Supplier)}; a failure of the task is logged
+     **/
+    public void execute(final String kind, final Runnable task) {
+        logFailure(kind, submit(kind, () -> {
+            task.run();
+
+            return null;
+        }));
+    }
+
+    private static void logFailure(final String kind, final CompletableFuture<?> future) {
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                logger.error("Failed to run a " + kind + " task: " + throwable.getMessage(), throwable);
+            }
+        });
+    }
+
+    /**
+     * wait until no task of a kind is running, the tasks submitted meanwhile wait for the running ones
+     *
+     * @param kind the kind of task, see {@link #submit(String, Supplier)}
+     * @param timeoutMillis the maximum time to wait
+     * @return true if no task of the kind was running anymore
+     **/
+    public boolean awaitIdle(final String kind, final long timeoutMillis) throws InterruptedException {
+        final Semaphore semaphore = this.semaphores.get(kind);
+
+        if (semaphore == null) {
+            throw new IllegalArgumentException("Unknown task kind " + kind);
+        }
+
+        final int permits = this.permits.get(kind);
+
+        if (!semaphore.tryAcquire(permits, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+
+        semaphore.release(permits);
+
+        return true;
+    }
+
+    /**
+     * stop taking tasks and wait for the running tasks, called when the application context is closed
+     **/
+    @PreDestroy
+    public void close() throws InterruptedException {
+        this.executorService.shutdown();
+
+        if (!this.executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Gateway tasks still running after " + SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+        }
+    }
+}
@@ -0,0 +1,458 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.gateway;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.mifos.sms.domain.SmsGatewayRoute;
+import org.mifos.sms.domain.SmsMessageStatusType;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The routes of the smsGatewayRoute table in digit tries keyed by the prefix, one for the routes of all tenants and one
+ * per tenant, with the live statistics of each route. The routes of a message are found by walking its mobile number
+ * once, O(length of the number) and without allocating; the deepest node holding a usable route wins.
+ *
+ * The routes of a node are tried cheapest first, the traffic of a cost is split between its healthy routes in
+ * proportion to their effective weight: the configured weight scaled by the share of submits the gateway accepted, the
+ * share of delivery reports that were delivered and a submit latency factor (1 at no latency, 0.5 at one second). A
+ * route is healthy if its gateway is available and refused at most "gateway.route.maxErrorRate" of its recent submits;
+ * an unhealthy route is tried again with one message every 30 seconds.
+ *
+ * The statistics are kept per route id, a reload of the table keeps them.
+ **/
+@Component
+public class SmsGatewayRouteTable {
+    public static final String LATENCY = "sms.gateway.route.latency";
+    public static final String ERROR_RATE = "sms.gateway.route.error.rate";
+    public static final String DELIVERY_RATE = "sms.gateway.route.delivery.rate";
+    public static final String WEIGHT = "sms.gateway.route.weight";
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsGatewayRouteTable.class);
+
+    // weight of the latest submit or delivery report in the moving averages
+    private static final double SMOOTHING = 0.1;
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // submit latency that halves the weight of a route
+    private static final double LATENCY_REFERENCE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // share of its weight a route keeps however bad its statistics, so that it still gets the messages that show a
+    // recovery
+    private static final double MINIMUM_WEIGHT_SHARE = 0.01;
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    private final MetricsRegistry metricsRegistry;
+    private final double maxErrorRate;
+    private final Map<Long, RouteStats> routeStats = new ConcurrentHashMap<>();
+
+    // replaced as a whole when the smsGatewayRoute table is reloaded
+    private volatile Tries tries = new Tries(new Node(), Collections.<String, Node>emptyMap());
+
+    @Autowired
+    public SmsGatewayRouteTable(final MetricsRegistry metricsRegistry,
+            @Value("${gateway.route.maxErrorRate}") final double maxErrorRate) {
+        this.metricsRegistry = metricsRegistry;
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    /**
+     * replace the routes
+     *
+     * @param smsGatewayRoutes the enabled routes
+     **/
+    public void load(final List<SmsGatewayRoute> smsGatewayRoutes) {
+        final Node root = new Node();
+        final Map<String, Node> tenantRoots = new HashMap<>();
+
+        for (final SmsGatewayRoute smsGatewayRoute : smsGatewayRoutes) {
+            final String prefix = (smsGatewayRoute.getPrefix() != null) ? smsGatewayRoute.getPrefix() : "";
+            final int offset = prefix.startsWith("+") ? 1 : 0;
+
+            if (!isDigits(prefix, offset)) {
+                logger.warn("Ignoring route " + smsGatewayRoute.getId() + " with the invalid prefix " + prefix);
+                continue;
+            }
+
+            Node node = (smsGatewayRoute.getMifosTenantIdentifier() != null)
+                    ? tenantRoots.computeIfAbsent(smsGatewayRoute.getMifosTenantIdentifier(), tenant -> new Node()) : root;
+
+            for (int index = offset; index < prefix.length(); index++) {
+                final int digit = prefix.charAt(index) - '0';
+
+                if (node.children[digit] == null) {
+                    node.children[digit] = new Node();
+                }
+
+                node = node.children[digit];
+            }
+
+            node.add(new Route(smsGatewayRoute, getRouteStats(smsGatewayRoute)));
+        }
+
+        this.tries = new Tries(root, tenantRoots);
+    }
+
+    /**
+     * @param mifosTenantIdentifier the tenant of the message
+     * @param mobileNumber the mobile number the message is sent to
+     * @param isAvailable tells if a gateway can take messages now
+     * @return the name of the gateway of the route to take, null if no route matches
+     **/
+    public String find(final String mifosTenantIdentifier, final String mobileNumber, final Predicate<String> isAvailable) {
+        final Tries tries = this.tries;
+        final Node tenantRoot = tries.tenantRoots.get(mifosTenantIdentifier);
+        final String number = (mobileNumber != null) ? mobileNumber : "";
+        final long now = System.nanoTime();
+
+        // a healthy route of the tenant, a healthy route of all tenants, the least bad available route of either
+        Route route = find(tenantRoot, number, isAvailable, now, true);
+
+        if (route == null) {
+            route = find(tries.root, number, isAvailable, now, true);
+        }
+
+        if (route != null) {
+            route.stats.probed(now);
+        }
+
+        else {
+            route = find(tenantRoot, number, isAvailable, now, false);
+
+            if (route == null) {
+                route = find(tries.root, number, isAvailable, now, false);
+            }
+        }
+
+        return (route != null) ? route.gateway : null;
+    }
+
+    /**
+     * record the outcome of a submit, feeds the latency and error rate of the route the message took
+     *
+     * @param mifosTenantIdentifier the tenant of the message
+     * @param mobileNumber the mobile number the message was sent to
+     * @param gateway the name of the gateway
+     * @param startNanos System.nanoTime() when the submit started
+     * @param accepted true if the gateway accepted the message
+     **/
+    public void recordSubmit(final String mifosTenantIdentifier, final String mobileNumber, final String gateway,
+            final long startNanos, final boolean accepted) {
+        final Route route = findTaken(mifosTenantIdentifier, mobileNumber, gateway);
+
+        if (route != null) {
+            route.stats.recordSubmit(System.nanoTime() - startNanos, accepted);
+        }
+    }
+
+    /**
+     * record a delivery report, feeds the delivery rate of the route the message took; only final statuses count
+     *
+     * @param mifosTenantIdentifier the tenant of the message
+     * @param mobileNumber the mobile number the message was sent to
+     * @param gateway the name of the gateway
+     * @param status the reported status
+     **/
+    public void recordDelivery(final String mifosTenantIdentifier, final String mobileNumber, final String gateway,
+            final SmsMessageStatusType status) {
+        if (status != SmsMessageStatusType.DELIVERED && status != SmsMessageStatusType.FAILED) {
+            return;
+        }
+
+        final Route route = findTaken(mifosTenantIdentifier, mobileNumber, gateway);
+
+        if (route != null) {
+            route.stats.recordDelivery(status == SmsMessageStatusType.DELIVERED);
+        }
+    }
+
+    /**
+     * walk the trie along the mobile number, the route of the deepest node that has one wins
+     *
+     * @param healthy true for the cheapest healthy route of a node, false for its available route with the fewest errors
+     **/
+    private Route find(final Node root, final String mobileNumber, final Predicate<String> isAvailable, final long now,
+            final boolean healthy) {
+        if (root == null) {
+            return null;
+        }
+
+        Route route = healthy ? pickHealthy(root, isAvailable, now) : pickAvailable(root, isAvailable);
+        Node node = root;
+
+        for (int index = digitsOffset(mobileNumber); index < mobileNumber.length(); index++) {
+            final int digit = mobileNumber.charAt(index) - '0';
+
+            if (digit < 0 || digit > 9 || (node = node.children[digit]) == null) {
+                break;
+            }
+
+            if (node.routes.length > 0) {
+                final Route nodeRoute = healthy ? pickHealthy(node, isAvailable, now) : pickAvailable(node, isAvailable);
+
+                if (nodeRoute != null) {
+                    route = nodeRoute;
+                }
+            }
+        }
+
+        return route;
+    }
+
+    /**
+     * @return a healthy route of the lowest cost, chosen at random in proportion to the effective weights, null if the
+     *         node has no healthy route
+     **/
+    private Route pickHealthy(final Node node, final Predicate<String> isAvailable, final long now) {
+        final Route[] routes = node.routes;
+        BigDecimal cost = null;
+        double totalWeight = 0;
+
+        for (final Route route : routes) {
+            if (cost != null && route.cost.compareTo(cost) > 0) {
+                break;
+            }
+
+            if (isAvailable.test(route.gateway) && route.stats.isHealthy(now, this.maxErrorRate)) {
+                cost = route.cost;
+                totalWeight += route.stats.getEffectiveWeight(route.weight);
+            }
+        }
+
+        if (cost == null) {
+            return null;
+        }
+
+        double choice = ThreadLocalRandom.current().nextDouble() * totalWeight;
+        Route chosenRoute = null;
+
+        for (final Route route : routes) {
+            final int costComparison = route.cost.compareTo(cost);
+
+            if (costComparison > 0) {
+                break;
+            }
+
+            if (costComparison == 0 && isAvailable.test(route.gateway) && route.stats.isHealthy(now, this.maxErrorRate)) {
+                chosenRoute = route;
+                choice -= route.stats.getEffectiveWeight(route.weight);
+
+                if (choice < 0) {
+                    break;
+                }
+            }
+        }
+
+        return chosenRoute;
+    }
+
+    /**
+     * @return the available route with the lowest error rate, null if the node has none
+     **/
+    private static Route pickAvailable(final Node node, final Predicate<String> isAvailable) {
+        Route chosenRoute = null;
+
+        for (final Route route : node.routes) {
+            if (isAvailable.test(route.gateway)
+                    && (chosenRoute == null || route.stats.errorRate < chosenRoute.stats.errorRate)) {
+                chosenRoute = route;
+            }
+        }
+
+        return chosenRoute;
+    }
+
+    /**
+     * @return the route of the gateway at the deepest node along the mobile number, tenant routes first; null if the
+     *         message did not take a route, e.g. it went to the default gateway
+     **/
+    private Route findTaken(final String mifosTenantIdentifier, final String mobileNumber, final String gateway) {
+        if (mobileNumber == null || gateway == null) {
+            return null;
+        }
+
+        final Tries tries = this.tries;
+        final Route route = findTaken(tries.tenantRoots.get(mifosTenantIdentifier), mobileNumber, gateway);
+
+        return (route != null) ? route : findTaken(tries.root, mobileNumber, gateway);
+    }
+
+    private static Route findTaken(final Node root, final String mobileNumber, final String gateway) {
+        if (root == null) {
+            return null;
+        }
+
+        Route route = root.get(gateway);
+        Node node = root;
+
+        for (int index = digitsOffset(mobileNumber); index < mobileNumber.length(); index++) {
+            final int digit = mobileNumber.charAt(index) - '0';
+
+            if (digit < 0 || digit > 9 || (node = node.children[digit]) == null) {
+                break;
+            }
+
+            final Route nodeRoute = node.get(gateway);
+
+            if (nodeRoute != null) {
+                route = nodeRoute;
+            }
+        }
+
+        return route;
+    }
+
+    private RouteStats getRouteStats(final SmsGatewayRoute smsGatewayRoute) {
+        return this.routeStats.computeIfAbsent(smsGatewayRoute.getId(), id -> {
+            final RouteStats stats = new RouteStats();
+            final String[] tags = { "route", String.valueOf(id), "gateway", smsGatewayRoute.getGateway() };
+            final int weight = smsGatewayRoute.getWeight();
+
+            this.metricsRegistry.gauge(LATENCY, () -> TimeUnit.NANOSECONDS.toMicros((long) stats.latencyNanos), tags);
+            this.metricsRegistry.gauge(ERROR_RATE, () -> (long) (stats.errorRate * 1000), tags);
+            this.metricsRegistry.gauge(DELIVERY_RATE, () -> (long) (stats.deliveryRate * 1000), tags);
+            this.metricsRegistry.gauge(WEIGHT, () -> Math.round(stats.getEffectiveWeight(weight)), tags);
+
+            return stats;
+        });
+    }
+
+    /**
+     * @return the index of the first digit of the number, after a leading "+"
+     **/
+    private static int digitsOffset(final String mobileNumber) {
+        return mobileNumber.startsWith("+") ? 1 : 0;
+    }
+
+    private static boolean isDigits(final String value, final int offset) {
+        for (int index = offset; index < value.length(); index++) {
+            if (value.charAt(index) < '0' || value.charAt(index) > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * moving averages of the submit latency, submit error rate and delivery rate of a route
+     **/
+    private static class RouteStats {
+        private volatile double latencyNanos;
+        private volatile double errorRate;
+        private volatile double deliveryRate = 1;
+        private volatile long lastSubmitNanos = System.nanoTime();
+
+        private synchronized void recordSubmit(final long latencyNanos, final boolean accepted) {
+            this.latencyNanos += SMOOTHING * (latencyNanos - this.latencyNanos);
+            this.errorRate += SMOOTHING * ((accepted ? 0 : 1) - this.errorRate);
+            this.lastSubmitNanos = System.nanoTime();
+        }
+
+        private synchronized void recordDelivery(final boolean delivered) {
+            this.deliveryRate += SMOOTHING * ((delivered ? 1 : 0) - this.deliveryRate);
+        }
+
+        /**
+         * @return true if the error rate is low enough, or if the route was not tried for a while
+         **/
+        private boolean isHealthy(final long now, final double maxErrorRate) {
+            return this.errorRate <= maxErrorRate || now - this.lastSubmitNanos > PROBE_INTERVAL_NANOS;
+        }
+
+        /**
+         * a message was routed to the route, an unhealthy route is only tried again after the probe interval
+         **/
+        private void probed(final long now) {
+            this.lastSubmitNanos = now;
+        }
+
+        private double getEffectiveWeight(final int weight) {
+            final double share = (1 - this.errorRate) * this.deliveryRate
+                    * (LATENCY_REFERENCE_NANOS / (LATENCY_REFERENCE_NANOS + this.latencyNanos));
+
+            return weight * Math.max(share, MINIMUM_WEIGHT_SHARE);
+        }
+    }
+
+    /**
+     * an enabled route of the smsGatewayRoute table
+     **/
+    private static class Route {
+        private final String gateway;
+        private final BigDecimal cost;
+        private final int weight;
+        private final RouteStats stats;
+
+        private Route(final SmsGatewayRoute smsGatewayRoute, final RouteStats stats) {
+            this.gateway = smsGatewayRoute.getGateway();
+            this.cost = smsGatewayRoute.getCost();
+            this.weight = smsGatewayRoute.getWeight();
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * a node of a trie, one child per decimal digit
+     **/
+    private static class Node {
+        private final Node[] children = new Node[10];
+        // the routes whose prefix ends here, cheapest first
+        private Route[] routes = NO_ROUTES;
+
+        private void add(final Route route) {
+            this.routes = Arrays.copyOf(this.routes, this.routes.length + 1);
+            this.routes[this.routes.length - 1] = route;
+
+            Arrays.sort(this.routes, (routeA, routeB) -> routeA.cost.compareTo(routeB.cost));
+        }
+
+        private Route get(final String gateway) {
+            for (final Route route : this.routes) {
+                if (route.gateway.equals(gateway)) {
+                    return route;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static class Tries {
+        private final Node root;
+        private final Map<String, Node> tenantRoots;
+
+        private Tries(final Node root, final Map<String, Node> tenantRoots) {
+            this.root = root;
+            this.tenantRoots = tenantRoots;
+        }
+    }
+}
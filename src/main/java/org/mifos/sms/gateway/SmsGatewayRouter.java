@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.gateway;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.annotation.PostConstruct;
+
+import org.mifos.sms.domain.SmsGatewayRoute;
+import org.mifos.sms.domain.SmsGatewayRouteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the {@link SmsGateway} of each message from the enabled routes of the smsGatewayRoute table, reloaded every
+ * minute into the {@link SmsGatewayRouteTable}. A route applies to the messages of a tenant and/or to mobile numbers
+ * starting with a prefix; tenant routes are considered before routes for all tenants and longer prefixes before
+ * shorter ones.
+ *
+ * Among the matching routes the cheapest healthy ones are taken, split by their weight adjusted with the live submit
+ * latency, submit errors and delivery reports of each route. If no matching route leads to a healthy gateway, the
+ * available gateway with the fewest errors of the most specific matching routes is taken, and messages without a route
+ * go to "gateway.default".
+ **/
+@Component
+public class SmsGatewayRouter {
+    private static final Logger logger = LoggerFactory.getLogger(SmsGatewayRouter.class);
+
+    private final SmsGatewayRouteRepository smsGatewayRouteRepository;
+    private final SmsGatewayRouteTable smsGatewayRouteTable;
+    private final Map<String, SmsGateway> gateways = new HashMap<>();
+    private final SmsGateway defaultGateway;
+    // created once, the lookups do not allocate
+    private final Predicate<String> isAvailable = gateway -> this.gateways.get(gateway).isAvailable();
+
+    @Autowired
+    public SmsGatewayRouter(final SmsGatewayRouteRepository smsGatewayRouteRepository,
+            final SmsGatewayRouteTable smsGatewayRouteTable, final List<SmsGateway> gateways,
+            @Value("${gateway.default}") final String defaultGateway) {
+        this.smsGatewayRouteRepository = smsGatewayRouteRepository;
+        this.smsGatewayRouteTable = smsGatewayRouteTable;
+
+        for (final SmsGateway gateway : gateways) {
+            this.gateways.put(gateway.getName(), gateway);
+        }
+
+        this.defaultGateway = this.gateways.get(defaultGateway);
+
+        if (this.defaultGateway == null) {
+            throw new IllegalArgumentException("Unknown default gateway " + defaultGateway);
+        }
+    }
+
+    /**
+     * Reload the enabled routes from the DB
+     **/
+    @PostConstruct
+    @Scheduled(fixedDelay = 60000)
+    public void refreshRoutes() {
+        try {
+            final List<SmsGatewayRoute> routes = new ArrayList<>();
+
+            for (final SmsGatewayRoute smsGatewayRoute : this.smsGatewayRouteRepository.findByIsEnabledTrue()) {
+                if (!this.gateways.containsKey(smsGatewayRoute.getGateway())) {
+                    logger.warn("Ignoring route " + smsGatewayRoute.getId() + " to unknown gateway " + smsGatewayRoute.getGateway());
+                    continue;
+                }
+
+                routes.add(smsGatewayRoute);
+            }
+
+            this.smsGatewayRouteTable.load(routes);
+        }
+
+        catch (Exception e) {
+            logger.error("Failed to load the sms gateway routes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param mifosTenantIdentifier the tenant of the message
+     * @param mobileNumber the mobile number the message is sent to
+     * @return the gateway to send the message through, never null
+     **/
+    public SmsGateway route(final String mifosTenantIdentifier, final String mobileNumber) {
+        final String gateway = this.smsGatewayRouteTable.find(mifosTenantIdentifier, mobileNumber, this.isAvailable);
+
+        return (gateway != null) ? this.gateways.get(gateway) : this.defaultGateway;
+    }
+}
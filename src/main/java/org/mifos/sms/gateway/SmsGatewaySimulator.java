@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.gateway;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.mifos.sms.domain.SmsMessageStatusType;
+import org.mifos.sms.gateway.infobip.SmsGatewayMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Local stand-in for a real SMS gateway, for development and for trying out routes: every accepted message is reported
+ * delivered right away, after a configurable latency, and a configurable share of the messages is refused
+ * (gateway.simulator.* in gateway.properties). Only used for the messages routed to "simulator".
+ **/
+@Service
+public class SmsGatewaySimulator implements SmsGateway {
+    private final long latencyMillis;
+    private final double failureRate;
+
+    @Autowired
+    public SmsGatewaySimulator(@Value("${gateway.simulator.latencyMillis}") final long latencyMillis,
+            @Value("${gateway.simulator.failureRate}") final double failureRate) {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public String getName() {
+        return SmsGatewayExecutor.SIMULATOR;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public List<SmsGatewayMessage> sendMessages(final List<SmsGatewayMessage> smsGatewayMessages) {
+        final List<SmsGatewayMessage> sentSmsGatewayMessages = new ArrayList<>(smsGatewayMessages.size());
+
+        for (final SmsGatewayMessage smsGatewayMessage : smsGatewayMessages) {
+            sentSmsGatewayMessages.add(sendMessage(smsGatewayMessage));
+        }
+
+        return sentSmsGatewayMessages;
+    }
+
+    @Override
+    public SmsGatewayMessage sendMessage(final SmsGatewayMessage smsGatewayMessage) {
+        if (this.latencyMillis > 0) {
+            try {
+                Thread.sleep(this.latencyMillis);
+            }
+
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (ThreadLocalRandom.current().nextDouble() >= this.failureRate) {
+            smsGatewayMessage.setExternalId("simulator-" + UUID.randomUUID());
+            smsGatewayMessage.setDeliveryStatus(SmsMessageStatusType.DELIVERED.getValue());
+        }
+
+        return smsGatewayMessage;
+    }
+}
@@ -18,18 +18,26 @@
  */
 package org.mifos.sms.gateway.infobip;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.mifos.sms.data.ConfigurationData;
+import org.mifos.sms.gateway.SmsGateway;
+import org.mifos.sms.gateway.SmsGatewayExecutor;
 import org.mifos.sms.service.ReadConfigurationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import infobip.api.client.GetSentSmsLogs;
 import infobip.api.client.SendMultipleTextualSmsAdvanced;
@@ -41,13 +49,18 @@ import infobip.api.model.sms.mt.send.SMSResponse;
 import infobip.api.model.sms.mt.send.SMSResponseDetails;
 import infobip.api.model.sms.mt.send.textual.SMSAdvancedTextualRequest;
 
+/**
+ * The InfoBip REST provider, delivery reports arrive on the InfoBipApiResource callback and overdue ones are polled by
+ * the delivery status reconciliation
+ **/
 @Service
-public class InfoBipMessageProvider {
+public class InfoBipMessageProvider implements SmsGateway {
 
     private static final Logger logger = LoggerFactory.getLogger(InfoBipMessageProvider.class);
 
-    private final HashMap<String, SendMultipleTextualSmsAdvanced> sendSMSCliets = new HashMap<>();
-    private final HashMap<String, GetSentSmsLogs> receiveSMSClients = new HashMap<>();
+    // the messages are sent from several threads at once, see SmsGatewayExecutor
+    private final ConcurrentMap<String, SendMultipleTextualSmsAdvanced> sendSMSCliets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, GetSentSmsLogs> receiveSMSClients = new ConcurrentHashMap<>();
     private final String callBackUrl;
 
     private final ReadConfigurationService readConfigurationService;
@@ -63,8 +76,47 @@ public class InfoBipMessageProvider {
         logger.info("Registering call back to InfoBip:" + this.callBackUrl);
     }
 
+    @Override
+    public String getName() {
+        return SmsGatewayExecutor.INFOBIP;
+    }
+
+    /**
+     * @return true if InfoBip credentials are configured
+     **/
+    @Override
+    public boolean isAvailable() {
+        return StringUtils.hasText(this.smsGatewayConfiguration.getSystemId());
+    }
+
+    @Override
+    public List<SmsGatewayMessage> sendMessages(final List<SmsGatewayMessage> messages) {
+        final List<SmsGatewayMessage> sentMessages = new ArrayList<>(messages.size());
+
+        for (final SmsGatewayMessage message : messages) {
+            sentMessages.add(sendMessage(message));
+        }
+
+        return sentMessages;
+    }
+
+    /**
+     * @return the notify URL of a message; ids are only unique within a shard, the tenant identifies the shard
+     **/
+    private String statusCallback(final SmsGatewayMessage message) {
+        try {
+            return this.callBackUrl + message.getId() + "?mifosTenantIdentifier="
+                    + URLEncoder.encode(message.getMifosTenantIdentifier(), "UTF-8");
+        }
+
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
     public SmsGatewayMessage sendMessage(final SmsGatewayMessage message) {
-        final String statusCallback = this.callBackUrl + message.getId();
+        final String statusCallback = statusCallback(message);
         // Based on message id, register call back. so that we get notification
         // from Infobip about message status
         final SendMultipleTextualSmsAdvanced client = getSendSMSRestClient();
@@ -90,28 +142,33 @@ public class InfoBipMessageProvider {
         return message;
     }
 
+    /**
+     * maximum number of message ids per logs request, the ids are sent in the query string of the request and the logs API
+     * returns at most 1000 logs
+     **/
+    public static final int MAXIMUM_DELIVERY_REPORT_MESSAGE_IDS = 100;
+
+    /**
+     * get the logs of the given messages, at most {@link #MAXIMUM_DELIVERY_REPORT_MESSAGE_IDS} message ids per call
+     **/
     public SMSLogsResponse getDeliveryReport(final Set<String> messageIds) {
         // Based on message id, we get notification from Infobip about message
         // status
         final GetSentSmsLogs client = getDeliveryReportsSMSRestClient();
-        return client.execute(null, null, null, messageIds.toArray(new String[0]), null, null, null, null, null, null);
+        // without a limit the logs API only returns the first 50 logs
+        return client.execute(null, null, null, messageIds.toArray(new String[0]), null, null, null, messageIds.size(), null,
+                null);
     }
 
     private SendMultipleTextualSmsAdvanced getSendSMSRestClient() {
-        final String authorizationKey = encodeBase64();
-        SendMultipleTextualSmsAdvanced client = this.sendSMSCliets.get(authorizationKey);
-        if (client == null) {
-            client = createSendSMSClient();
-            this.sendSMSCliets.put(authorizationKey, client);
-        }
-        return client;
+        return this.sendSMSCliets.computeIfAbsent(encodeBase64(), authorizationKey -> createSendSMSClient());
     }
 
     SendMultipleTextualSmsAdvanced createSendSMSClient() {
         logger.debug("Creating a new InfoBip Client ....");
         final String userName = this.smsGatewayConfiguration.getSystemId();
         final String password = this.smsGatewayConfiguration.getPassword();
-        final SendMultipleTextualSmsAdvanced client = new SendMultipleTextualSmsAdvanced(new BasicAuthConfiguration(userName, password));
+        final SendMultipleTextualSmsAdvanced client = new SendMultipleTextualSmsAdvanced(createBasicAuthConfiguration(userName, password));
         return client;
     }
 
@@ -123,20 +180,23 @@ public class InfoBipMessageProvider {
     }
 
     private GetSentSmsLogs getDeliveryReportsSMSRestClient() {
-        final String authorizationKey = encodeBase64();
-        GetSentSmsLogs client = this.receiveSMSClients.get(authorizationKey);
-        if (client == null) {
-            client = createDeliveryReportsSMSClient();
-            this.receiveSMSClients.put(authorizationKey, client);
-        }
-        return client;
+        return this.receiveSMSClients.computeIfAbsent(encodeBase64(), authorizationKey -> createDeliveryReportsSMSClient());
     }
 
     private GetSentSmsLogs createDeliveryReportsSMSClient() {
         logger.debug("Creating a new InfoBip Client ....");
         final String userName = this.smsGatewayConfiguration.getSystemId();
         final String password = this.smsGatewayConfiguration.getPassword();
-        final GetSentSmsLogs client = new GetSentSmsLogs(new BasicAuthConfiguration(userName, password));
+        final GetSentSmsLogs client = new GetSentSmsLogs(createBasicAuthConfiguration(userName, password));
         return client;
     }
+
+    private BasicAuthConfiguration createBasicAuthConfiguration(final String userName, final String password) {
+        // a base URL is only configured when the InfoBip API is replaced by a stand-in (e.g. the load test harness)
+        final String baseUrl = this.smsGatewayConfiguration.getBaseURL();
+        if (StringUtils.isEmpty(baseUrl)) {
+            return new BasicAuthConfiguration(userName, password);
+        }
+        return new BasicAuthConfiguration(baseUrl, userName, password);
+    }
 }
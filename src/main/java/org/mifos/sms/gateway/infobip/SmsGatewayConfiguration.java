@@ -15,6 +15,7 @@ public class SmsGatewayConfiguration {
 	private String password;
 	private Boolean enableOutboundMessageScheduler;
 	private String callBackURL;
+	private String baseURL;
 	
 	public static final String DEVELOPMENT_MODE = "DEVELOPMENT_MODE";
 	public static final String SMS_GATEWAY_SYSTEM_ID = "SMS_GATEWAY_SYSTEM_ID";
@@ -23,6 +24,7 @@ public class SmsGatewayConfiguration {
 	public static final String SMS_GATEWAY_PASSWORD = "SMS_GATEWAY_PASSWORD";
 	public static final String ENABLE_OUTBOUND_MESSSAGE_SCHEDULER = "ENABLE_OUTBOUND_MESSSAGE_SCHEDULER";
 	public static final String SMS_GATEWAY_CALLBACK_URL = "SMS_GATEWAY_CALLBACK_URL";
+	public static final String SMS_GATEWAY_BASE_URL = "SMS_GATEWAY_BASE_URL";
 	
 	/** 
 	 * SmsGatewayConfiguration constructor
@@ -60,6 +62,10 @@ public class SmsGatewayConfiguration {
     		            break;
     		        case SMS_GATEWAY_CALLBACK_URL:
     		            this.callBackURL = configurationData.getValue();
+    		            break;
+    		            
+    		        case SMS_GATEWAY_BASE_URL:
+    		            this.baseURL = configurationData.getValue();
     		    }
 		    }
 		}
@@ -110,4 +116,11 @@ public class SmsGatewayConfiguration {
 	public String getCallBackURL() {
 	    return this.callBackURL;
 	}
+	
+	/** 
+	 * @return SMS gateway configuration "base URL" property, null when the InfoBip default should be used 
+	 **/
+	public String getBaseURL() {
+	    return this.baseURL;
+	}
 }
@@ -14,6 +14,11 @@ public class SmsGatewayDeliveryReport {
      **/
     private String externalId;
     
+    /** 
+     * the mobile number the message was sent to, the source address of the receipt 
+     **/
+    private String mobileNumber;
+    
     /** 
      * Date/time when message was submitted from mifos to the sms gateway system. (format: yyyy/mm/dd hh:mm:ss) 
      **/
@@ -33,8 +38,9 @@ public class SmsGatewayDeliveryReport {
      * SmsGatewayDeliveryReport constructor
      * 
      **/
-    public SmsGatewayDeliveryReport(String externalId, Date sentDate, Date doneDate, SmsMessageStatusType status) {
+    public SmsGatewayDeliveryReport(String externalId, String mobileNumber, Date sentDate, Date doneDate, SmsMessageStatusType status) {
         this.externalId = externalId;
+        this.mobileNumber = mobileNumber;
         this.sentDate = sentDate;
         this.doneDate = doneDate;
         this.status = status;
@@ -47,6 +53,13 @@ public class SmsGatewayDeliveryReport {
         return externalId;
     }
     
+    /**
+     * @return the mobile number
+     **/
+    public String getMobileNumber() {
+        return mobileNumber;
+    }
+    
     /**
      * @return the sent date
      **/
@@ -73,6 +86,6 @@ public class SmsGatewayDeliveryReport {
      * @return String representation of the SmsGatewayDeliveryReport class
      **/
     public String toString() {
-        return "SmsGatewayDeliveryReport [externalId=" + externalId + ", sentDate=" + sentDate + ", doneDate=" + doneDate + ", status=" + status + "]";
+        return "SmsGatewayDeliveryReport [externalId=" + externalId + ", mobileNumber=" + mobileNumber + ", sentDate=" + sentDate + ", doneDate=" + doneDate + ", status=" + status + "]";
     }
 }
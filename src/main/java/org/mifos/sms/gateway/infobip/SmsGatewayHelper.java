@@ -1,11 +1,22 @@
 package org.mifos.sms.gateway.infobip;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Random;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jsmpp.InvalidResponseException;
 import org.jsmpp.PDUException;
+import org.jsmpp.SMPPConstant;
 import org.jsmpp.bean.AlertNotification;
 import org.jsmpp.bean.Alphabet;
 import org.jsmpp.bean.BindType;
@@ -36,17 +47,28 @@ import org.jsmpp.session.SessionStateListener;
 import org.jsmpp.util.InvalidDeliveryReceiptException;
 import org.jsmpp.util.StringParameter;
 import org.mifos.sms.data.ConfigurationData;
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
 import org.mifos.sms.data.SmsShortMessage;
 import org.mifos.sms.domain.SmsMessageStatusType;
-import org.mifos.sms.domain.SmsOutboundMessage;
 import org.mifos.sms.domain.SmsOutboundMessageRepository;
+import org.mifos.sms.gateway.SmsGatewayExecutor;
+import org.mifos.sms.gateway.SmsGatewayRouteTable;
 import org.mifos.sms.gateway.infobip.SmsGatewayMessage;
 import org.mifos.sms.helper.Gsm0338;
+import org.mifos.sms.helper.SmsSegmenter;
+import org.mifos.sms.metrics.SmsPipelineMetrics;
+import org.mifos.sms.service.DataSourceShardContext;
+import org.mifos.sms.service.DeliveryReceiptCorrelationCache;
+import org.mifos.sms.service.DeliveryStatusWebhookDispatcher;
 import org.mifos.sms.service.ReadConfigurationService;
+import org.mifos.sms.service.SmsGatewayDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 /** 
  * Helper class for the SMS message gateway 
@@ -64,18 +86,55 @@ public class SmsGatewayHelper {
 	public SmsGatewayConfiguration smsGatewayConfiguration;
 	public Boolean reconnect = true;
 	private final SmsOutboundMessageRepository smsOutboundMessageRepository;
+	private final SmsPipelineMetrics smsPipelineMetrics;
+	private final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher;
+	private final DeliveryReceiptCorrelationCache deliveryReceiptCorrelationCache;
+	private final SmsGatewayDataSource smsGatewayDataSource;
+	private final SmsGatewayExecutor smsGatewayExecutor;
+	private final SmsGatewayRouteTable smsGatewayRouteTable;
 	
-	// represents the max size of a fragment of a concatenated short message
-	public static final Integer SHORT_MESSAGE_FRAGMENT_MAX_SIZE = 140;
+	// number of submit_sm requests waiting for a response (SMPP window occupancy)
+	private final AtomicInteger inFlightSubmits = new AtomicInteger();
 	
-    private static final int MAX_SINGLE_MSG_SEGMENT_SIZE_UCS2 = 70;
-    private static final int MAX_SINGLE_MSG_SEGMENT_SIZE_7BIT = 160;
+	// delivery receipts that arrived before the submit result of their message was known, retried for a while
+	private final BlockingQueue<PendingDeliveryReport> unmatchedDeliveryReports = 
+			new LinkedBlockingQueue<>(MAXIMUM_UNMATCHED_DELIVERY_REPORTS);
+	
+	// delivery receipts waiting for a free delivery report slot, the session's PDU processing threads never wait for one
+	private final BlockingQueue<PendingDeliveryReport> waitingDeliveryReports;
+	
+	// encodings of the recently sent message texts, least recently used evicted first
+	private final Map<String, EncodedMessage> encodedMessages = new LinkedHashMap<String, EncodedMessage>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, EncodedMessage> eldest) {
+			return size() > ENCODED_MESSAGE_CACHE_SIZE;
+		}
+	};
+	
+    private static final int ENCODED_MESSAGE_CACHE_SIZE = 1000;
+    private static final int MAXIMUM_UNMATCHED_DELIVERY_REPORTS = 10000;
+    private static final long UNMATCHED_DELIVERY_REPORT_TIME_TO_LIVE_MILLIS = 60000;
     
     @Autowired
     public SmsGatewayHelper(final ReadConfigurationService readConfigurationService, 
-            final SmsOutboundMessageRepository smsOutboundMessageRepository) {
+            final SmsOutboundMessageRepository smsOutboundMessageRepository, final SmsPipelineMetrics smsPipelineMetrics, 
+            final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher, 
+            final DeliveryReceiptCorrelationCache deliveryReceiptCorrelationCache, 
+            final SmsGatewayDataSource smsGatewayDataSource, final SmsGatewayExecutor smsGatewayExecutor, 
+            final SmsGatewayRouteTable smsGatewayRouteTable, 
+            @Value("${gateway.deliveryReport.queueSize}") final int deliveryReportQueueSize) {
     	this.readConfigurationService = readConfigurationService;
     	this.smsOutboundMessageRepository = smsOutboundMessageRepository;
+    	this.smsPipelineMetrics = smsPipelineMetrics;
+    	this.deliveryStatusWebhookDispatcher = deliveryStatusWebhookDispatcher;
+    	this.deliveryReceiptCorrelationCache = deliveryReceiptCorrelationCache;
+    	this.smsGatewayDataSource = smsGatewayDataSource;
+    	this.smsGatewayExecutor = smsGatewayExecutor;
+    	this.smsGatewayRouteTable = smsGatewayRouteTable;
+    	this.waitingDeliveryReports = new LinkedBlockingQueue<>(deliveryReportQueueSize);
+    	this.smsPipelineMetrics.getMetricsRegistry().gauge(SmsPipelineMetrics.SMPP_WINDOW_OCCUPANCY, inFlightSubmits::get);
     	Collection<ConfigurationData> configurationDataCollection = this.readConfigurationService.findAll();
     	
     	// get an instance of the SmsGatewayConfiguration class
@@ -221,7 +280,8 @@ public class SmsGatewayHelper {
      * @return numeric plan indicator (NPI) to be used in the SME (Short Message Entity) destination address parameters 
      **/
     public final NumberingPlanIndicator destAddrNpi() {
-        return NumberingPlanIndicator.UNKNOWN;
+        // the mobile numbers are normalized to E.164 when the messages are queued
+        return NumberingPlanIndicator.ISDN;
     }
     
     /** 
@@ -231,6 +291,13 @@ public class SmsGatewayHelper {
         return new ESMClass();
     }
     
+    /** 
+     * @return ESMClass of the parts of a concatenated message, the short message starts with a user data header 
+     **/
+    public final ESMClass concatenatedEsmClass() {
+        return new ESMClass(MessageMode.DEFAULT, MessageType.DEFAULT, GSMSpecificFeature.UDHI);
+    }
+    
     /** 
      * @return GSM Protocol ID 
      **/
@@ -335,30 +402,33 @@ public class SmsGatewayHelper {
     }
     
     /** 
-     * Send the SMS message to the SMS gateway
+     * Send the SMS message to the SMS gateway, split into the short messages of a concatenated SMS if it is longer than
+     * one. The parts are built one at a time and submitted concurrently as {@link SmsGatewayExecutor#SMPP_SEGMENT} tasks,
+     * so that up to gateway.smpp.maxConcurrentSegmentSubmits of them wait for their submit_sm_resp at once. The message
+     * is refused if a part is refused, the parts not submitted yet are not sent then.
      * 
      * @param smsGatewayMessage SmsGatewayMessage object
      * 
-     * @return {@link SmsGatewayMessage} object
+     * @return {@link SmsGatewayMessage} object, with the SMS gateway message ID of the last part
      **/
     public SmsGatewayMessage submitShortMessage(SmsGatewayMessage smsGatewayMessage) {
-        String message = smsGatewayMessage.getMessage();
-
-        Alphabet alphabet = null;
-        int maximumSingleMessageSize = 0;
-        byte[] originalMessageBytes = null;
-        ESMClass esmClass = this.esmClass();
-
-        DataCoding dataCoding = null;
-        try {
-            if (Gsm0338.isBasicEncodeable(message)) {
-                originalMessageBytes = message.getBytes();
-                dataCoding = this.dataCoding();
-            } else {
-                originalMessageBytes = message.getBytes("UTF-16BE");
-                dataCoding = this.dataUnicodeCoding();
-            }
-
+        final EncodedMessage encodedMessage = encode(smsGatewayMessage.getMessage());
+        final SmsSegmenter smsSegmenter = new SmsSegmenter(encodedMessage.bytes, encodedMessage.basic,
+                (byte) ThreadLocalRandom.current().nextInt());
+        
+        if (smsSegmenter.getCount() > SmsSegmenter.MAXIMUM_SEGMENTS) {
+            logger.error("SMS message with ID '" + smsGatewayMessage.getId() + "' needs " + smsSegmenter.getCount() 
+                    + " segments, more than " + SmsSegmenter.MAXIMUM_SEGMENTS);
+            
+            return smsGatewayMessage;
+        }
+        
+        final DataCoding dataCoding = encodedMessage.basic ? this.dataCoding() : this.dataUnicodeCoding();
+        final ESMClass esmClass = (smsSegmenter.getCount() > 1) ? this.concatenatedEsmClass() : this.esmClass();
+        final List<CompletableFuture<SmsGatewayMessage>> submits = new ArrayList<>(smsSegmenter.getCount());
+        final AtomicBoolean refused = new AtomicBoolean();
+        
+        while (smsSegmenter.hasNext() && !refused.get()) {
             final SmsShortMessage smsShortMessage = SmsShortMessage.newSmsShortMessage(
                     smsGatewayMessage.getId(), this.serviceType(), this.sourceAddrTon(),
                     this.sourceAddrNpi(), smsGatewayMessage.getSourceAddress(), this.destAddrTon(),
@@ -366,15 +436,40 @@ public class SmsGatewayHelper {
                     esmClass, this.protocolId(), this.priorityFlag(),
                     this.scheduledDeliveryTime(), this.validityPeriod(),
                     this.registeredDelivery(), this.replaceIfPresentFlag(), dataCoding,
-                    this.smDefaultMsgId(), originalMessageBytes, 1, 1);
-
-            // send short message to SMSC (short message service center)
-            smsGatewayMessage = this.submitShortMessage(smsShortMessage);
-        } catch (IOException e) {
-            logger.error("IO error occur", e);
+                    this.smDefaultMsgId(), smsSegmenter.next(), smsSegmenter.getNumber(), smsSegmenter.getCount());
+            
+            // send short message to SMSC (short message service center), a single part on the thread of the caller
+            if (smsSegmenter.getCount() == 1) {
+                submits.add(CompletableFuture.completedFuture(this.submitShortMessage(smsShortMessage)));
+            } else {
+                submits.add(this.smsGatewayExecutor.submit(SmsGatewayExecutor.SMPP_SEGMENT, () -> {
+                    final SmsGatewayMessage submittedPart = this.submitShortMessage(smsShortMessage);
+                    
+                    if (StringUtils.isEmpty(submittedPart.getExternalId())) {
+                        refused.set(true);
+                    }
+                    
+                    return submittedPart;
+                }));
+            }
         }
-
-        return smsGatewayMessage;
+        
+        String externalId = null;
+        
+        for (final CompletableFuture<SmsGatewayMessage> submit : submits) {
+            externalId = submit.join().getExternalId();
+            
+            if (StringUtils.isEmpty(externalId)) {
+                refused.set(true);
+            }
+        }
+        
+        if (refused.get()) {
+            return smsGatewayMessage;
+        }
+        
+        return new SmsGatewayMessage(smsGatewayMessage.getId(), externalId, smsGatewayMessage.getSourceAddress(), 
+                smsGatewayMessage.getMobileNumber(), smsGatewayMessage.getMessage());
     }
     
     /**
@@ -385,6 +480,8 @@ public class SmsGatewayHelper {
      */
     public SmsGatewayMessage submitShortMessage(final SmsShortMessage smsShortMessage) {
         String messageId = "";
+        // the submit latency is recorded per message by the send job
+        inFlightSubmits.incrementAndGet();
         
         try {
             messageId = session.submitShortMessage(smsShortMessage.getServiceType(), 
@@ -403,7 +500,7 @@ public class SmsGatewayHelper {
                     smsShortMessage.getReplaceIfPresentFlag(), 
                     smsShortMessage.getDataCoding(), 
                     smsShortMessage.getDefaultMessageId(), 
-                    smsShortMessage.getShortMessage().getBytes());
+                    smsShortMessage.getShortMessageBytes());
             
             logger.info("Message segment " + smsShortMessage.getMessageSegmentNumber() 
                     + " out of " + smsShortMessage.getTotalNumberOfMessageSegments() 
@@ -435,82 +532,53 @@ public class SmsGatewayHelper {
             logger.error("IO error occur", e);
         }
         
+        finally {
+            inFlightSubmits.decrementAndGet();
+        }
+        
         return new SmsGatewayMessage(smsShortMessage.getMessageId(), messageId, 
                 smsShortMessage.getSourceAddress(), smsShortMessage.getDestinationAddress(), 
                 smsShortMessage.getShortMessage());
     }
     
-    /** 
-     * Send segmented SMS messages to the SMS gateway
-     * 
-     * @param smsGatewayMessage SmsGatewayMessage object
-     * 
-     * @return {@link SmsGatewayMessage} object
+    /**
+     * encode a message text, the encodings of the recently sent texts are cached: the messages with the same text share
+     * one String instance (see {@link org.mifos.sms.service.SmsMessageBodyStore}), so that a cache hit costs an identity
+     * comparison
+     *
+     * @param message the message text
+     * @return the encoding, the bytes must not be modified
      **/
-    public SmsGatewayMessage submitSegmentedShortMessages(SmsGatewayMessage smsGatewayMessage) {
-        String message = smsGatewayMessage.getMessage();
-
-        Alphabet alphabet = null;
-        int maximumSingleMessageSize = 0;
-        byte[] originalMessageBytes = null;
-
-        DataCoding dataCoding = null;
-        try {
-            if (Gsm0338.isBasicEncodeable(message)) {
-                originalMessageBytes = message.getBytes();
-                alphabet = Alphabet.ALPHA_DEFAULT;
-                maximumSingleMessageSize = MAX_SINGLE_MSG_SEGMENT_SIZE_7BIT;
-                dataCoding = this.dataCoding();
-            }
-            else {
-                originalMessageBytes = message.getBytes("UTF-16BE");
-                alphabet = Alphabet.ALPHA_UCS2;
-                maximumSingleMessageSize = MAX_SINGLE_MSG_SEGMENT_SIZE_UCS2;
-                dataCoding = this.dataUnicodeCoding();
-            }
-
-            // check if message needs splitting and set required sending parameters
-            byte[][] segmentedMessagesBytes = null;
-            ESMClass esmClass = this.esmClass();
+    private EncodedMessage encode(final String message) {
+        EncodedMessage encodedMessage;
 
-            if (message.length() > maximumSingleMessageSize) {
-                byte[] referenceNumber = new byte[1];
-                new Random().nextBytes(referenceNumber);
-
-                segmentedMessagesBytes = createConcatenatedBinaryShortMessages(originalMessageBytes,
-                        referenceNumber[0]);
-
-            }
-
-            else {
-                segmentedMessagesBytes = new byte[][] { originalMessageBytes };
-            }
-
-            // submit all messages
-            for (int i = 0; i < segmentedMessagesBytes.length; i++) {
-                int segmentNumber = i + 1;
+        synchronized (encodedMessages) {
+            encodedMessage = encodedMessages.get(message);
+        }
 
-                // create a new SmsShortMessage object
-                final SmsShortMessage smsShortMessage = SmsShortMessage.newSmsShortMessage(
-                        smsGatewayMessage.getId(), this.serviceType(), this.sourceAddrTon(),
-                        this.sourceAddrNpi(), smsGatewayMessage.getSourceAddress(), this.destAddrTon(),
-                        this.destAddrNpi(), smsGatewayMessage.getMobileNumber(),
-                        esmClass, this.protocolId(), this.priorityFlag(),
-                        this.scheduledDeliveryTime(), this.validityPeriod(),
-                        this.registeredDelivery(), this.replaceIfPresentFlag(),
-                        dataCoding, this.smDefaultMsgId(),
-                        segmentedMessagesBytes[i], segmentNumber, segmentedMessagesBytes.length);
+        if (encodedMessage == null) {
+            final boolean basic = Gsm0338.isBasicEncodeable(message);
+            encodedMessage = new EncodedMessage(basic, SmsSegmenter.encode(message, basic));
 
-                // send short message to SMSC (short message service center)
-                smsGatewayMessage = this.submitShortMessage(smsShortMessage);
+            synchronized (encodedMessages) {
+                encodedMessages.put(message, encodedMessage);
             }
         }
 
-        catch (IOException e) {
-            logger.error("IO error occur", e);
+        return encodedMessage;
+    }
+    
+    /**
+     * the bytes of a message text and whether it only has characters of the GSM 03.38 basic character set
+     **/
+    private static class EncodedMessage {
+        private final boolean basic;
+        private final byte[] bytes;
+        
+        private EncodedMessage(final boolean basic, final byte[] bytes) {
+            this.basic = basic;
+            this.bytes = bytes;
         }
-
-        return smsGatewayMessage;
     }
     
     /**
@@ -615,10 +683,18 @@ public class SmsGatewayHelper {
                     }
                     
                     // create a new SmsGatewayDeliveryReport object with data received from the SMS gateway
-                    SmsGatewayDeliveryReport smsGatewayDeliveryReport = new SmsGatewayDeliveryReport(messageId, deliveryReceipt.getSubmitDate(), deliveryReceipt.getDoneDate(), messageStatus);
+                    SmsGatewayDeliveryReport smsGatewayDeliveryReport = new SmsGatewayDeliveryReport(messageId, deliverSm.getSourceAddr(), deliveryReceipt.getSubmitDate(), deliveryReceipt.getDoneDate(), messageStatus);
                     
-                    // update SmsGatewayDeliveryReport entity delivery status and date
-                    processDeliveryReport(smsGatewayDeliveryReport);
+                    // update SmsGatewayDeliveryReport entity delivery status and date, off the session's PDU processing 
+                    // thread, which must not wait for the database: the submit_sm_resp PDUs are processed by the same 
+                    // threads. The SMSC is asked to send the receipt again later if too many receipts are waiting.
+                    if (!waitingDeliveryReports.offer(
+                            new PendingDeliveryReport(smsGatewayDeliveryReport, System.currentTimeMillis()))) {
+                        throw new ProcessRequestException("Too many delivery reports waiting", 
+                                SMPPConstant.STAT_ESME_RX_T_APPN);
+                    }
+                    
+                    processWaitingDeliveryReportsIfIdle();
                     
                     // log success message
                     logger.info("Receiving delivery report for message '" + messageId + "' : " + smsGatewayDeliveryReport.toString());
@@ -645,114 +721,141 @@ public class SmsGatewayHelper {
     }
     
     /** 
-     * Process the delivery report. Update the delivery status and date of the SmsOutboundMessage entity 
+     * Process the delivery report. Update the delivery status and date of the SMS message with a targeted update, 
+     * the SmsOutboundMessage entity is not loaded 
      * 
      * @param smsGatewayDeliveryReport {@link SmsGatewayDeliveryReport} object
      * @return None
      **/
     public void processDeliveryReport(SmsGatewayDeliveryReport smsGatewayDeliveryReport) {
+        processDeliveryReport(smsGatewayDeliveryReport, System.currentTimeMillis());
+    }
+    
+    /** 
+     * Process the delivery report, see {@link #processDeliveryReport(SmsGatewayDeliveryReport)}. A receipt without a 
+     * matching message is parked and retried by {@link #retryUnmatchedDeliveryReports()}: the receipt of a message can 
+     * arrive before the send job recorded its external ID. 
+     * 
+     * @param smsGatewayDeliveryReport {@link SmsGatewayDeliveryReport} object
+     * @param receivedOnMillis the time the receipt arrived
+     **/
+    private void processDeliveryReport(final SmsGatewayDeliveryReport smsGatewayDeliveryReport, final long receivedOnMillis) {
         
         if (smsGatewayDeliveryReport != null) {
-            // get the SmsMessage object from the DB
-            SmsOutboundMessage smsOutboundMessage = this.smsOutboundMessageRepository.findByExternalId(smsGatewayDeliveryReport.getExternalId());
+            final String externalId = smsGatewayDeliveryReport.getExternalId();
+            final SmsMessageStatusType status = smsGatewayDeliveryReport.getStatus();
+            
+            // messages submitted recently are correlated without a DB read, the others are looked up in each shard
+            SmsOutboundMessageStatusData smsOutboundMessage = this.deliveryReceiptCorrelationCache.take(externalId);
+            
+            if (smsOutboundMessage == null) {
+                smsOutboundMessage = this.smsGatewayDataSource.findInShards(
+                        () -> this.smsOutboundMessageRepository.findStatusDataByExternalId(externalId));
+            }
             
             if(smsOutboundMessage != null) {
-                // update the status of the SMS message
-                smsOutboundMessage.setDeliveryStatus(smsGatewayDeliveryReport.getStatus());
+                final Long id = smsOutboundMessage.getId();
+                // the receipt done date only has minute precision, use the time the receipt arrived instead
+                final Date deliveredOnDateTime = (status == SmsMessageStatusType.DELIVERED) ? new Date() : null;
                 
-                switch(smsGatewayDeliveryReport.getStatus()) {
-                    case DELIVERED:
-                        // update the delivery date of the SMS message
-                        smsOutboundMessage.setDeliveredOnDate(smsGatewayDeliveryReport.getDoneDate());
-                        break;
-                        
-                    default:
-                        // at the moment, do nothing
-                        break;
-                }
+                DataSourceShardContext.run(this.smsGatewayDataSource.getShard(smsOutboundMessage.getMifosTenantIdentifier()), () -> {
+                    switch(status) {
+                        case DELIVERED:
+                            // update the status and delivery date of the SMS message
+                            this.smsOutboundMessageRepository.updateDeliveryStatusAndDeliveredOn(id, status.getValue(), 
+                                    smsGatewayDeliveryReport.getDoneDate(), deliveredOnDateTime);
+                            break;
+                            
+                        default:
+                            // update the status of the SMS message
+                            this.smsOutboundMessageRepository.updateDeliveryStatus(id, status.getValue());
+                            break;
+                    }
+                });
+                
+                // push the new status to the tenant's webhook
+                this.deliveryStatusWebhookDispatcher.statusChanged(smsOutboundMessage.getMifosTenantIdentifier(), 
+                        smsOutboundMessage.toResponseData(status, deliveredOnDateTime));
                 
-                // save the "SmsOutboundMessage" entity
-                this.smsOutboundMessageRepository.save(smsOutboundMessage);
+                this.smsPipelineMetrics.deliveryReported(smsOutboundMessage.getMifosTenantIdentifier(), 
+                        SmsPipelineMetrics.GATEWAY_SMPP, status);
+                this.smsGatewayRouteTable.recordDelivery(smsOutboundMessage.getMifosTenantIdentifier(), 
+                        smsGatewayDeliveryReport.getMobileNumber(), SmsGatewayExecutor.SMPP, status);
+                this.smsPipelineMetrics.recordDeliveryReport(smsOutboundMessage.getMifosTenantIdentifier(), 
+                        SmsPipelineMetrics.GATEWAY_SMPP, (smsOutboundMessage.getSubmittedOnDateTime() != null) 
+                        ? smsOutboundMessage.getSubmittedOnDateTime() : smsGatewayDeliveryReport.getSentDate(), 
+                        smsOutboundMessage.getQueuedOnDateTime());
                 
                 // log success message
-                logger.info("SMS message with external ID '" + smsOutboundMessage.getExternalId() + "' successfully updated. Status set to: " + smsOutboundMessage.getDeliveryStatus().toString());
+                logger.info("SMS message with external ID '" + externalId + "' successfully updated. Status set to: " + status.toString());
+            }
+            
+            else if (System.currentTimeMillis() - receivedOnMillis > UNMATCHED_DELIVERY_REPORT_TIME_TO_LIVE_MILLIS) {
+                logger.warn("No SMS message with external ID '" + externalId + "', delivery report dropped: " 
+                        + smsGatewayDeliveryReport.toString());
+            }
+            
+            else if (!this.unmatchedDeliveryReports.offer(new PendingDeliveryReport(smsGatewayDeliveryReport, receivedOnMillis))) {
+                logger.warn("Too many unmatched delivery reports, delivery report for external ID '" + externalId 
+                        + "' dropped: " + smsGatewayDeliveryReport.toString());
             }
         }
     }
     
-    /**
-     * Creates multiple short messages (that include a user data header) by
-     * splitting the binaryShortMessage data into 134 byte parts.  If the
-     * binaryShortMessage does not need to be concatenated (less than or equal
-     * to 140 bytes), this method will return NULL.
-     * <br><br>
-     * WARNING: This method only works on binary short messages that use 8-bit
-     * bytes.  Short messages using 7-bit data or packed 7-bit data will not
-     * be correctly handled by this method.
-     * <br><br>
-     * For example, will take a byte message (in hex, 138 bytes long)
-     * <br>
-     *   01020304...85&lt;byte 134&gt;87888990
-     * <br><br>
-     * Would be split into 2 parts as follows (in hex, with user data header)<br>
-     *   050003CC020101020304...85&lt;byte 134&gt;<br>
-     *   050003CC020287888990<br>
-     * <br>
-     * http://en.wikipedia.org/wiki/Concatenated_SMS
-     *
-     * @param binaryShortMessage The 8-bit binary short message to create the
-     *      concatenated short messages from.
-     * @param referenceNum The CSMS reference number that will be used in the
-     *      user data header.
-     * @return NULL if the binaryShortMessage does not need concatenated or
-     *      an array of byte arrays representing each chunk (including UDH).
-     * @throws IllegalArgumentException
-     */
-    private byte[][] createConcatenatedBinaryShortMessages(byte[] binaryShortMessage, byte referenceNum) throws IllegalArgumentException {
-        if (binaryShortMessage == null) {
-            return null;
+    /** 
+     * process the parked delivery receipts again, the submit results of their messages are recorded in the meantime 
+     **/
+    @Scheduled(fixedDelay = 2000)
+    public void retryUnmatchedDeliveryReports() {
+        final List<PendingDeliveryReport> unmatchedDeliveryReports = new ArrayList<>();
+        this.unmatchedDeliveryReports.drainTo(unmatchedDeliveryReports);
+        
+        for (final PendingDeliveryReport unmatchedDeliveryReport : unmatchedDeliveryReports) {
+            if (!this.waitingDeliveryReports.offer(unmatchedDeliveryReport)) {
+                logger.warn("Too many delivery reports waiting, delivery report for external ID '" 
+                        + unmatchedDeliveryReport.smsGatewayDeliveryReport.getExternalId() + "' dropped");
+            }
         }
-        // if the short message does not need to be concatenated
-        if (binaryShortMessage.length <= 140) {
-            return null;
+        
+        processWaitingDeliveryReportsIfIdle();
+    }
+    
+    /** 
+     * start processing the waiting delivery receipts if a delivery report slot is free, never waits. A task processes 
+     * the waiting receipts until there are none left, a receipt that arrived while the last task was ending is picked up 
+     * by the next receipt or by {@link #retryUnmatchedDeliveryReports()}. 
+     **/
+    private void processWaitingDeliveryReportsIfIdle() {
+        if (!this.waitingDeliveryReports.isEmpty()) {
+            smsGatewayExecutor.tryExecute(SmsGatewayExecutor.DELIVERY_REPORT, this::processWaitingDeliveryReports);
         }
-
-        // since the UDH will be 6 bytes, we'll split the data into chunks of 134
-        int numParts = (int) (binaryShortMessage.length / 134) + (binaryShortMessage.length % 134 != 0 ? 1 : 0);
-        //logger.debug("numParts=" + numParts);
-
-        byte[][] shortMessageParts = new byte[numParts][];
-
-        for (int i = 0; i < numParts; i++) {
-            // default this part length to max of 134
-            int shortMessagePartLength = 134;
-            if ((i + 1) == numParts) {
-                // last part (only need to add remainder)
-                shortMessagePartLength = binaryShortMessage.length - (i * 134);
+    }
+    
+    private void processWaitingDeliveryReports() {
+        PendingDeliveryReport waitingDeliveryReport;
+        
+        while ((waitingDeliveryReport = this.waitingDeliveryReports.poll()) != null) {
+            try {
+                processDeliveryReport(waitingDeliveryReport.smsGatewayDeliveryReport, waitingDeliveryReport.receivedOnMillis);
+            }
+            
+            catch (RuntimeException e) {
+                logger.error("Failed to process the delivery report for external ID '" 
+                        + waitingDeliveryReport.smsGatewayDeliveryReport.getExternalId() + "'", e);
             }
-
-            //logger.debug("part " + i + " len: " + shortMessagePartLength);
-
-            // part will be UDH (6 bytes) + length of part
-            byte[] shortMessagePart = new byte[6 + shortMessagePartLength];
-            // Field 1 (1 octet): Length of User Data Header, in this case 05.
-            shortMessagePart[0] = (byte) 0x05;
-            // Field 2 (1 octet): Information Element Identifier, equal to 00 (Concatenated short messages, 8-bit reference number)
-            shortMessagePart[1] = (byte) 0x00;
-            // Field 3 (1 octet): Length of the header, excluding the first two fields; equal to 03
-            shortMessagePart[2] = (byte) 0x03;
-            // Field 4 (1 octet): 00-FF, CSMS reference number, must be same for all the SMS parts in the CSMS
-            shortMessagePart[3] = referenceNum;
-            // Field 5 (1 octet): 00-FF, total number of parts. The value shall remain constant for every short message which makes up the concatenated short message. If the value is zero then the receiving entity shall ignore the whole information element
-            shortMessagePart[4] = (byte) numParts;
-            // Field 6 (1 octet): 00-FF, this part's number in the sequence. The value shall start at 1 and increment for every short message which makes up the concatenated short message. If the value is zero or greater than the value in Field 5 then the receiving entity shall ignore the whole information element. [ETSI Specification: GSM 03.40 Version 5.3.0: July 1996]
-            shortMessagePart[5] = (byte) (i + 1);
-
-            // copy this part's user data onto the end
-            System.arraycopy(binaryShortMessage, (i * 134), shortMessagePart, 6, shortMessagePartLength);
-            shortMessageParts[i] = shortMessagePart;
         }
-
-        return shortMessageParts;
+    }
+    
+    /**
+     * a delivery receipt waiting to be processed and the time it arrived
+     **/
+    private static class PendingDeliveryReport {
+        private final SmsGatewayDeliveryReport smsGatewayDeliveryReport;
+        private final long receivedOnMillis;
+        
+        private PendingDeliveryReport(final SmsGatewayDeliveryReport smsGatewayDeliveryReport, final long receivedOnMillis) {
+            this.smsGatewayDeliveryReport = smsGatewayDeliveryReport;
+            this.receivedOnMillis = receivedOnMillis;
+        }
     }
 }
@@ -3,42 +3,82 @@ package org.mifos.sms.gateway.infobip;
 import java.util.List;
 import java.util.ArrayList;
 
+import javax.annotation.PostConstruct;
+
+import org.mifos.sms.domain.SmsMessageStatusType;
+import org.mifos.sms.gateway.SmsGateway;
+import org.mifos.sms.gateway.SmsGatewayExecutor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
-/** 
+/**
  * Infobip SMS gateway services is use in sending out sms messages.
- * More information - http://www.infobip.com/messaging/wholesale/apis/ 
+ * More information - http://www.infobip.com/messaging/wholesale/apis/
+ *
+ * The SMPP provider, the session is only bound if "gateway.smpp.enabled" is true (gateway.properties)
  **/
 @Service
 public class SmsGatewayImpl implements SmsGateway {
 	private final SmsGatewayHelper smsGatewayHelper;
-	
-	/** 
+	private final boolean enabled;
+
+	/**
 	 * SmsGatewayImpl constructor
-	 * 
-	 * @return void 
+	 *
+	 * @return void
 	 **/
 	@Autowired
-	public SmsGatewayImpl(final SmsGatewayHelper smsGatewayHelper) {
+	public SmsGatewayImpl(final SmsGatewayHelper smsGatewayHelper, @Value("${gateway.smpp.enabled}") final boolean enabled) {
 		this.smsGatewayHelper = smsGatewayHelper;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * bind the SMPP session, retried in the background until it succeeds
+	 **/
+	@PostConstruct
+	public void bind() {
+		if(enabled) {
+			smsGatewayHelper.connectAndBindSession();
+
+			if(!smsGatewayHelper.isConnected) {
+				smsGatewayHelper.reconnectAndBindSession();
+			}
+		}
+	}
+
+	@Override
+	public String getName() {
+		return SmsGatewayExecutor.SMPP;
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return enabled && smsGatewayHelper.isConnected && (smsGatewayHelper.getSession() != null);
 	}
 
 	@Override
 	public List<SmsGatewayMessage> sendMessages(List<SmsGatewayMessage> smsGatewayMessages) {
 		List<SmsGatewayMessage> sentSmsGatewayMessages = new ArrayList<>(smsGatewayMessages.size());
-		
-		if(smsGatewayMessages.size() > 0) {
-			for(SmsGatewayMessage smsGatewayMessage : smsGatewayMessages) {
-				sentSmsGatewayMessages.add(smsGatewayHelper.submitShortMessage(smsGatewayMessage));
-			}
+
+		for(SmsGatewayMessage smsGatewayMessage : smsGatewayMessages) {
+			sentSmsGatewayMessages.add(sendMessage(smsGatewayMessage));
 		}
-		
+
 		return sentSmsGatewayMessages;
 	}
 
 	@Override
 	public SmsGatewayMessage sendMessage(SmsGatewayMessage smsGatewayMessage) {
-		return smsGatewayHelper.submitShortMessage(smsGatewayMessage);
+		SmsGatewayMessage sentSmsGatewayMessage = smsGatewayHelper.submitShortMessage(smsGatewayMessage);
+
+		// the delivery receipt arrives on the session
+		if(!StringUtils.isEmpty(sentSmsGatewayMessage.getExternalId())) {
+			sentSmsGatewayMessage.setDeliveryStatus(SmsMessageStatusType.WAITING_FOR_REPORT.getValue());
+		}
+
+		return sentSmsGatewayMessage;
 	}
 }
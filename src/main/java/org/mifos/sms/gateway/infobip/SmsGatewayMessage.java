@@ -36,6 +36,11 @@ public class SmsGatewayMessage {
      **/
     private Integer deliveryStatus; 
     
+    /** 
+     * the Mifos tenant the message belongs to, identifies the shard of the id in the delivery report callbacks 
+     **/
+    private String mifosTenantIdentifier;
+    
     /** 
      * SmsGatewayMessage constructor
      * 
@@ -107,4 +112,12 @@ public class SmsGatewayMessage {
     public Integer getDeliveryStatus() {
         return this.deliveryStatus;
     }
+
+    public void setMifosTenantIdentifier(final String mifosTenantIdentifier) {
+        this.mifosTenantIdentifier = mifosTenantIdentifier;
+    }
+
+    public String getMifosTenantIdentifier() {
+        return this.mifosTenantIdentifier;
+    }
 }
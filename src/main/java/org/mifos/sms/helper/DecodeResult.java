@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.helper;
+
+/**
+ * The outcome of decoding a request body, see {@link JsonCodec} and {@link ProtobufCodec}: the decoded object or the
+ * reason it could not be decoded
+ **/
+public final class DecodeResult<T> {
+    static final String EMPTY_REQUEST_BODY = "The request body is empty";
+
+    private final T object;
+    private final String errorMessage;
+
+    private DecodeResult(final T object, final String errorMessage) {
+        this.object = object;
+        this.errorMessage = errorMessage;
+    }
+
+    static <T> DecodeResult<T> success(final T object) {
+        return new DecodeResult<>(object, null);
+    }
+
+    static <T> DecodeResult<T> error(final String errorMessage) {
+        return new DecodeResult<>(null, errorMessage);
+    }
+
+    /**
+     * @return the decoded object, null if the request body could not be decoded
+     **/
+    public T getObject() {
+        return object;
+    }
+
+    /**
+     * @return true if the request body could not be decoded
+     **/
+    public boolean hasError() {
+        return errorMessage != null;
+    }
+
+    /**
+     * @return the reason the request body could not be decoded, null if it was decoded
+     **/
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
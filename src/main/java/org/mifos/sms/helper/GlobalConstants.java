@@ -15,4 +15,5 @@ public class GlobalConstants {
 	public static final String GSON_DATE_FORMAT = "yyyy-MM-dd";
 	public static final String GSON_DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
 	public static final String SIMPLE_DATE_FORMAT = "yyyy-MM-dd";
+	public static final String ISO_DATETIME_MILLIS_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZZ";
 }
@@ -1,22 +1,24 @@
 package org.mifos.sms.helper;
 
-import java.lang.reflect.Type;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.joda.time.DateTime;
 import org.springframework.jdbc.support.JdbcUtils;
-import org.springframework.util.StringUtils;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
 /** 
  * Main class with nested helper classes 
@@ -24,121 +26,19 @@ import com.google.gson.GsonBuilder;
  * @author Emmanuel Nnaa
  **/
 public class HelperClass {
-
-	private static final Logger logger = LoggerFactory.getLogger(HelperClass.class);
 	
 	/** 
-	 * Helper class that uses Google gson library to convert Java Objects into their JSON representation 
-	 * and also to convert a JSON string to an equivalent Java object 
+	 * Helper class that converts millisecond precision timestamps to strings 
 	 **/
-	public static class JsonConverter {
-		private static String dateFormat = GlobalConstants.GSON_DATE_FORMAT;
-		private static Gson gson = new GsonBuilder().setDateFormat(dateFormat).create();
-		
-		/** 
-		 * change the date format use by the GSON class
-		 *
-		 * @return void
-		 **/
-		public static void setDateFormat(String dateFormat) {
-			JsonConverter.dateFormat = dateFormat;
-			JsonConverter.gson = new GsonBuilder().setDateFormat(dateFormat).create();
-		}
+	public static class DateTimeConverter {
 		
 		/** 
-		 * convert from JSON string to object 
-		 * 
-		 * @param jsonString JSON string
-		 * @param classOfT the class of the generic Type
-		 * @return map containing object, error (true/false) and error message if any
-		 **/
-		public static Map<String, Object> fromJson(String jsonString, Class<?> classOfT) {
-			Map<String, Object> map = new HashMap<>();
-			Boolean hasError = false;
-			String errorMessage = "";
-			map.put("object", "");
-			
-			if(StringUtils.isEmpty(jsonString)) {
-				hasError = true;
-				errorMessage = "The request body is empty";
-			}
-			
-			else {
-				try {
-					Object objectList = gson.fromJson(jsonString, classOfT);
-					map.put("object", objectList);
-				}
-				
-				catch(Exception e) {
-					hasError = true;
-					errorMessage = e.getMessage();
-					map.put("object", "");
-					logger.error(e.getMessage());
-				}
-			}
-			
-			map.put("hasError", hasError);
-			map.put("errorMessage", errorMessage);
-			
-			return map;
-		}
-		
-		/** 
-		 * convert from JSON string to object 
-		 * 
-		 * @param jsonString JSON string
-		 * @param typeOfT The specific genericized type of src
-		 * @return map containing object, error (true/false) and error message if any
-		 **/
-		public static Map<String, Object> fromJson(String jsonString, Type typeOfT) {
-			Map<String, Object> map = new HashMap<>();
-			Boolean hasError = false;
-			String errorMessage = "";
-			
-			List<Object> objectList = new ArrayList<>();
-			
-			if(StringUtils.isEmpty(jsonString)) {
-				hasError = true;
-				errorMessage = "The request body is empty";
-			}
-			
-			else {
-				try {
-					objectList = gson.fromJson(jsonString, typeOfT);
-				}
-				
-				catch(Exception e) {
-					hasError = true;
-					errorMessage = e.getMessage();
-					logger.error(e.getMessage());
-				}
-			}
-			
-			map.put("object", objectList);
-			map.put("hasError", hasError);
-			map.put("errorMessage", errorMessage);
-			
-			return map;
-		}
-		
-		/** 
-		 * convert from object to JSON string 
-		 * 
-		 * @param object the object to be converted
-		 * @return Json representation of the object
+		 * @param date the date to be converted
+		 * @return ISO 8601 representation with milliseconds and UTC offset, e.g. 2016-05-04T13:14:15.123+03:00, 
+		 * null if the date is null
 		 **/
-		public static String toJson(Object object) {
-			String jsonString = "";
-			
-			try {
-				jsonString = gson.toJson(object);
-			}
-			
-			catch(Exception e) {
-				logger.error(e.getMessage());
-			}
-			
-			return jsonString;
+		public static String toDateTimeString(Date date) {
+			return (date != null) ? new DateTime(date).toString(GlobalConstants.ISO_DATETIME_MILLIS_FORMAT) : null;
 		}
 	}
 	
@@ -162,24 +62,72 @@ public class HelperClass {
 			return Response.status(httpStatusCode).entity(entity).build();
 		}
 		
+		/** 
+		 * build a success response whose data is written straight to the response stream instead of being 
+		 * collected in memory first
+		 * 
+		 * @param dataWriter writes the value of the "data" property
+		 * @return success response 
+		 **/
+		public static Response success(final JsonDataWriter dataWriter) {
+			return streamed(HttpResponseStatusCode.OK.getValue(), "data", dataWriter);
+		}
+		
 		/** 
 		 * @param statusCode the HTTP response status code
 		 * @param developerMessage error message for developers
 		 * @return error response
 		 **/
-		public static Response error(HttpResponseStatusCode statusCode, String developerMessage) {
-			Map<String, Object> entity = new HashMap<>(); 
-			
-			Integer httpStatusCode = statusCode.getValue();
-			
-			entity.put("httpStatusCode", httpStatusCode);
-			entity.put("developerMessage", developerMessage);
-			
-			return Response.status(httpStatusCode).entity(entity).build();
+		public static Response error(final HttpResponseStatusCode statusCode, final String developerMessage) {
+			return streamed(statusCode.getValue(), "developerMessage", new JsonDataWriter() {
+				
+				@Override
+				public void write(JsonWriter writer) throws IOException {
+					writer.value(developerMessage);
+				}
+			});
+		}
+		
+		/** 
+		 * build a response whose body is written straight to the response stream 
+		 * 
+		 * @param httpStatusCode the HTTP response status code
+		 * @param name the name of the property following "httpStatusCode"
+		 * @param valueWriter writes the value of the property
+		 * @return the response 
+		 **/
+		private static Response streamed(final Integer httpStatusCode, final String name, final JsonDataWriter valueWriter) {
+			StreamingOutput streamingOutput = new StreamingOutput() {
+				
+				@Override
+				public void write(OutputStream outputStream) throws IOException, WebApplicationException {
+					JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(outputStream, 
+							StandardCharsets.UTF_8)));
+					
+					writer.beginObject();
+					writer.name("httpStatusCode").value(httpStatusCode);
+					writer.name(name);
+					valueWriter.write(writer);
+					writer.endObject();
+					writer.flush();
+				}
+			};
 			
+			return Response.status(httpStatusCode).entity(streamingOutput).build();
 		}
 	}
 	
+	/** 
+	 * Writes the data of a streamed API response 
+	 **/
+	public interface JsonDataWriter {
+		
+		/** 
+		 * @param writer the JSON writer, positioned where the value of the "data" property is expected
+		 **/
+		void write(JsonWriter writer) throws IOException;
+	}
+	
 	/** 
 	 * JDBC helper class 
 	 **/
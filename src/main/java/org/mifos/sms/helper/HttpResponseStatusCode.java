@@ -12,6 +12,7 @@ public enum HttpResponseStatusCode {
 	FORBIDDEN(403, "httpResponseStatusCode.forbidden"),
 	NOT_FOUND(404, "httpResponseStatusCode.notFound"),
 	INTERNAL_SERVER_ERROR(500, "httpResponseStatusCode.internalServerError"),
+	SERVICE_UNAVAILABLE(503, "httpResponseStatusCode.serviceUnavailable"),
 	OK(200, "httpResponseStatusCode.ok");
 	
 	private final Integer value;
@@ -46,6 +47,9 @@ public enum HttpResponseStatusCode {
             case 500:
                 enumeration = HttpResponseStatusCode.INTERNAL_SERVER_ERROR;
             break;
+            case 503:
+                enumeration = HttpResponseStatusCode.SERVICE_UNAVAILABLE;
+            break;
         }
         
         return enumeration;
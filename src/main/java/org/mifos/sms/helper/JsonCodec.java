@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.helper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.mifos.sms.data.DeliveryReportRequestData;
+import org.mifos.sms.data.SmsOutboundMessageResponseData;
+import org.mifos.sms.domain.SmsOutboundMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Hand-written streaming JSON codec for the request and response bodies of the "/sms" API. The bodies are read and
+ * written field by field with the gson stream API, without reflection or intermediate maps; unknown fields are
+ * skipped.
+ **/
+public final class JsonCodec {
+    private static final Logger logger = LoggerFactory.getLogger(JsonCodec.class);
+
+    // thread-safe, unlike SimpleDateFormat
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormat.forPattern(GlobalConstants.GSON_DATE_FORMAT);
+    private static final int DATE_LENGTH = GlobalConstants.GSON_DATE_FORMAT.length();
+
+    private JsonCodec() {}
+
+    /**
+     * decode the request body of "/sms/queue", a JSON array of messages
+     *
+     * @param jsonString JSON string
+     * @return the messages, not saved yet
+     **/
+    public static DecodeResult<List<SmsOutboundMessage>> readSmsOutboundMessages(final String jsonString) {
+        if (StringUtils.isEmpty(jsonString)) {
+            return DecodeResult.error(DecodeResult.EMPTY_REQUEST_BODY);
+        }
+
+        try (JsonReader reader = reader(jsonString)) {
+            if (reader.peek() == JsonToken.NULL) {
+                return DecodeResult.error(DecodeResult.EMPTY_REQUEST_BODY);
+            }
+
+            final List<SmsOutboundMessage> smsOutboundMessages = new ArrayList<>();
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                smsOutboundMessages.add(readSmsOutboundMessage(reader));
+            }
+
+            reader.endArray();
+
+            return DecodeResult.success(smsOutboundMessages);
+        }
+
+        catch (Exception e) {
+            logger.error(e.getMessage());
+
+            return DecodeResult.error(e.getMessage());
+        }
+    }
+
+    /**
+     * decode the request body of "/sms/report"
+     *
+     * @param jsonString JSON string
+     * @return the delivery report request
+     **/
+    public static DecodeResult<DeliveryReportRequestData> readDeliveryReportRequest(final String jsonString) {
+        if (StringUtils.isEmpty(jsonString)) {
+            return DecodeResult.error(DecodeResult.EMPTY_REQUEST_BODY);
+        }
+
+        try (JsonReader reader = reader(jsonString)) {
+            if (reader.peek() == JsonToken.NULL) {
+                return DecodeResult.error(DecodeResult.EMPTY_REQUEST_BODY);
+            }
+
+            List<Long> externalIds = null;
+            String mifosTenantIdentifier = null;
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "externalIds":
+                        externalIds = readLongs(reader);
+                        break;
+
+                    case "mifosTenantIdentifier":
+                        mifosTenantIdentifier = readString(reader);
+                        break;
+
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+
+            reader.endObject();
+
+            return DecodeResult.success(DeliveryReportRequestData.getInstance(externalIds, mifosTenantIdentifier));
+        }
+
+        catch (Exception e) {
+            logger.error(e.getMessage());
+
+            return DecodeResult.error(e.getMessage());
+        }
+    }
+
+    /**
+     * write the response data of messages as a JSON array
+     *
+     * @param writer the JSON writer
+     * @param smsOutboundMessagesResponseData the response data
+     **/
+    public static void writeResponseData(final JsonWriter writer,
+            final Collection<SmsOutboundMessageResponseData> smsOutboundMessagesResponseData) throws IOException {
+        writer.beginArray();
+
+        for (final SmsOutboundMessageResponseData smsOutboundMessageResponseData : smsOutboundMessagesResponseData) {
+            smsOutboundMessageResponseData.toJson(writer);
+        }
+
+        writer.endArray();
+    }
+
+    private static JsonReader reader(final String jsonString) {
+        final JsonReader reader = new JsonReader(new StringReader(jsonString));
+        // as lenient as the Gson based conversion it replaces
+        reader.setLenient(true);
+
+        return reader;
+    }
+
+    /**
+     * read a message, a null message is read as a message without values and fails the validation
+     **/
+    private static SmsOutboundMessage readSmsOutboundMessage(final JsonReader reader) throws IOException {
+        String externalId = null;
+        Long internalId = null;
+        String mifosTenantIdentifier = null;
+        Date createdOnDate = null;
+        String sourceAddress = null;
+        String mobileNumber = null;
+        String message = null;
+
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+
+            return SmsOutboundMessage.getPendingMessages(null, null, null, null, null, null, null, null, null, null, null);
+        }
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "externalId":
+                    externalId = readString(reader);
+                    break;
+
+                case "internalId":
+                    internalId = readLong(reader);
+                    break;
+
+                case "mifosTenantIdentifier":
+                    mifosTenantIdentifier = readString(reader);
+                    break;
+
+                case "createdOnDate":
+                    createdOnDate = readDate(reader);
+                    break;
+
+                case "sourceAddress":
+                    sourceAddress = readString(reader);
+                    break;
+
+                case "mobileNumber":
+                    mobileNumber = readString(reader);
+                    break;
+
+                case "message":
+                    message = readString(reader);
+                    break;
+
+                default:
+                    // the other fields are set by the gateway
+                    reader.skipValue();
+                    break;
+            }
+        }
+
+        reader.endObject();
+
+        return SmsOutboundMessage.getPendingMessages(externalId, internalId, mifosTenantIdentifier, createdOnDate, null, null,
+                null, null, sourceAddress, mobileNumber, message);
+    }
+
+    private static String readString(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+
+            return null;
+        }
+
+        return reader.nextString();
+    }
+
+    private static Long readLong(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+
+            return null;
+        }
+
+        return reader.nextLong();
+    }
+
+    private static List<Long> readLongs(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+
+            return null;
+        }
+
+        final List<Long> values = new ArrayList<>();
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            values.add(readLong(reader));
+        }
+
+        reader.endArray();
+
+        return values;
+    }
+
+    private static Date readDate(final JsonReader reader) throws IOException {
+        return parseDate(readString(reader));
+    }
+
+    /**
+     * parse a date in the {@link GlobalConstants#GSON_DATE_FORMAT} format, anything after the date (e.g. a time) is
+     * ignored
+     *
+     * @param value the date, may be null or empty
+     * @return the date, null if the value is null or empty
+     **/
+    static Date parseDate(final String value) {
+        if (StringUtils.isEmpty(value)) {
+            return null;
+        }
+
+        return DATE_FORMATTER.parseLocalDate((value.length() > DATE_LENGTH) ? value.substring(0, DATE_LENGTH) : value)
+                .toDate();
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.helper;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.mifos.sms.domain.SmsOutboundMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming decoder of the binary "/sms/queue" request body: a sequence of length-delimited protobuf
+ * SmsOutboundMessage messages (see sms_queue.proto), as written by protobuf's writeDelimitedTo(). Each message is
+ * read into a reused buffer and decoded in place, unknown fields are skipped.
+ *
+ * Written against the protobuf wire format so that the gateway does not need the protobuf runtime or generated code.
+ **/
+public final class ProtobufCodec {
+    public static final String MEDIA_TYPE = "application/x-protobuf";
+
+    private static final Logger logger = LoggerFactory.getLogger(ProtobufCodec.class);
+
+    // field numbers of sms_queue.proto
+    private static final int EXTERNAL_ID = 1;
+    private static final int INTERNAL_ID = 2;
+    private static final int MIFOS_TENANT_IDENTIFIER = 3;
+    private static final int CREATED_ON_DATE = 4;
+    private static final int SOURCE_ADDRESS = 5;
+    private static final int MOBILE_NUMBER = 6;
+    private static final int MESSAGE = 7;
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_TYPE_FIXED32 = 5;
+
+    // well above a message text of 255 segments, larger frames are rejected rather than buffered
+    private static final int MAXIMUM_MESSAGE_SIZE = 256 * 1024;
+
+    private ProtobufCodec() {}
+
+    /**
+     * decode the binary request body of "/sms/queue"
+     *
+     * @param inputStream the request body
+     * @return the messages, not saved yet
+     **/
+    public static DecodeResult<List<SmsOutboundMessage>> readSmsOutboundMessages(final InputStream inputStream) {
+        final List<SmsOutboundMessage> smsOutboundMessages = new ArrayList<>();
+
+        try {
+            final InputStream bufferedInputStream = new BufferedInputStream(inputStream);
+            byte[] buffer = new byte[256];
+            int size;
+
+            while ((size = readFrameSize(bufferedInputStream)) >= 0) {
+                if (size > MAXIMUM_MESSAGE_SIZE) {
+                    return DecodeResult.error("Message " + smsOutboundMessages.size() + " is larger than "
+                            + MAXIMUM_MESSAGE_SIZE + " bytes");
+                }
+
+                if (size > buffer.length) {
+                    buffer = new byte[Math.max(size, buffer.length * 2)];
+                }
+
+                readFully(bufferedInputStream, buffer, size);
+                smsOutboundMessages.add(readSmsOutboundMessage(buffer, size));
+            }
+        }
+
+        catch (IOException | RuntimeException e) {
+            logger.error(e.getMessage());
+
+            return DecodeResult.error("Malformed message " + smsOutboundMessages.size() + ": " + e.getMessage());
+        }
+
+        if (smsOutboundMessages.isEmpty()) {
+            return DecodeResult.error(DecodeResult.EMPTY_REQUEST_BODY);
+        }
+
+        return DecodeResult.success(smsOutboundMessages);
+    }
+
+    private static SmsOutboundMessage readSmsOutboundMessage(final byte[] buffer, final int size) {
+        final Cursor cursor = new Cursor(buffer, size);
+        String externalId = null;
+        Long internalId = null;
+        String mifosTenantIdentifier = null;
+        Date createdOnDate = null;
+        String sourceAddress = null;
+        String mobileNumber = null;
+        String message = null;
+
+        while (cursor.position < size) {
+            final long tag = cursor.readVarint();
+            final int fieldNumber = (int) (tag >>> 3);
+            final int wireType = (int) (tag & 0x7);
+
+            switch (fieldNumber) {
+                case EXTERNAL_ID:
+                    externalId = cursor.readString(wireType);
+                    break;
+
+                case INTERNAL_ID:
+                    cursor.checkWireType(wireType, WIRE_TYPE_VARINT);
+                    internalId = cursor.readVarint();
+                    break;
+
+                case MIFOS_TENANT_IDENTIFIER:
+                    mifosTenantIdentifier = cursor.readString(wireType);
+                    break;
+
+                case CREATED_ON_DATE:
+                    createdOnDate = JsonCodec.parseDate(cursor.readString(wireType));
+                    break;
+
+                case SOURCE_ADDRESS:
+                    sourceAddress = cursor.readString(wireType);
+                    break;
+
+                case MOBILE_NUMBER:
+                    mobileNumber = cursor.readString(wireType);
+                    break;
+
+                case MESSAGE:
+                    message = cursor.readString(wireType);
+                    break;
+
+                default:
+                    cursor.skip(wireType);
+                    break;
+            }
+        }
+
+        return SmsOutboundMessage.getPendingMessages(externalId, internalId, mifosTenantIdentifier, createdOnDate, null, null,
+                null, null, sourceAddress, mobileNumber, message);
+    }
+
+    /**
+     * @return the size of the next message, -1 at the end of the stream
+     **/
+    private static int readFrameSize(final InputStream inputStream) throws IOException {
+        int size = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = inputStream.read();
+
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+
+                throw new EOFException("Truncated message size");
+            }
+
+            size |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                if (size < 0) {
+                    break;
+                }
+
+                return size;
+            }
+        }
+
+        throw new IOException("Malformed message size");
+    }
+
+    private static void readFully(final InputStream inputStream, final byte[] buffer, final int size) throws IOException {
+        int offset = 0;
+
+        while (offset < size) {
+            final int read = inputStream.read(buffer, offset, size - offset);
+
+            if (read < 0) {
+                throw new EOFException("Truncated message");
+            }
+
+            offset += read;
+        }
+    }
+
+    /**
+     * reads the fields of a message held in a buffer
+     **/
+    private static class Cursor {
+        private final byte[] buffer;
+        private final int limit;
+        private int position;
+
+        private Cursor(final byte[] buffer, final int limit) {
+            this.buffer = buffer;
+            this.limit = limit;
+        }
+
+        private long readVarint() {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private String readString(final int wireType) {
+            checkWireType(wireType, WIRE_TYPE_LENGTH_DELIMITED);
+
+            final int length = readLength();
+            final String value = new String(this.buffer, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+
+            return value;
+        }
+
+        private void skip(final int wireType) {
+            switch (wireType) {
+                case WIRE_TYPE_VARINT:
+                    readVarint();
+                    break;
+
+                case WIRE_TYPE_FIXED64:
+                    advance(8);
+                    break;
+
+                case WIRE_TYPE_LENGTH_DELIMITED:
+                    advance(readLength());
+                    break;
+
+                case WIRE_TYPE_FIXED32:
+                    advance(4);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("Unsupported wire type " + wireType);
+            }
+        }
+
+        private void checkWireType(final int wireType, final int expectedWireType) {
+            if (wireType != expectedWireType) {
+                throw new IllegalArgumentException("Unexpected wire type " + wireType);
+            }
+        }
+
+        private int readLength() {
+            final long length = readVarint();
+
+            if (length < 0 || length > this.limit - this.position) {
+                throw new IllegalArgumentException("Field length exceeds the message");
+            }
+
+            return (int) length;
+        }
+
+        private void advance(final int length) {
+            if (length > this.limit - this.position) {
+                throw new IllegalArgumentException("Field length exceeds the message");
+            }
+
+            this.position += length;
+        }
+
+        private byte readByte() {
+            if (this.position >= this.limit) {
+                throw new IllegalArgumentException("Truncated field");
+            }
+
+            return this.buffer[this.position++];
+        }
+    }
+}
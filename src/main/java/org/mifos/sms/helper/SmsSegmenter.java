@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.helper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits the encoded text of a message into the short messages of a concatenated SMS (3GPP TS 23.040 9.2.3.24.1), one
+ * part at a time: a part is only built when it is submitted, so a long message never holds all its PDUs at once.
+ *
+ * A text that fits in one short message is sent as is, otherwise each part starts with a 6 octet user data header
+ * (05 00 03 reference total number) followed by up to 153 octets of a GSM 03.38 text or 134 octets of a UCS2 text. A
+ * UCS2 part never ends between the two halves of a surrogate pair. A GSM 03.38 text is sent UTF-8 encoded, whatever the
+ * platform encoding, and a part never ends within a multi-byte character.
+ **/
+public final class SmsSegmenter implements Iterator<byte[]> {
+    // the total and number fields of the user data header are one octet
+    public static final int MAXIMUM_SEGMENTS = 255;
+
+    private static final int MAXIMUM_SINGLE_BASIC_SIZE = 160;
+    private static final int MAXIMUM_SINGLE_UCS2_SIZE = 140;
+    private static final int USER_DATA_HEADER_SIZE = 6;
+    // the 6 octets of the header take 7 septets of the 160
+    private static final int SEGMENT_BASIC_SIZE = 153;
+    private static final int SEGMENT_UCS2_SIZE = 134;
+    // the fewest characters of a UCS2 part, one is given up when a surrogate pair would be split
+    private static final int MINIMUM_SEGMENT_CHARACTERS = SEGMENT_UCS2_SIZE / 2 - 1;
+
+    private final byte[] bytes;
+    private final boolean basic;
+    private final byte referenceNumber;
+    private final int count;
+    private int offset;
+    private int number;
+
+    /**
+     * @param bytes the encoded text, see {@link #encode(String, boolean)}
+     * @param basic true if the text is encoded in the GSM 03.38 basic character set, false for UCS2
+     * @param referenceNumber the reference number shared by the parts of the message
+     **/
+    public SmsSegmenter(final byte[] bytes, final boolean basic, final byte referenceNumber) {
+        this.bytes = bytes;
+        this.basic = basic;
+        this.referenceNumber = referenceNumber;
+        this.count = countSegments(bytes, basic);
+    }
+
+    /**
+     * @param message the message text
+     * @param basic the result of {@link Gsm0338#isBasicEncodeable(String)} for the text
+     * @return the bytes of the text as sent to the gateway
+     **/
+    public static byte[] encode(final String message, final boolean basic) {
+        return message.getBytes(basic ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16BE);
+    }
+
+    /**
+     * @return true if the text needs more than {@link #MAXIMUM_SEGMENTS} parts, the text is only encoded if it is long
+     *         enough to need as many
+     **/
+    public static boolean isTooLong(final String message) {
+        if (message.length() <= MAXIMUM_SEGMENTS * MINIMUM_SEGMENT_CHARACTERS) {
+            return false;
+        }
+
+        final boolean basic = Gsm0338.isBasicEncodeable(message);
+
+        return countSegments(encode(message, basic), basic) > MAXIMUM_SEGMENTS;
+    }
+
+    /**
+     * @return the number of short messages of the encoded text
+     **/
+    public static int countSegments(final byte[] bytes, final boolean basic) {
+        if (bytes.length <= (basic ? MAXIMUM_SINGLE_BASIC_SIZE : MAXIMUM_SINGLE_UCS2_SIZE)) {
+            return 1;
+        }
+
+        int count = 0;
+
+        for (int offset = 0; offset < bytes.length; offset = segmentEnd(bytes, basic, offset)) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the end of the text of the part that starts at offset
+     **/
+    private static int segmentEnd(final byte[] bytes, final boolean basic, final int offset) {
+        int end = offset + (basic ? SEGMENT_BASIC_SIZE : SEGMENT_UCS2_SIZE);
+
+        if (end >= bytes.length) {
+            return bytes.length;
+        }
+
+        if (basic) {
+            // the next part must not start with a continuation byte of a UTF-8 character
+            while (end > offset + 1 && (bytes[end] & 0xc0) == 0x80) {
+                end--;
+            }
+        }
+
+        // the part must not end with a high surrogate (D800 to DBFF)
+        else if ((bytes[end - 2] & 0xfc) == 0xd8) {
+            end -= 2;
+        }
+
+        return end;
+    }
+
+    /**
+     * @return the number of short messages of the text
+     **/
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the number of the part last returned by {@link #next()}, starting at 1
+     **/
+    public int getNumber() {
+        return this.number;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.number < this.count;
+    }
+
+    @Override
+    public byte[] next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        this.number++;
+
+        if (this.count == 1) {
+            this.offset = this.bytes.length;
+
+            return this.bytes;
+        }
+
+        final int end = segmentEnd(this.bytes, this.basic, this.offset);
+        final byte[] part = new byte[USER_DATA_HEADER_SIZE + end - this.offset];
+        // length of the header, concatenated short messages with an 8-bit reference number, length of the element
+        part[0] = 0x05;
+        part[1] = 0x00;
+        part[2] = 0x03;
+        part[3] = this.referenceNumber;
+        part[4] = (byte) this.count;
+        part[5] = (byte) this.number;
+
+        System.arraycopy(this.bytes, this.offset, part, USER_DATA_HEADER_SIZE, end - this.offset);
+        this.offset = end;
+
+        return part;
+    }
+}
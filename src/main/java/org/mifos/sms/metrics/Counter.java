@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing, lock-free counter
+ **/
+public class Counter {
+    private final String name;
+    private final Map<String, String> tags;
+    private final LongAdder count = new LongAdder();
+
+    Counter(final String name, final Map<String, String> tags) {
+        this.name = name;
+        this.tags = tags;
+    }
+
+    /**
+     * increment the counter by one
+     **/
+    public void increment() {
+        this.count.increment();
+    }
+
+    /**
+     * increment the counter by the given amount
+     **/
+    public void increment(final long amount) {
+        this.count.add(amount);
+    }
+
+    /**
+     * @return the current count
+     **/
+    public long count() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the counter name
+     **/
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the counter tags
+     **/
+    public Map<String, String> getTags() {
+        return tags;
+    }
+}
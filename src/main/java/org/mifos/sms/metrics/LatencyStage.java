@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.metrics;
+
+/**
+ * Stages of the send pipeline for which latency histograms are recorded
+ **/
+public enum LatencyStage {
+    QUEUE_TO_PICKUP("queueToPickup"), // message added via "/sms/queue" until picked up by the send job
+    PICKUP_TO_SUBMIT("pickupToSubmit"), // picked up by the send job until accepted by the gateway
+    SUBMIT_TO_DELIVERY_REPORT("submitToDeliveryReport"), // accepted by the gateway until its delivery report arrives
+    QUEUE_TO_DELIVERY_REPORT("queueToDeliveryReport"); // end to end
+
+    private final String code;
+
+    private LatencyStage(final String code) {
+        this.code = code;
+    }
+
+    /**
+     * @return the name of the stage in the stats API response
+     **/
+    public String getCode() {
+        return code;
+    }
+}
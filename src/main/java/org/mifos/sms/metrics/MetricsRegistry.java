@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process registry of counters, timers and gauges, exported on the "/metrics" endpoint
+ **/
+@Component
+public class MetricsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * @param name the counter name
+     * @param tags tag keys and values, e.g. "tenant", "demo", "gateway", "infobip"
+     * @return the counter with the given name and tags, created if it does not exist
+     **/
+    public Counter counter(final String name, final String... tags) {
+        final String key = key(name, tags);
+        // a plain get keeps the hot path free of the bin lock ConcurrentHashMap.computeIfAbsent takes in java 8
+        final Counter counter = this.counters.get(key);
+
+        if (counter != null) {
+            return counter;
+        }
+
+        final Counter newCounter = new Counter(name, tagMap(tags));
+        final Counter existingCounter = this.counters.putIfAbsent(key, newCounter);
+
+        return (existingCounter != null) ? existingCounter : newCounter;
+    }
+
+    /**
+     * @param name the timer name
+     * @param tags tag keys and values
+     * @return the timer with the given name and tags, created if it does not exist
+     **/
+    public Timer timer(final String name, final String... tags) {
+        final String key = key(name, tags);
+        final Timer timer = this.timers.get(key);
+
+        if (timer != null) {
+            return timer;
+        }
+
+        final Timer newTimer = new Timer(name, tagMap(tags));
+        final Timer existingTimer = this.timers.putIfAbsent(key, newTimer);
+
+        return (existingTimer != null) ? existingTimer : newTimer;
+    }
+
+    /**
+     * register a gauge, the supplier is only called when the metrics are read. Registering a gauge with the same name
+     * and tags replaces the previous one.
+     *
+     * @param name the gauge name
+     * @param supplier supplies the current value of the gauge
+     * @param tags tag keys and values
+     **/
+    public void gauge(final String name, final LongSupplier supplier, final String... tags) {
+        this.gauges.put(key(name, tags), new Gauge(name, tagMap(tags), supplier));
+    }
+
+    /**
+     * @return all registered metrics, sorted by name and tags
+     **/
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+        final List<Map<String, Object>> counterList = new ArrayList<>();
+        final List<Map<String, Object>> timerList = new ArrayList<>();
+        final List<Map<String, Object>> gaugeList = new ArrayList<>();
+
+        for (Counter counter : new TreeMap<>(this.counters).values()) {
+            final Map<String, Object> metric = metric(counter.getName(), counter.getTags());
+            metric.put("count", counter.count());
+            counterList.add(metric);
+        }
+
+        for (Timer timer : new TreeMap<>(this.timers).values()) {
+            final long count = timer.count();
+            final double totalMillis = timer.totalTime(TimeUnit.MILLISECONDS);
+            final Map<String, Object> metric = metric(timer.getName(), timer.getTags());
+            metric.put("count", count);
+            metric.put("totalMillis", totalMillis);
+            metric.put("meanMillis", (count > 0) ? totalMillis / count : 0.0);
+            metric.put("maxMillis", timer.max(TimeUnit.MILLISECONDS));
+            timerList.add(metric);
+        }
+
+        for (Gauge gauge : new TreeMap<>(this.gauges).values()) {
+            final Map<String, Object> metric = metric(gauge.name, gauge.tags);
+
+            try {
+                metric.put("value", gauge.supplier.getAsLong());
+            }
+
+            catch (Exception e) {
+                logger.error("Failed to read gauge " + gauge.name + ": " + e.getMessage());
+                metric.put("value", null);
+            }
+
+            gaugeList.add(metric);
+        }
+
+        snapshot.put("counters", counterList);
+        snapshot.put("timers", timerList);
+        snapshot.put("gauges", gaugeList);
+
+        return snapshot;
+    }
+
+    private static Map<String, Object> metric(final String name, final Map<String, String> tags) {
+        final Map<String, Object> metric = new LinkedHashMap<>();
+        metric.put("name", name);
+        metric.put("tags", tags);
+
+        return metric;
+    }
+
+    private static String key(final String name, final String... tags) {
+        if (tags.length == 0) {
+            return name;
+        }
+
+        final StringBuilder key = new StringBuilder(name).append('{');
+
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            if (i > 0) {
+                key.append(',');
+            }
+
+            key.append(tags[i]).append('=').append(tags[i + 1]);
+        }
+
+        return key.append('}').toString();
+    }
+
+    private static Map<String, String> tagMap(final String... tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be key/value pairs");
+        }
+
+        final Map<String, String> tagMap = new LinkedHashMap<>();
+
+        for (int i = 0; i < tags.length; i += 2) {
+            tagMap.put(tags[i], tags[i + 1]);
+        }
+
+        return Collections.unmodifiableMap(tagMap);
+    }
+
+    private static class Gauge {
+        private final String name;
+        private final Map<String, String> tags;
+        private final LongSupplier supplier;
+
+        private Gauge(final String name, final Map<String, String> tags, final LongSupplier supplier) {
+            this.name = name;
+            this.tags = tags;
+            this.supplier = supplier;
+        }
+    }
+}
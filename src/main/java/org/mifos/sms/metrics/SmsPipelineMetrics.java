@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.metrics;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.mifos.sms.domain.SmsMessageStatusType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metrics of the send pipeline: messages queued, submitted, failed and delivered per tenant and gateway, the time
+ * spent fetching messages from the DB and submitting them to a gateway, the delivery report lag and the per stage
+ * latency histograms
+ **/
+@Component
+public class SmsPipelineMetrics {
+    public static final String GATEWAY_INFOBIP = "infobip";
+    public static final String GATEWAY_SMPP = "smpp";
+
+    public static final String MESSAGES_QUEUED = "sms.messages.queued";
+    public static final String MESSAGES_REJECTED = "sms.messages.rejected";
+    public static final String MESSAGES_SUBMITTED = "sms.messages.submitted";
+    public static final String MESSAGES_FAILED = "sms.messages.failed";
+    public static final String MESSAGES_DELIVERED = "sms.messages.delivered";
+    public static final String DB_FETCH = "sms.db.fetch";
+    public static final String GATEWAY_SUBMIT = "sms.gateway.submit";
+    public static final String DELIVERY_REPORT_LAG = "sms.delivery.report.lag";
+    public static final String PENDING_BACKLOG = "sms.pending.backlog";
+    public static final String SMPP_WINDOW_OCCUPANCY = "sms.smpp.window.occupancy";
+
+    private static final String TAG_TENANT = "tenant";
+    private static final String TAG_GATEWAY = "gateway";
+    private static final String UNKNOWN = "unknown";
+
+    private final MetricsRegistry metricsRegistry;
+    private final StageLatencyRecorder stageLatencyRecorder;
+
+    @Autowired
+    public SmsPipelineMetrics(final MetricsRegistry metricsRegistry, final StageLatencyRecorder stageLatencyRecorder) {
+        this.metricsRegistry = metricsRegistry;
+        this.stageLatencyRecorder = stageLatencyRecorder;
+    }
+
+    /**
+     * @return the underlying registry, used to register gauges
+     **/
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * count a message added to the queue through "/sms/queue"
+     **/
+    public void messageQueued(final String mifosTenantIdentifier) {
+        this.metricsRegistry.counter(MESSAGES_QUEUED, TAG_TENANT, tagValue(mifosTenantIdentifier)).increment();
+    }
+
+    /**
+     * count a message of "/sms/queue" rejected because of an invalid mobile number
+     **/
+    public void messageRejected(final String mifosTenantIdentifier) {
+        this.metricsRegistry.counter(MESSAGES_REJECTED, TAG_TENANT, tagValue(mifosTenantIdentifier)).increment();
+    }
+
+    /**
+     * count a message accepted by a gateway
+     **/
+    public void messageSubmitted(final String mifosTenantIdentifier, final String gateway) {
+        this.metricsRegistry.counter(MESSAGES_SUBMITTED, TAG_TENANT, tagValue(mifosTenantIdentifier), TAG_GATEWAY, gateway)
+                .increment();
+    }
+
+    /**
+     * count a message rejected by a gateway or reported as failed
+     **/
+    public void messageFailed(final String mifosTenantIdentifier, final String gateway) {
+        this.metricsRegistry.counter(MESSAGES_FAILED, TAG_TENANT, tagValue(mifosTenantIdentifier), TAG_GATEWAY, gateway)
+                .increment();
+    }
+
+    /**
+     * count a message reported as delivered
+     **/
+    public void messageDelivered(final String mifosTenantIdentifier, final String gateway) {
+        this.metricsRegistry.counter(MESSAGES_DELIVERED, TAG_TENANT, tagValue(mifosTenantIdentifier), TAG_GATEWAY, gateway)
+                .increment();
+    }
+
+    /**
+     * count a delivery report outcome, only final states (delivered/failed) are counted
+     **/
+    public void deliveryReported(final String mifosTenantIdentifier, final String gateway, final SmsMessageStatusType status) {
+        if (status == SmsMessageStatusType.DELIVERED) {
+            messageDelivered(mifosTenantIdentifier, gateway);
+        }
+
+        else if (status == SmsMessageStatusType.FAILED) {
+            messageFailed(mifosTenantIdentifier, gateway);
+        }
+    }
+
+    /**
+     * record the time spent fetching messages from the DB
+     *
+     * @param startNanos {@link System#nanoTime()} value taken before the fetch
+     **/
+    public void recordDatabaseFetch(final long startNanos) {
+        this.metricsRegistry.timer(DB_FETCH).recordSince(startNanos);
+    }
+
+    /**
+     * record the time a message waited in the queue before the send job picked it up
+     *
+     * @param queuedOnDateTime the date and time the message was added to the queue, ignored if null
+     * @param claimedOnDateTime the date and time the send job picked up the message
+     **/
+    public void recordPickup(final String mifosTenantIdentifier, final Date queuedOnDateTime, final Date claimedOnDateTime) {
+        this.stageLatencyRecorder.record(LatencyStage.QUEUE_TO_PICKUP, mifosTenantIdentifier, epochMillis(queuedOnDateTime),
+                claimedOnDateTime.getTime());
+    }
+
+    /**
+     * record the time between the pickup of a message by the send job and its acceptance by the gateway
+     *
+     * @param pickupNanos {@link System#nanoTime()} value taken when the message was picked up
+     **/
+    public void recordPickupToSubmit(final String mifosTenantIdentifier, final long pickupNanos) {
+        this.stageLatencyRecorder.record(LatencyStage.PICKUP_TO_SUBMIT, mifosTenantIdentifier, System.nanoTime() - pickupNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * record the time spent submitting a message to a gateway
+     *
+     * @param startNanos {@link System#nanoTime()} value taken before the submit
+     **/
+    public void recordGatewaySubmit(final String gateway, final long startNanos) {
+        this.metricsRegistry.timer(GATEWAY_SUBMIT, TAG_GATEWAY, gateway).recordSince(startNanos);
+    }
+
+    /**
+     * record the time between the submission of a message and the arrival of its delivery report, and the end to end
+     * latency of the message
+     *
+     * @param submitDate submit date of the message, ignored if null
+     * @param queuedOnDate the date the message was added to the queue, ignored if null
+     **/
+    public void recordDeliveryReport(final String mifosTenantIdentifier, final String gateway, final Date submitDate,
+            final Date queuedOnDate) {
+        final long now = System.currentTimeMillis();
+
+        if (submitDate != null) {
+            this.metricsRegistry.timer(DELIVERY_REPORT_LAG, TAG_GATEWAY, gateway).record(now - submitDate.getTime(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        this.stageLatencyRecorder.record(LatencyStage.SUBMIT_TO_DELIVERY_REPORT, mifosTenantIdentifier, epochMillis(submitDate), now);
+        this.stageLatencyRecorder.record(LatencyStage.QUEUE_TO_DELIVERY_REPORT, mifosTenantIdentifier, epochMillis(queuedOnDate), now);
+    }
+
+    private static Long epochMillis(final Date date) {
+        return (date != null) ? date.getTime() : null;
+    }
+
+    private static String tagValue(final String value) {
+        return (value != null) ? value : UNKNOWN;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records pipeline stage latencies per tenant into HdrHistogram recorders. Writers never block; the stats endpoint
+ * drains the recorders into cumulative histograms (since startup) and reports their percentiles.
+ **/
+@Component
+public class StageLatencyRecorder {
+    private static final int NUMBER_OF_SIGNIFICANT_VALUE_DIGITS = 3;
+    private static final String UNKNOWN_TENANT = "unknown";
+
+    private final ConcurrentMap<String, StageHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * record the latency of a stage for a tenant, negative values (clock skew between hosts) are recorded as 0
+     *
+     * @param stage the pipeline stage
+     * @param mifosTenantIdentifier the tenant of the message
+     * @param latency the latency
+     * @param unit time unit of the latency
+     **/
+    public void record(final LatencyStage stage, final String mifosTenantIdentifier, final long latency, final TimeUnit unit) {
+        final String tenant = (mifosTenantIdentifier != null) ? mifosTenantIdentifier : UNKNOWN_TENANT;
+        final String key = stage.getCode() + "|" + tenant;
+        StageHistogram histogram = this.histograms.get(key);
+
+        if (histogram == null) {
+            final StageHistogram newHistogram = new StageHistogram(stage, tenant);
+            histogram = this.histograms.putIfAbsent(key, newHistogram);
+
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+
+        histogram.recorder.recordValue(Math.max(0L, unit.toMicros(latency)));
+    }
+
+    /**
+     * record the time elapsed between two epoch millisecond timestamps, ignored if the start is unknown
+     **/
+    public void record(final LatencyStage stage, final String mifosTenantIdentifier, final Long startMillis, final long endMillis) {
+        if (startMillis != null) {
+            record(stage, mifosTenantIdentifier, endMillis - startMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return p50/p99/p999/max per stage, for all tenants and for each tenant
+     **/
+    public Map<String, Object> snapshot() {
+        final Map<String, Object> snapshot = new LinkedHashMap<>();
+
+        for (LatencyStage stage : LatencyStage.values()) {
+            final Histogram all = new Histogram(NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+            final Map<String, Object> tenants = new TreeMap<>();
+
+            for (StageHistogram histogram : this.histograms.values()) {
+                if (histogram.stage == stage) {
+                    final Histogram cumulative = histogram.drain();
+                    all.add(cumulative);
+                    tenants.put(histogram.tenant, stats(cumulative));
+                }
+            }
+
+            final Map<String, Object> stageStats = new LinkedHashMap<>();
+            stageStats.put("all", stats(all));
+            stageStats.put("tenants", tenants);
+            snapshot.put(stage.getCode(), stageStats);
+        }
+
+        return snapshot;
+    }
+
+    private static Map<String, Object> stats(final Histogram histogram) {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", histogram.getTotalCount());
+        stats.put("p50Millis", millis(histogram.getValueAtPercentile(50.0)));
+        stats.put("p99Millis", millis(histogram.getValueAtPercentile(99.0)));
+        stats.put("p999Millis", millis(histogram.getValueAtPercentile(99.9)));
+        stats.put("maxMillis", millis(histogram.getMaxValue()));
+
+        return stats;
+    }
+
+    private static double millis(final long micros) {
+        return micros / 1000.0;
+    }
+
+    private static class StageHistogram {
+        private final LatencyStage stage;
+        private final String tenant;
+        private final Recorder recorder = new Recorder(NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+        private final Histogram cumulative = new Histogram(NUMBER_OF_SIGNIFICANT_VALUE_DIGITS);
+        private Histogram interval;
+
+        private StageHistogram(final LatencyStage stage, final String tenant) {
+            this.stage = stage;
+            this.tenant = tenant;
+        }
+
+        /**
+         * move the values recorded since the last call into the cumulative histogram, a recorder only supports a
+         * single reader at a time
+         **/
+        private synchronized Histogram drain() {
+            this.interval = this.recorder.getIntervalHistogram(this.interval);
+            this.cumulative.add(this.interval);
+
+            return this.cumulative.copy();
+        }
+    }
+}
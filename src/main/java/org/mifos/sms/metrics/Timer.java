@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free timer keeping the number of recorded events, their total duration and the maximum duration
+ **/
+public class Timer {
+    private final String name;
+    private final Map<String, String> tags;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    Timer(final String name, final Map<String, String> tags) {
+        this.name = name;
+        this.tags = tags;
+    }
+
+    /**
+     * record the duration of an event
+     *
+     * @param amount duration of the event
+     * @param unit time unit of the amount
+     **/
+    public void record(final long amount, final TimeUnit unit) {
+        final long nanos = Math.max(0L, unit.toNanos(amount));
+
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * record the time elapsed since the given {@link System#nanoTime()} value
+     **/
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of recorded events
+     **/
+    public long count() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the total duration of the recorded events in the given time unit
+     **/
+    public double totalTime(final TimeUnit unit) {
+        return this.totalNanos.sum() / (double) unit.toNanos(1);
+    }
+
+    /**
+     * @return the maximum duration of the recorded events in the given time unit
+     **/
+    public double max(final TimeUnit unit) {
+        return this.maxNanos.get() / (double) unit.toNanos(1);
+    }
+
+    /**
+     * @return the timer name
+     **/
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the timer tags
+     **/
+    public Map<String, String> getTags() {
+        return tags;
+    }
+}
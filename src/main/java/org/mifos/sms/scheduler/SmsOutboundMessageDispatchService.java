@@ -0,0 +1,51 @@
+package org.mifos.sms.scheduler;
+
+import java.util.List;
+
+import org.mifos.sms.data.SmsOutboundMessageSubmitResult;
+import org.mifos.sms.domain.SmsOutboundMessage;
+
+/** 
+ * Short transactions around the submission of outbound SMS messages: the messages are claimed before they are sent and 
+ * the results are recorded after, the send itself runs outside any transaction 
+ **/
+public interface SmsOutboundMessageDispatchService {
+	
+	/** 
+	 * claim pending messages, marking them SUBMITTING so that no other send job run picks them up 
+	 * 
+	 * @param maximumNumberOfMessages the maximum number of messages to claim
+	 * @return the claimed messages, ordered by id
+	 **/
+	List<SmsOutboundMessage> claimPendingMessages(int maximumNumberOfMessages);
+	
+	/** 
+	 * record the results of the submission of claimed messages 
+	 * 
+	 * @param submitResults the submit results
+	 **/
+	void recordSubmitResults(List<SmsOutboundMessageSubmitResult> submitResults);
+	
+	/** 
+	 * fail the messages claimed long ago that never got a submit result 
+	 * 
+	 * @return the number of failed messages
+	 **/
+	int failInterruptedSubmits();
+	
+	/** 
+	 * give claimed messages that were not submitted back, marking them PENDING again 
+	 * 
+	 * @param ids the ids of the messages
+	 * @return the number of released messages
+	 **/
+	int releaseClaimedMessages(List<Long> ids);
+	
+	/** 
+	 * fail the messages of a claim that are still SUBMITTING, their submit did not end before the application stopped 
+	 * 
+	 * @param claimedBy identifies the claim
+	 * @return the number of failed messages
+	 **/
+	int failClaimedMessages(String claimedBy);
+}
@@ -0,0 +1,122 @@
+package org.mifos.sms.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.mifos.sms.data.SmsOutboundMessageSubmitResult;
+import org.mifos.sms.domain.SmsMessageStatusType;
+import org.mifos.sms.domain.SmsOutboundMessage;
+import org.mifos.sms.domain.SmsOutboundMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+public class SmsOutboundMessageDispatchServiceImpl implements SmsOutboundMessageDispatchService {
+	private static final Logger logger = LoggerFactory.getLogger(SmsOutboundMessageDispatchServiceImpl.class);
+	
+	// a message still SUBMITTING 30 minutes after it was claimed will not get a submit result anymore
+	private static final long INTERRUPTED_SUBMIT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+	
+	private final SmsOutboundMessageRepository smsOutboundMessageRepository;
+	
+	@Autowired
+	public SmsOutboundMessageDispatchServiceImpl(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
+		this.smsOutboundMessageRepository = smsOutboundMessageRepository;
+	}
+
+	@Transactional
+	@Override
+	public List<SmsOutboundMessage> claimPendingMessages(final int maximumNumberOfMessages) {
+		final List<Long> ids = this.smsOutboundMessageRepository.findIdsByDeliveryStatus(
+				SmsMessageStatusType.PENDING.getValue(), new PageRequest(0, maximumNumberOfMessages));
+		
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		// messages claimed by another run between the select and the update are skipped by the update
+		final String claimedBy = UUID.randomUUID().toString();
+		this.smsOutboundMessageRepository.claim(ids, SmsMessageStatusType.PENDING.getValue(), 
+				SmsMessageStatusType.SUBMITTING.getValue(), claimedBy, new Date());
+		
+		return this.smsOutboundMessageRepository.findByClaimedByAndDeliveryStatusOrderByIdAsc(claimedBy, 
+				SmsMessageStatusType.SUBMITTING.getValue());
+	}
+
+	@Transactional
+	@Override
+	public void recordSubmitResults(final List<SmsOutboundMessageSubmitResult> submitResults) {
+		final Map<SmsMessageStatusType, List<Long>> ids = new EnumMap<>(SmsMessageStatusType.class);
+		
+		for (final SmsOutboundMessageSubmitResult submitResult : submitResults) {
+			this.smsOutboundMessageRepository.updateSubmitResult(submitResult.getId(), submitResult.getGateway(), 
+					submitResult.getExternalId(), submitResult.getSubmittedOnDateTime(), submitResult.getSubmittedOnDateTime(), 
+					submitResult.getAcknowledgedOnDateTime());
+			
+			List<Long> statusIds = ids.get(submitResult.getDeliveryStatus());
+			
+			if (statusIds == null) {
+				statusIds = new ArrayList<>();
+				ids.put(submitResult.getDeliveryStatus(), statusIds);
+			}
+			
+			statusIds.add(submitResult.getId());
+		}
+		
+		// a message whose delivery report arrived in the meantime is no longer SUBMITTING and keeps its status
+		for (final Map.Entry<SmsMessageStatusType, List<Long>> entry : ids.entrySet()) {
+			this.smsOutboundMessageRepository.updateDeliveryStatus(entry.getValue(), SmsMessageStatusType.SUBMITTING.getValue(), 
+					entry.getKey().getValue());
+		}
+	}
+
+	@Transactional
+	@Override
+	public int failInterruptedSubmits() {
+		final int numberOfMessages = this.smsOutboundMessageRepository.failInterruptedSubmits(
+				SmsMessageStatusType.SUBMITTING.getValue(), SmsMessageStatusType.FAILED.getValue(), 
+				"Interrupted while submitting to the SMS gateway, the message may have been sent", 
+				new Date(System.currentTimeMillis() - INTERRUPTED_SUBMIT_MILLIS));
+		
+		if (numberOfMessages > 0) {
+			logger.warn(numberOfMessages + " messages were interrupted while submitting to the SMS gateway and marked as failed");
+		}
+		
+		return numberOfMessages;
+	}
+
+	@Transactional
+	@Override
+	public int releaseClaimedMessages(final List<Long> ids) {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		
+		return this.smsOutboundMessageRepository.release(ids, SmsMessageStatusType.SUBMITTING.getValue(), 
+				SmsMessageStatusType.PENDING.getValue());
+	}
+
+	@Transactional
+	@Override
+	public int failClaimedMessages(final String claimedBy) {
+		final int numberOfMessages = this.smsOutboundMessageRepository.failClaim(claimedBy, 
+				SmsMessageStatusType.SUBMITTING.getValue(), SmsMessageStatusType.FAILED.getValue(), 
+				"Interrupted by a shutdown while submitting to the SMS gateway, the message may have been sent");
+		
+		if (numberOfMessages > 0) {
+			logger.warn(numberOfMessages + " messages were still submitting to the SMS gateway at shutdown and marked as failed");
+		}
+		
+		return numberOfMessages;
+	}
+}
@@ -12,5 +12,35 @@ public interface SmsOutboundMessageScheduledJobService {
 	 **/
 	public void sendMessages();
 
+	/** 
+	 * polls the SMS gateway for the delivery status of messages whose delivery report is overdue 
+	 **/
 	public void updateDeliveryStatus();
+	
+	/** 
+	 * deletes the old tickets of the status sequence of each shard 
+	 **/
+	public void deleteOldStatusSequenceTickets();
+	
+	/** 
+	 * stop claiming messages, a send job run in progress stops submitting and gives the messages it has not submitted 
+	 * back 
+	 **/
+	public void stop();
+	
+	/** 
+	 * wait for the send job run in progress to record the results of the messages it submitted 
+	 * 
+	 * @param timeoutMillis the maximum time to wait
+	 * @return true if no run is in progress anymore
+	 **/
+	public boolean awaitTermination(long timeoutMillis) throws InterruptedException;
+	
+	/** 
+	 * mark the messages of the send job run in progress whose submit has not ended FAILED, they are not given back 
+	 * because they may have reached the gateway; called once {@link #awaitTermination(long)} timed out 
+	 * 
+	 * @return the number of failed messages
+	 **/
+	public int failInterruptedClaim();
 }
@@ -1,24 +1,42 @@
 package org.mifos.sms.scheduler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
+import org.mifos.sms.data.SmsOutboundMessageSubmitResult;
 import org.mifos.sms.domain.SmsMessageStatusType;
 import org.mifos.sms.domain.SmsOutboundMessage;
 import org.mifos.sms.domain.SmsOutboundMessageRepository;
+import org.mifos.sms.gateway.SmsGateway;
+import org.mifos.sms.gateway.SmsGatewayExecutor;
+import org.mifos.sms.gateway.SmsGatewayRouteTable;
+import org.mifos.sms.gateway.SmsGatewayRouter;
 import org.mifos.sms.gateway.infobip.InfoBipMessageProvider;
 import org.mifos.sms.gateway.infobip.InfoBipStatus;
 import org.mifos.sms.gateway.infobip.SmsGatewayHelper;
-import org.mifos.sms.gateway.infobip.SmsGatewayImpl;
 import org.mifos.sms.gateway.infobip.SmsGatewayMessage;
+import org.mifos.sms.metrics.SmsPipelineMetrics;
+import org.mifos.sms.service.DataSourceShardContext;
+import org.mifos.sms.service.DeliveryReceiptCorrelationCache;
+import org.mifos.sms.service.DeliveryStatusWebhookDispatcher;
+import org.mifos.sms.service.SmsGatewayDataSource;
+import org.mifos.sms.service.SmsMessageBodyStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
@@ -27,77 +45,337 @@ import infobip.api.model.sms.mt.logs.SMSLogsResponse;
 
 @Service
 public class SmsOutboundMessageScheduledJobServiceImpl implements SmsOutboundMessageScheduledJobService {
+    private static final Logger logger = LoggerFactory.getLogger(SmsOutboundMessageScheduledJobServiceImpl.class);
 
     private final SmsOutboundMessageRepository smsOutboundMessageRepository;
-    private final SmsGatewayImpl smsGatewayImpl;
     private final SmsGatewayHelper smsGatewayHelper;
     private final InfoBipMessageProvider infoBipMessageProvider;
+    private final SmsPipelineMetrics smsPipelineMetrics;
+    private final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher;
+    private final DeliveryReceiptCorrelationCache deliveryReceiptCorrelationCache;
+    private final SmsOutboundMessageDispatchService smsOutboundMessageDispatchService;
+    private final SmsGatewayDataSource smsGatewayDataSource;
+    private final SmsGatewayExecutor smsGatewayExecutor;
+    private final SmsGatewayRouter smsGatewayRouter;
+    private final SmsGatewayRouteTable smsGatewayRouteTable;
+    private final SmsMessageBodyStore smsMessageBodyStore;
+
+    // number of messages claimed at once by the send job
+    private static final int CLAIM_BATCH_SIZE = 100;
+    // number of submit results recorded per transaction
+    private static final int RECORD_BATCH_SIZE = 25;
+
+    // a delivery report callback not received within 10 minutes of the submit is considered overdue
+    private static final long DELIVERY_REPORT_OVERDUE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // InfoBip keeps the logs of sent messages for 48 hours, older messages cannot be reconciled
+    private static final long DELIVERY_REPORT_LOG_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(48);
+    // the tickets deleted per statement, see SmsOutboundMessageRepository#deleteOldStatusSequenceTickets
+    private static final int STATUS_SEQUENCE_TICKET_CHUNK_SIZE = 10000;
+
+    // id of the last message polled by updateDeliveryStatus() in each shard, the default shard is stored under ""
+    private final Map<String, Long> deliveryReportCursors = new ConcurrentHashMap<>();
+    // held while a send job run is in progress
+    private final ReentrantLock sendLock = new ReentrantLock();
+    // set when the application stops, no message is claimed afterwards
+    private volatile boolean stopped;
+    // the chunk of messages being sent, null between chunks
+    private volatile Claim currentClaim;
 
     @Autowired
     public SmsOutboundMessageScheduledJobServiceImpl(final SmsOutboundMessageRepository smsOutboundMessageRepository,
-            final SmsGatewayHelper smsGatewayHelper, final SmsGatewayImpl smsGatewayImpl,
-            final InfoBipMessageProvider infoBipMessageProvider) {
+            final SmsGatewayHelper smsGatewayHelper,
+            final InfoBipMessageProvider infoBipMessageProvider, final SmsPipelineMetrics smsPipelineMetrics,
+            final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher,
+            final DeliveryReceiptCorrelationCache deliveryReceiptCorrelationCache,
+            final SmsOutboundMessageDispatchService smsOutboundMessageDispatchService,
+            final SmsGatewayDataSource smsGatewayDataSource, final SmsGatewayExecutor smsGatewayExecutor,
+            final SmsGatewayRouter smsGatewayRouter, final SmsGatewayRouteTable smsGatewayRouteTable,
+            final SmsMessageBodyStore smsMessageBodyStore) {
         this.smsOutboundMessageRepository = smsOutboundMessageRepository;
         this.smsGatewayHelper = smsGatewayHelper;
-        this.smsGatewayImpl = smsGatewayImpl;
         this.infoBipMessageProvider = infoBipMessageProvider;
+        this.smsPipelineMetrics = smsPipelineMetrics;
+        this.deliveryStatusWebhookDispatcher = deliveryStatusWebhookDispatcher;
+        this.deliveryReceiptCorrelationCache = deliveryReceiptCorrelationCache;
+        this.smsOutboundMessageDispatchService = smsOutboundMessageDispatchService;
+        this.smsGatewayDataSource = smsGatewayDataSource;
+        this.smsGatewayExecutor = smsGatewayExecutor;
+        this.smsGatewayRouter = smsGatewayRouter;
+        this.smsGatewayRouteTable = smsGatewayRouteTable;
+        this.smsMessageBodyStore = smsMessageBodyStore;
+
+        // the backlog is only counted when the metrics are read, summed over all shards
+        this.smsPipelineMetrics.getMetricsRegistry().gauge(SmsPipelineMetrics.PENDING_BACKLOG, () -> {
+            long pendingBacklog = 0;
+
+            for (final String shard : smsGatewayDataSource.getShards()) {
+                pendingBacklog += DataSourceShardContext.call(shard,
+                        () -> smsOutboundMessageRepository.countByDeliveryStatus(SmsMessageStatusType.PENDING.getValue()));
+            }
+
+            return pendingBacklog;
+        });
         // this.smsGatewayHelper.connectAndBindSession();
     }
 
+    /**
+     * Send pending messages in a staged pipeline: each chunk of messages is claimed (marked SUBMITTING) in a short
+     * transaction, sent outside any transaction and its results are recorded in small batched transactions. A failure
+     * part way through only leaves the messages of the current chunk SUBMITTING, they are never sent twice.
+     *
+     * The shards are served one after the other, sharing the maximum number of messages sent per run.
+     **/
     @Override
-    @Transactional
     @Scheduled(fixedDelay = 60000)
     public void sendMessages() {
         // check if the scheduler is enabled
-        if (this.smsGatewayHelper.smsGatewayConfiguration.getEnableOutboundMessageScheduler()) {
+        if (this.smsGatewayHelper.smsGatewayConfiguration.getEnableOutboundMessageScheduler() && !this.stopped) {
+            int remainingNumberOfMessages = getMaximumNumberOfMessagesToBeSent();
+
+            this.sendLock.lock();
+
+            try {
+                for (final String shard : this.smsGatewayDataSource.getShards()) {
+                    final int maximumNumberOfMessages = remainingNumberOfMessages;
+
+                    if (this.stopped) {
+                        break;
+                    }
+
+                    remainingNumberOfMessages -= DataSourceShardContext.call(shard, () -> sendMessages(maximumNumberOfMessages));
+                }
+            }
+
+            finally {
+                this.sendLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.stopped = true;
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeoutMillis) throws InterruptedException {
+        if (!this.sendLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+
+        this.sendLock.unlock();
+
+        return true;
+    }
+
+    @Override
+    public int failInterruptedClaim() {
+        final Claim claim = this.currentClaim;
+
+        if (claim == null) {
+            return 0;
+        }
 
+        return DataSourceShardContext.call(claim.shard,
+                () -> this.smsOutboundMessageDispatchService.failClaimedMessages(claim.claimedBy));
+    }
+
+    /**
+     * send the pending messages of the shard of the current thread
+     *
+     * @param maximumNumberOfMessages the maximum number of messages to be sent
+     * @return the number of messages sent
+     **/
+    private int sendMessages(final int maximumNumberOfMessages) {
+        this.smsOutboundMessageDispatchService.failInterruptedSubmits();
+
+        int remainingNumberOfMessages = maximumNumberOfMessages;
+
+        while (remainingNumberOfMessages > 0 && !this.stopped) {
             // if(smsGatewayHelper.isConnected) {
-            final Pageable pageable = new PageRequest(0, getMaximumNumberOfMessagesToBeSent());
-            final List<SmsOutboundMessage> smsOutboundMessages = this.smsOutboundMessageRepository
-                    .findByDeliveryStatus(SmsMessageStatusType.PENDING.getValue(), pageable);
+            final long fetchStartNanos = System.nanoTime();
+            final List<SmsOutboundMessage> smsOutboundMessages = this.smsOutboundMessageDispatchService
+                    .claimPendingMessages(Math.min(CLAIM_BATCH_SIZE, remainingNumberOfMessages));
+            this.smsPipelineMetrics.recordDatabaseFetch(fetchStartNanos);
 
             // only proceed if there are pending messages
-            if (!CollectionUtils.isEmpty(smsOutboundMessages)) {
+            if (CollectionUtils.isEmpty(smsOutboundMessages)) {
+                break;
+            }
 
-                for (final SmsOutboundMessage smsOutboundMessage : smsOutboundMessages) {
-                    SmsGatewayMessage smsGatewayMessage = new SmsGatewayMessage(smsOutboundMessage.getId(),
-                            smsOutboundMessage.getExternalId(), smsOutboundMessage.getSourceAddress(), smsOutboundMessage.getMobileNumber(),
-                            smsOutboundMessage.getMessage());
+            remainingNumberOfMessages -= smsOutboundMessages.size();
+            sendClaimedMessages(smsOutboundMessages);
+        }
+        /*
+         * }
+         *
+         * else { // reconnect smsGatewayHelper.reconnectAndBindSession(); }
+         */
 
-                    smsGatewayMessage = this.infoBipMessageProvider.sendMessage(smsGatewayMessage);
-                    // send message to SMS message gateway
-                    // smsGatewayMessage =
-                    // smsGatewayImpl.sendMessage(smsGatewayMessage);
+        return maximumNumberOfMessages - remainingNumberOfMessages;
+    }
+
+    /**
+     * send claimed messages to the SMS gateway, outside any transaction, and record the results every
+     * {@link #RECORD_BATCH_SIZE} messages. Each message is submitted to the gateway chosen by the router, concurrently on
+     * the gateway executor up to the maximum number of submits in flight per gateway, and the results are processed in
+     * the order the messages were claimed.
+     *
+     * Once the job is stopped no more message is submitted, the messages not submitted yet are given back.
+     **/
+    private void sendClaimedMessages(final List<SmsOutboundMessage> smsOutboundMessages) {
+        final long pickupNanos = System.nanoTime();
+        final List<CompletableFuture<SubmitOutcome>> submits = new ArrayList<>(smsOutboundMessages.size());
+        final List<SmsOutboundMessageSubmitResult> submitResults = new ArrayList<>(RECORD_BATCH_SIZE);
+        final Map<Long, String> messageBodies = getMessageBodies(smsOutboundMessages);
 
-                    // update the "submittedOnDate" property of the SMS message
-                    // in the DB
-                    smsOutboundMessage.setSubmittedOnDate(new Date());
+        this.currentClaim = new Claim(DataSourceShardContext.getShard(), smsOutboundMessages.get(0).getClaimedBy());
 
-                    // check if the returned SmsGatewayMessage object has an
-                    // external ID
-                    if (!StringUtils.isEmpty(smsGatewayMessage.getExternalId())) {
+        try {
+            for (final SmsOutboundMessage smsOutboundMessage : smsOutboundMessages) {
+                if (this.stopped) {
+                    releaseUnsubmittedMessages(smsOutboundMessages.subList(submits.size(), smsOutboundMessages.size()));
+                    break;
+                }
 
-                        // update the external ID of the SMS message in the DB
-                        smsOutboundMessage.setExternalId(smsGatewayMessage.getExternalId());
+                final String message = (smsOutboundMessage.getMessageBodyId() != null)
+                        ? messageBodies.get(smsOutboundMessage.getMessageBodyId()) : smsOutboundMessage.getMessage();
+                final SmsGatewayMessage smsGatewayMessage = new SmsGatewayMessage(smsOutboundMessage.getId(),
+                        smsOutboundMessage.getExternalId(), smsOutboundMessage.getSourceAddress(), smsOutboundMessage.getMobileNumber(),
+                        message);
+                smsGatewayMessage.setMifosTenantIdentifier(smsOutboundMessage.getMifosTenantIdentifier());
 
-                        // update the status of the SMS message in the DB
-                        smsOutboundMessage.setDeliveryStatus(SmsMessageStatusType.fromInt(smsGatewayMessage.getDeliveryStatus()));
-                    }
+                this.smsPipelineMetrics.recordPickup(smsOutboundMessage.getMifosTenantIdentifier(),
+                        smsOutboundMessage.getQueuedOnDateTime(), smsOutboundMessage.getClaimedOnDateTime());
 
-                    else {
-                        // update the status of the SMS message in the DB
-                        smsOutboundMessage.setDeliveryStatus(SmsMessageStatusType.FAILED);
-                    }
+                final SmsGateway smsGateway = this.smsGatewayRouter.route(smsOutboundMessage.getMifosTenantIdentifier(),
+                        smsOutboundMessage.getMobileNumber());
 
-                    this.smsOutboundMessageRepository.save(smsOutboundMessage);
+                // waits while the maximum number of submits to the gateway are in flight
+                submits.add(this.smsGatewayExecutor.submit(smsGateway.getName(),
+                        () -> submit(smsGateway, smsOutboundMessage, smsGatewayMessage)));
+            }
+
+            for (int index = 0; index < submits.size(); index++) {
+                final SmsOutboundMessage smsOutboundMessage = smsOutboundMessages.get(index);
+                final SubmitOutcome submitOutcome = submits.get(index).join();
+                final SmsGatewayMessage smsGatewayMessage = submitOutcome.smsGatewayMessage;
+                final Date submittedOnDateTime = submitOutcome.submittedOnDateTime;
+                final String gateway = submitOutcome.gateway;
+
+                // check if the returned SmsGatewayMessage object has an
+                // external ID
+                if (smsGatewayMessage != null && !StringUtils.isEmpty(smsGatewayMessage.getExternalId())) {
+
+                    final SmsMessageStatusType deliveryStatus = SmsMessageStatusType.fromInt(smsGatewayMessage.getDeliveryStatus());
+                    final Date acknowledgedOnDateTime = submitOutcome.acknowledgedOnDateTime;
+
+                    submitResults.add(SmsOutboundMessageSubmitResult.accepted(smsOutboundMessage.getId(), gateway,
+                            smsGatewayMessage.getExternalId(), deliveryStatus, submittedOnDateTime, acknowledgedOnDateTime));
+
+                    this.smsPipelineMetrics.messageSubmitted(smsOutboundMessage.getMifosTenantIdentifier(), gateway);
+                    // e.g. the simulator reports the delivery with the submit
+                    this.smsGatewayRouteTable.recordDelivery(smsOutboundMessage.getMifosTenantIdentifier(),
+                            smsOutboundMessage.getMobileNumber(), gateway, deliveryStatus);
+                    this.smsPipelineMetrics.recordPickupToSubmit(smsOutboundMessage.getMifosTenantIdentifier(), pickupNanos);
+                }
+
+                else {
+                    submitResults.add(SmsOutboundMessageSubmitResult.failed(smsOutboundMessage.getId(), gateway,
+                            submittedOnDateTime));
+
+                    this.smsPipelineMetrics.messageFailed(smsOutboundMessage.getMifosTenantIdentifier(), gateway);
                 }
+
+                if (submitResults.size() >= RECORD_BATCH_SIZE) {
+                    this.smsOutboundMessageDispatchService.recordSubmitResults(submitResults);
+                    submitResults.clear();
+                }
+            }
+        }
+
+        finally {
+            // record what was sent even if a later message could not be processed
+            if (!submitResults.isEmpty()) {
+                this.smsOutboundMessageDispatchService.recordSubmitResults(submitResults);
+            }
+
+            this.currentClaim = null;
+        }
+    }
+
+    /**
+     * give the claimed messages that were not submitted back, another node claims them right away
+     **/
+    private void releaseUnsubmittedMessages(final List<SmsOutboundMessage> smsOutboundMessages) {
+        final List<Long> ids = new ArrayList<>(smsOutboundMessages.size());
+
+        for (final SmsOutboundMessage smsOutboundMessage : smsOutboundMessages) {
+            ids.add(smsOutboundMessage.getId());
+        }
+
+        final int numberOfMessages = this.smsOutboundMessageDispatchService.releaseClaimedMessages(ids);
+        logger.info("Stopped sending, " + numberOfMessages + " claimed messages were given back");
+    }
+
+    /**
+     * @return the texts of the messages stored in the smsMessageBody table, by body id
+     **/
+    private Map<Long, String> getMessageBodies(final List<SmsOutboundMessage> smsOutboundMessages) {
+        final List<Long> messageBodyIds = new ArrayList<>(smsOutboundMessages.size());
+
+        for (final SmsOutboundMessage smsOutboundMessage : smsOutboundMessages) {
+            if (smsOutboundMessage.getMessageBodyId() != null) {
+                messageBodyIds.add(smsOutboundMessage.getMessageBodyId());
             }
-            /*
-             * }
-             *
-             * else { // reconnect smsGatewayHelper.reconnectAndBindSession(); }
-             */
         }
+
+        return this.smsMessageBodyStore.getMessages(messageBodyIds);
+    }
+
+    /**
+     * submit a message to a gateway, runs on the gateway executor. An accepted message is added to the delivery receipt
+     * correlation cache right away, its receipt may arrive before the result is recorded.
+     *
+     * @param smsOutboundMessage the claimed message, to find the route it took and to correlate its delivery receipt
+     * @return the outcome, without a message if it could not be submitted
+     **/
+    private SubmitOutcome submit(final SmsGateway smsGateway, final SmsOutboundMessage smsOutboundMessage,
+            final SmsGatewayMessage smsGatewayMessage) {
+        final String mifosTenantIdentifier = smsOutboundMessage.getMifosTenantIdentifier();
+        final Date submittedOnDateTime = new Date();
+        final long submitStartNanos = System.nanoTime();
+        SmsGatewayMessage sentSmsGatewayMessage;
+
+        try {
+            sentSmsGatewayMessage = smsGateway.sendMessage(smsGatewayMessage);
+        }
+
+        catch (Exception e) {
+            // the message may or may not have reached the gateway, it is failed rather than sent again
+            logger.error("Failed to submit message " + smsGatewayMessage.getId() + " to the " + smsGateway.getName() + " gateway: "
+                    + e.getMessage());
+            sentSmsGatewayMessage = null;
+        }
+
+        final Date acknowledgedOnDateTime = new Date();
+        final boolean accepted = sentSmsGatewayMessage != null && !StringUtils.isEmpty(sentSmsGatewayMessage.getExternalId());
+
+        if (accepted) {
+            // the delivery report of the message can be correlated without a DB read
+            this.deliveryReceiptCorrelationCache.put(sentSmsGatewayMessage.getExternalId(),
+                    new SmsOutboundMessageStatusData(smsOutboundMessage.getId(), smsOutboundMessage.getInternalId(),
+                            mifosTenantIdentifier, smsOutboundMessage.getAddedOnDate().toDate(), null,
+                            smsOutboundMessage.getQueuedOnDateTime(), smsOutboundMessage.getClaimedOnDateTime(),
+                            submittedOnDateTime, acknowledgedOnDateTime, null,
+                            SmsMessageStatusType.fromInt(sentSmsGatewayMessage.getDeliveryStatus()).getValue()));
+        }
+
+        this.smsPipelineMetrics.recordGatewaySubmit(smsGateway.getName(), submitStartNanos);
+        this.smsGatewayRouteTable.recordSubmit(mifosTenantIdentifier, smsGatewayMessage.getMobileNumber(),
+                smsGateway.getName(), submitStartNanos, accepted);
+
+        return new SubmitOutcome(smsGateway.getName(), sentSmsGatewayMessage, submittedOnDateTime, acknowledgedOnDateTime);
     }
 
     /**
@@ -109,32 +387,147 @@ public class SmsOutboundMessageScheduledJobServiceImpl implements SmsOutboundMes
         return 5000;
     }
 
+    /**
+     * Delete the tickets the status sequence triggers added since the last run, the ticket table only gets inserts so that
+     * taking a sequence does not lock it until commit. Deletes in chunks, until the table only holds the highest ticket.
+     **/
     @Override
-    @Transactional
-    @Scheduled(fixedDelay = 1800000)
+    @Scheduled(fixedDelay = 60000)
+    public void deleteOldStatusSequenceTickets() {
+        for (final String shard : this.smsGatewayDataSource.getShards()) {
+            try {
+                DataSourceShardContext.run(shard, () -> {
+                    int deleted;
+
+                    do {
+                        deleted = this.smsOutboundMessageRepository.deleteOldStatusSequenceTickets();
+                    } while (deleted >= STATUS_SEQUENCE_TICKET_CHUNK_SIZE);
+                });
+            }
+
+            catch (RuntimeException e) {
+                logger.error("Failed to delete the old status sequence tickets of shard " + shard + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reconcile the delivery status of messages whose delivery report callback is overdue with the InfoBip logs API.
+     *
+     * Runs continuously at a low rate: each run polls one chunk of overdue messages, continuing after the last message of
+     * the previous run, and starts over once all overdue messages were polled. Only messages whose status changed are
+     * written back, with targeted updates. Each shard is polled with its own cursor.
+     **/
+    @Override
+    @Scheduled(fixedDelay = 15000)
     public void updateDeliveryStatus() {
         // check if the scheduler is enabled
         if (this.smsGatewayHelper.smsGatewayConfiguration.getEnableOutboundMessageScheduler()) {
+            for (final String shard : this.smsGatewayDataSource.getShards()) {
+                DataSourceShardContext.run(shard, () -> updateDeliveryStatus((shard != null) ? shard : ""));
+            }
+        }
+    }
+
+    /**
+     * poll one chunk of the overdue messages of the shard of the current thread
+     *
+     * @param cursorKey the key of the cursor of the shard
+     **/
+    private void updateDeliveryStatus(final String cursorKey) {
+        final long now = System.currentTimeMillis();
+        final Pageable pageable = new PageRequest(0, InfoBipMessageProvider.MAXIMUM_DELIVERY_REPORT_MESSAGE_IDS);
+        final long fetchStartNanos = System.nanoTime();
+        final List<SmsOutboundMessage> smsOutboundMessages = this.smsOutboundMessageRepository.findOverdueDeliveryReports(
+                this.infoBipMessageProvider.getName(), Arrays.asList(SmsMessageStatusType.SENT.getValue(), SmsMessageStatusType.WAITING_FOR_REPORT.getValue()),
+                this.deliveryReportCursors.getOrDefault(cursorKey, 0L), new Date(now - DELIVERY_REPORT_LOG_RETENTION_MILLIS),
+                new Date(now - DELIVERY_REPORT_OVERDUE_MILLIS), pageable);
+        this.smsPipelineMetrics.recordDatabaseFetch(fetchStartNanos);
+
+        // start over with the next run once the last chunk was polled
+        this.deliveryReportCursors.put(cursorKey, (smsOutboundMessages.size() < pageable.getPageSize()) ? 0L
+                : smsOutboundMessages.get(smsOutboundMessages.size() - 1).getId());
+
+        // only proceed if there are pending messages for status update
+        if (!CollectionUtils.isEmpty(smsOutboundMessages)) {
+            final Map<String, SmsOutboundMessage> messages = new HashMap<>();
+            for (final SmsOutboundMessage smsOutboundMessage : smsOutboundMessages) {
+                messages.put(smsOutboundMessage.getExternalId(), smsOutboundMessage);
+            }
+            final SMSLogsResponse response = this.infoBipMessageProvider.getDeliveryReport(messages.keySet());
+            if (response == null || response.getResults() == null) {
+                return;
+            }
+            for (final SMSLog smsLog : response.getResults()) {
+                final SmsOutboundMessage message = messages.get(smsLog.getMessageId());
+                if (message == null || smsLog.getStatus() == null) {
+                    continue;
+                }
+                final SmsMessageStatusType status = InfoBipStatus.smsStatus(smsLog.getStatus().getGroupId());
+
+                // the message is still waiting for its report, nothing to write back
+                if (status.getValue().equals(message.getDeliveryStatus())) {
+                    continue;
+                }
 
-            final Pageable pageable = new PageRequest(0, getMaximumNumberOfMessagesToBeSent());
-            final List<SmsOutboundMessage> smsOutboundMessages = this.smsOutboundMessageRepository
-                    .findByDeliveryStatus(SmsMessageStatusType.SENT.getValue(), pageable);
-            smsOutboundMessages.addAll(
-                    this.smsOutboundMessageRepository.findByDeliveryStatus(SmsMessageStatusType.WAITING_FOR_REPORT.getValue(), pageable));
-
-            // only proceed if there are pending messages for status update
-            if (!CollectionUtils.isEmpty(smsOutboundMessages)) {
-                final Map<String, SmsOutboundMessage> messages = new HashMap<>();
-                for (final SmsOutboundMessage smsOutboundMessage : smsOutboundMessages) {
-                    messages.put(smsOutboundMessage.getExternalId(), smsOutboundMessage);
+                // the update only applies if the status is still the one read above, a delivery report callback received
+                // in the meantime is newer than the log entry and wins. Updated one message at a time to know which
+                // messages changed.
+                final int updated;
+                if (status == SmsMessageStatusType.DELIVERED && message.getDeliveredOnDateTime() == null) {
+                    final Date deliveredOnDateTime = (smsLog.getDoneAt() != null) ? smsLog.getDoneAt() : new Date();
+                    message.setDeliveredOnDate(deliveredOnDateTime);
+                    message.setDeliveredOnDateTime(deliveredOnDateTime);
+                    updated = this.smsOutboundMessageRepository.updateDeliveryStatusAndDeliveredOn(message.getId(),
+                            message.getDeliveryStatus(), status.getValue(), deliveredOnDateTime, deliveredOnDateTime);
+                } else {
+                    updated = this.smsOutboundMessageRepository.updateDeliveryStatus(message.getId(),
+                            message.getDeliveryStatus(), status.getValue());
                 }
-                final SMSLogsResponse response = this.infoBipMessageProvider.getDeliveryReport(messages.keySet());
-                for (final SMSLog smsLog : response.getResults()) {
-                    final SmsOutboundMessage message = messages.get(smsLog.getMessageId());
-                    message.setDeliveryStatus(InfoBipStatus.smsStatus(smsLog.getStatus().getGroupId()));
+                if (updated == 0) {
+                    continue;
                 }
-                this.smsOutboundMessageRepository.save(smsOutboundMessages);
+
+                this.smsPipelineMetrics.deliveryReported(message.getMifosTenantIdentifier(), SmsPipelineMetrics.GATEWAY_INFOBIP,
+                        status);
+                this.smsGatewayRouteTable.recordDelivery(message.getMifosTenantIdentifier(), message.getMobileNumber(),
+                        this.infoBipMessageProvider.getName(), status);
+
+                // the entity is detached, the changes only feed the webhook
+                message.setDeliveryStatus(status);
+                this.deliveryStatusWebhookDispatcher.statusChanged(message);
             }
         }
     }
+
+    /**
+     * the shard and claimedBy value of a chunk of claimed messages
+     **/
+    private static class Claim {
+        private final String shard;
+        private final String claimedBy;
+
+        private Claim(final String shard, final String claimedBy) {
+            this.shard = shard;
+            this.claimedBy = claimedBy;
+        }
+    }
+
+    /**
+     * the result of a submit, the gateway it was made to and when it was made
+     **/
+    private static class SubmitOutcome {
+        private final String gateway;
+        private final SmsGatewayMessage smsGatewayMessage;
+        private final Date submittedOnDateTime;
+        private final Date acknowledgedOnDateTime;
+
+        private SubmitOutcome(final String gateway, final SmsGatewayMessage smsGatewayMessage, final Date submittedOnDateTime,
+                final Date acknowledgedOnDateTime) {
+            this.gateway = gateway;
+            this.smsGatewayMessage = smsGatewayMessage;
+            this.submittedOnDateTime = submittedOnDateTime;
+            this.acknowledgedOnDateTime = acknowledgedOnDateTime;
+        }
+    }
 }
@@ -4,7 +4,6 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.util.Enumeration;
 
-import org.mifos.sms.gateway.infobip.SmsGatewayHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,17 +16,20 @@ import com.mysql.jdbc.AbandonedConnectionCleanupThread;
 @Service
 public class ContextClosedEventListener implements ApplicationListener<ContextClosedEvent> {
     private final static Logger logger = LoggerFactory.getLogger(ContextClosedEventListener.class);
-    private final SmsGatewayHelper smsGatewayHelper;
+    private final SmsGatewayLifecycleManager smsGatewayLifecycleManager;
     
     @Autowired
-    public ContextClosedEventListener(final SmsGatewayHelper smsGatewayHelper) {
-        this.smsGatewayHelper = smsGatewayHelper;
+    public ContextClosedEventListener(final SmsGatewayLifecycleManager smsGatewayLifecycleManager) {
+        this.smsGatewayLifecycleManager = smsGatewayLifecycleManager;
     }
 
+    /** 
+     * drain the message pipeline while the beans are still available, then release the JDBC driver 
+     **/
     @Override
     public void onApplicationEvent(ContextClosedEvent event) {
+        this.smsGatewayLifecycleManager.shutdown();
         shutDowncleanUpThreadAndDeregisterJDBCDrivers();
-        unbindAndCloseSMPPSession();
     }
     
     /** 
@@ -59,23 +61,5 @@ public class ContextClosedEventListener implements ApplicationListener<ContextCl
                 logger.error("Exception occured while deregistering jdbc driver", throwable);
             }
         }
-        
-        try {
-            Thread.sleep(2000L);
-        } 
-        
-        catch (Exception exception) {
-            
-        }
-    }
-    
-    /** 
-     * unbind and close currently active SMPP session, do not allow reconnection 
-     * 
-     * @return void
-     **/
-    private void unbindAndCloseSMPPSession() {
-        this.smsGatewayHelper.reconnect = false;
-        this.smsGatewayHelper.unbindAndCloseSession();
     }
 }
@@ -0,0 +1,96 @@
+package org.mifos.sms.service;
+
+import java.util.function.Supplier;
+
+/** 
+ * Holds the shard the current thread reads and writes SMS messages in, see {@link SmsGatewayDataSource}, and whether it 
+ * only reads them, in which case the reads may be served by a replica. Both have to be set before a transaction is 
+ * started, the connection of a transaction is taken when it starts. 
+ **/
+public final class DataSourceShardContext {
+	private static final ThreadLocal<String> shard = new ThreadLocal<>();
+	private static final ThreadLocal<Boolean> readOnly = new ThreadLocal<>();
+	
+	private DataSourceShardContext() {}
+	
+	/** 
+	 * @return the shard of the current thread, null for the default shard 
+	 **/
+	public static String getShard() {
+		return shard.get();
+	}
+	
+	/** 
+	 * @return true if the current thread only reads, and may read from a replica 
+	 **/
+	public static boolean isReadOnly() {
+		return Boolean.TRUE.equals(readOnly.get());
+	}
+	
+	/** 
+	 * run a read only action in a shard, it may read from a replica of the shard. The shard and read only flag of the 
+	 * current thread are restored afterwards. 
+	 * 
+	 * @param shardName the shard, null for the default shard
+	 * @param action the action, must not write
+	 * @return the result of the action
+	 **/
+	public static <T> T callReadOnly(final String shardName, final Supplier<T> action) {
+		final Boolean previousReadOnly = readOnly.get();
+		readOnly.set(Boolean.TRUE);
+		
+		try {
+			return call(shardName, action);
+		}
+		
+		finally {
+			if (previousReadOnly != null) {
+				readOnly.set(previousReadOnly);
+			}
+			
+			else {
+				readOnly.remove();
+			}
+		}
+	}
+	
+	/** 
+	 * run an action in a shard, the shard of the current thread is restored afterwards 
+	 * 
+	 * @param shardName the shard, null for the default shard
+	 * @param action the action
+	 * @return the result of the action
+	 **/
+	public static <T> T call(final String shardName, final Supplier<T> action) {
+		final String previousShard = shard.get();
+		shard.set(shardName);
+		
+		try {
+			return action.get();
+		}
+		
+		finally {
+			if (previousShard != null) {
+				shard.set(previousShard);
+			}
+			
+			else {
+				shard.remove();
+			}
+		}
+	}
+	
+	/** 
+	 * run an action in a shard, the shard of the current thread is restored afterwards 
+	 * 
+	 * @param shardName the shard, null for the default shard
+	 * @param action the action
+	 **/
+	public static void run(final String shardName, final Runnable action) {
+		call(shardName, () -> {
+			action.run();
+			
+			return null;
+		});
+	}
+}
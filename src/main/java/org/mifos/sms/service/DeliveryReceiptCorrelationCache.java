@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded, time evicted map of the id assigned by the SMS gateway to the status data of a recently submitted message,
+ * populated at submit time so that the delivery receipt of the message can be correlated without a SELECT.
+ *
+ * Entries are kept in insertion order in a fixed number of segments, each guarded by its own lock. A segment evicts its
+ * oldest entries once they are older than the time to live or the segment is full. An entry is removed when it is
+ * taken, a delivery receipt is only expected once.
+ **/
+@Component
+public class DeliveryReceiptCorrelationCache {
+    public static final String CORRELATION_HIT = "sms.dlr.correlation.hit";
+    public static final String CORRELATION_MISS = "sms.dlr.correlation.miss";
+    public static final String CORRELATION_SIZE = "sms.dlr.correlation.size";
+
+    private static final int SEGMENTS = 16;
+    private static final int MAXIMUM_SIZE = 100000;
+    private static final long TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private final MetricsRegistry metricsRegistry;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    @Autowired
+    public DeliveryReceiptCorrelationCache(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(MAXIMUM_SIZE / SEGMENTS);
+        }
+
+        this.metricsRegistry.gauge(CORRELATION_SIZE, this::size);
+    }
+
+    /**
+     * remember a message accepted by the SMS gateway
+     *
+     * @param externalId the id assigned by the SMS gateway
+     * @param statusData the status data of the message after the submit
+     **/
+    public void put(final String externalId, final SmsOutboundMessageStatusData statusData) {
+        if (externalId != null) {
+            segment(externalId).put(externalId, statusData, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * take the status data of a message out of the cache
+     *
+     * @param externalId the id assigned by the SMS gateway
+     * @return the status data of the message, null if it was not submitted recently
+     **/
+    public SmsOutboundMessageStatusData take(final String externalId) {
+        final SmsOutboundMessageStatusData statusData = (externalId != null)
+                ? segment(externalId).take(externalId, System.currentTimeMillis()) : null;
+
+        this.metricsRegistry.counter((statusData != null) ? CORRELATION_HIT : CORRELATION_MISS).increment();
+
+        return statusData;
+    }
+
+    private long size() {
+        long size = 0;
+
+        for (final Segment segment : this.segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    private Segment segment(final String externalId) {
+        // spread the hash bits, the ids of a gateway often share a prefix
+        final int hash = externalId.hashCode();
+
+        return this.segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static class Segment {
+        private final int maximumSize;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+        private Segment(final int maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        private synchronized void put(final String externalId, final SmsOutboundMessageStatusData statusData, final long now) {
+            evict(now);
+
+            if (this.entries.size() >= this.maximumSize) {
+                final Iterator<Entry> iterator = this.entries.values().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+
+            this.entries.put(externalId, new Entry(statusData, now));
+        }
+
+        private synchronized SmsOutboundMessageStatusData take(final String externalId, final long now) {
+            final Entry entry = this.entries.remove(externalId);
+
+            return (entry != null && now - entry.addedOnMillis < TIME_TO_LIVE_MILLIS) ? entry.statusData : null;
+        }
+
+        private synchronized int size() {
+            return this.entries.size();
+        }
+
+        /**
+         * remove the entries older than the time to live, the oldest entries come first
+         **/
+        private void evict(final long now) {
+            final Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+
+            while (iterator.hasNext() && now - iterator.next().getValue().addedOnMillis >= TIME_TO_LIVE_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final SmsOutboundMessageStatusData statusData;
+        private final long addedOnMillis;
+
+        private Entry(final SmsOutboundMessageStatusData statusData, final long addedOnMillis) {
+            this.statusData = statusData;
+            this.addedOnMillis = addedOnMillis;
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.mifos.sms.data.SmsOutboundMessageResponseData;
+import org.mifos.sms.domain.SmsOutboundMessage;
+import org.mifos.sms.domain.TenantWebhook;
+import org.mifos.sms.domain.TenantWebhookRepository;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Pushes delivery status changes to the webhook URL configured for the Mifos tenant (tenantWebhook table).
+ *
+ * Changes are buffered per tenant in a bounded in-memory queue. A change to a message that is still queued replaces the
+ * queued one, so each POST carries only the latest status of a message. A queue is flushed when the coalescing window
+ * elapses or when it holds a full batch, with at most one request in flight per tenant. Failed requests are retried with
+ * an exponential backoff, then dropped; Mifos can catch up through "/sms/report/changes".
+ **/
+@Service
+public class DeliveryStatusWebhookDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryStatusWebhookDispatcher.class);
+
+    public static final String WEBHOOK_SENT = "sms.webhook.messages.sent";
+    public static final String WEBHOOK_FAILED = "sms.webhook.messages.failed";
+    public static final String WEBHOOK_DROPPED = "sms.webhook.messages.dropped";
+    public static final String WEBHOOK_REQUEST = "sms.webhook.request";
+    public static final String WEBHOOK_QUEUED = "sms.webhook.queued";
+
+    private static final String TAG_TENANT = "tenant";
+    private static final String TENANT_HEADER = "Fineract-Platform-TenantId";
+
+    private static final long COALESCING_WINDOW_MILLIS = 2000;
+    private static final int MAXIMUM_BATCH_SIZE = 500;
+    private static final int MAXIMUM_QUEUE_SIZE = 10000;
+    private static final int MAXIMUM_ATTEMPTS = 5;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+    private static final int DISPATCHER_THREADS = 4;
+    private static final long DRAIN_POLL_MILLIS = 100;
+
+    private final TenantWebhookRepository tenantWebhookRepository;
+    private final MetricsRegistry metricsRegistry;
+    private final ConcurrentMap<String, TenantQueue> tenantQueues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executorService;
+
+    private volatile Map<String, TenantWebhook> webhooks = Collections.emptyMap();
+    // set when the application stops, the queues are flushed without waiting for the coalescing window
+    private volatile boolean draining;
+
+    @Autowired
+    public DeliveryStatusWebhookDispatcher(final TenantWebhookRepository tenantWebhookRepository,
+            final MetricsRegistry metricsRegistry) {
+        this.tenantWebhookRepository = tenantWebhookRepository;
+        this.metricsRegistry = metricsRegistry;
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(DISPATCHER_THREADS, runnable -> {
+            final Thread thread = new Thread(runnable, "webhook-dispatcher-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.executorService = executor;
+
+        this.metricsRegistry.gauge(WEBHOOK_QUEUED, this::queuedMessages);
+    }
+
+    /**
+     * Reload the enabled tenant webhooks from the DB
+     **/
+    @PostConstruct
+    @Scheduled(fixedDelay = 60000)
+    public void refreshWebhooks() {
+        try {
+            final Map<String, TenantWebhook> webhooks = new HashMap<>();
+
+            for (final TenantWebhook tenantWebhook : this.tenantWebhookRepository.findByIsEnabledTrue()) {
+                webhooks.put(tenantWebhook.getMifosTenantIdentifier(), tenantWebhook);
+            }
+
+            this.webhooks = webhooks;
+        }
+
+        catch (Exception e) {
+            logger.error("Failed to load the tenant webhooks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queue the current delivery status of a message for the tenant's webhook. Nothing is queued if the tenant has no
+     * enabled webhook. If called within a transaction, the change is only queued once the transaction commits.
+     *
+     * @param smsOutboundMessage the message whose status changed
+     **/
+    public void statusChanged(final SmsOutboundMessage smsOutboundMessage) {
+        if (hasWebhook(smsOutboundMessage.getMifosTenantIdentifier())) {
+            // take the snapshot now, the entity may change again before the transaction commits
+            statusChanged(smsOutboundMessage.getMifosTenantIdentifier(), smsOutboundMessage.toResponseData());
+        }
+    }
+
+    /**
+     * Queue a delivery status change for the tenant's webhook, see {@link #statusChanged(SmsOutboundMessage)}
+     *
+     * @param mifosTenantIdentifier the tenant the message belongs to
+     * @param responseData the message with its new status, as returned by "/sms/report"
+     **/
+    public void statusChanged(final String mifosTenantIdentifier, final SmsOutboundMessageResponseData responseData) {
+        if (!hasWebhook(mifosTenantIdentifier)) {
+            return;
+        }
+
+        // the "externalId" of the report is the id of the message in this system
+        final Long id = responseData.getExternalId();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    offer(mifosTenantIdentifier, id, responseData);
+                }
+            });
+        }
+
+        else {
+            offer(mifosTenantIdentifier, id, responseData);
+        }
+    }
+
+    private boolean hasWebhook(final String mifosTenantIdentifier) {
+        return mifosTenantIdentifier != null && this.webhooks.containsKey(mifosTenantIdentifier);
+    }
+
+    private void offer(final String mifosTenantIdentifier, final Long id, final SmsOutboundMessageResponseData responseData) {
+        TenantQueue tenantQueue = this.tenantQueues.get(mifosTenantIdentifier);
+
+        if (tenantQueue == null) {
+            final TenantQueue newTenantQueue = new TenantQueue(mifosTenantIdentifier);
+            tenantQueue = this.tenantQueues.putIfAbsent(mifosTenantIdentifier, newTenantQueue);
+
+            if (tenantQueue == null) {
+                tenantQueue = newTenantQueue;
+            }
+        }
+
+        tenantQueue.offer(id, responseData);
+    }
+
+    private long queuedMessages() {
+        long queuedMessages = 0;
+
+        for (final TenantQueue tenantQueue : this.tenantQueues.values()) {
+            queuedMessages += tenantQueue.size();
+        }
+
+        return queuedMessages;
+    }
+
+    /**
+     * POST a batch to the tenant's webhook
+     *
+     * @return true if the webhook accepted the batch (2xx response)
+     **/
+    private boolean post(final TenantWebhook tenantWebhook, final List<SmsOutboundMessageResponseData> batch) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(tenantWebhook.getUrl()).openConnection();
+
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            connection.setRequestProperty(TENANT_HEADER, tenantWebhook.getMifosTenantIdentifier());
+
+            if (tenantWebhook.getAuthorizationHeader() != null) {
+                connection.setRequestProperty("Authorization", tenantWebhook.getAuthorizationHeader());
+            }
+
+            try (final JsonWriter writer = new JsonWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+                writer.beginObject();
+                writer.name("mifosTenantIdentifier").value(tenantWebhook.getMifosTenantIdentifier());
+                writer.name("messages").beginArray();
+
+                for (final SmsOutboundMessageResponseData responseData : batch) {
+                    responseData.toJson(writer);
+                }
+
+                writer.endArray();
+                writer.endObject();
+            }
+
+            final int responseCode = connection.getResponseCode();
+
+            return responseCode >= 200 && responseCode < 300;
+        }
+
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * send the queued status changes right away and wait until they are sent or given up, called when the application
+     * stops before the context is closed
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if no status change is left to send
+     **/
+    public boolean drain(final long timeoutMillis) throws InterruptedException {
+        final long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        this.draining = true;
+
+        for (final TenantQueue tenantQueue : this.tenantQueues.values()) {
+            tenantQueue.flushNow();
+        }
+
+        while (!isIdle()) {
+            if (System.currentTimeMillis() >= deadlineMillis) {
+                logger.warn(queuedMessages() + " status changes still queued for the webhooks at shutdown");
+
+                return false;
+            }
+
+            Thread.sleep(DRAIN_POLL_MILLIS);
+        }
+
+        return true;
+    }
+
+    private boolean isIdle() {
+        for (final TenantQueue tenantQueue : this.tenantQueues.values()) {
+            if (!tenantQueue.isIdle()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.executorService.shutdownNow();
+    }
+
+    /**
+     * Status changes waiting to be sent to the webhook of a tenant
+     **/
+    private class TenantQueue {
+        private final String mifosTenantIdentifier;
+        // keyed by message id, so a newer status replaces a queued one
+        private final LinkedHashMap<Long, SmsOutboundMessageResponseData> pending = new LinkedHashMap<>();
+        private boolean flushScheduled;
+        private boolean immediateFlushScheduled;
+        private boolean inFlight;
+
+        private TenantQueue(final String mifosTenantIdentifier) {
+            this.mifosTenantIdentifier = mifosTenantIdentifier;
+        }
+
+        private synchronized int size() {
+            return this.pending.size();
+        }
+
+        private synchronized boolean isIdle() {
+            return this.pending.isEmpty() && !this.inFlight;
+        }
+
+        private synchronized void flushNow() {
+            scheduleFlush();
+        }
+
+        private synchronized void offer(final Long id, final SmsOutboundMessageResponseData responseData) {
+            if (this.pending.remove(id) == null && this.pending.size() >= MAXIMUM_QUEUE_SIZE) {
+                metricsRegistry.counter(WEBHOOK_DROPPED, TAG_TENANT, this.mifosTenantIdentifier).increment();
+
+                return;
+            }
+
+            this.pending.put(id, responseData);
+            scheduleFlush();
+        }
+
+        /**
+         * schedule the next flush, right away if a full batch is waiting or if the dispatcher is draining, otherwise after
+         * the coalescing window
+         **/
+        private void scheduleFlush() {
+            if (this.inFlight || this.pending.isEmpty()) {
+                return;
+            }
+
+            if (this.pending.size() >= MAXIMUM_BATCH_SIZE || draining) {
+                if (!this.immediateFlushScheduled) {
+                    this.immediateFlushScheduled = true;
+                    this.flushScheduled = true;
+                    executorService.execute(this::flush);
+                }
+            }
+
+            else if (!this.flushScheduled) {
+                this.flushScheduled = true;
+                executorService.schedule(this::flush, COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flush() {
+            final List<SmsOutboundMessageResponseData> batch = new ArrayList<>();
+
+            synchronized (this) {
+                this.flushScheduled = false;
+                this.immediateFlushScheduled = false;
+
+                // a flush scheduled before the current request was sent, completed() schedules the next one
+                if (this.inFlight || this.pending.isEmpty()) {
+                    return;
+                }
+
+                this.inFlight = true;
+                final Iterator<SmsOutboundMessageResponseData> iterator = this.pending.values().iterator();
+
+                while (iterator.hasNext() && batch.size() < MAXIMUM_BATCH_SIZE) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+            }
+
+            send(batch, 1);
+        }
+
+        private void send(final List<SmsOutboundMessageResponseData> batch, final int attempt) {
+            final TenantWebhook tenantWebhook = webhooks.get(this.mifosTenantIdentifier);
+
+            // the webhook was disabled or removed since the changes were queued
+            if (tenantWebhook == null) {
+                metricsRegistry.counter(WEBHOOK_DROPPED, TAG_TENANT, this.mifosTenantIdentifier).increment(batch.size());
+                completed();
+
+                return;
+            }
+
+            final long startNanos = System.nanoTime();
+            boolean accepted = false;
+
+            try {
+                accepted = post(tenantWebhook, batch);
+
+                if (!accepted) {
+                    logger.warn("Webhook of tenant " + this.mifosTenantIdentifier + " rejected " + batch.size()
+                            + " status changes (attempt " + attempt + ")");
+                }
+            }
+
+            catch (Exception e) {
+                logger.warn("Failed to send " + batch.size() + " status changes to the webhook of tenant "
+                        + this.mifosTenantIdentifier + " (attempt " + attempt + "): " + e.getMessage());
+            }
+
+            finally {
+                metricsRegistry.timer(WEBHOOK_REQUEST, TAG_TENANT, this.mifosTenantIdentifier).recordSince(startNanos);
+            }
+
+            if (accepted) {
+                metricsRegistry.counter(WEBHOOK_SENT, TAG_TENANT, this.mifosTenantIdentifier).increment(batch.size());
+                completed();
+            }
+
+            else if (attempt < MAXIMUM_ATTEMPTS && !executorService.isShutdown()) {
+                final long retryDelayMillis = INITIAL_RETRY_DELAY_MILLIS << (attempt - 1);
+                executorService.schedule(() -> send(batch, attempt + 1), retryDelayMillis, TimeUnit.MILLISECONDS);
+            }
+
+            else {
+                logger.error("Giving up on " + batch.size() + " status changes for the webhook of tenant "
+                        + this.mifosTenantIdentifier + " after " + attempt + " attempts");
+                metricsRegistry.counter(WEBHOOK_FAILED, TAG_TENANT, this.mifosTenantIdentifier).increment(batch.size());
+                completed();
+            }
+        }
+
+        private synchronized void completed() {
+            this.inFlight = false;
+            scheduleFlush();
+        }
+    }
+}
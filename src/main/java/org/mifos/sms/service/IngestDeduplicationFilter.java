@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mifos.sms.data.SmsOutboundMessageResponseData;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived memory of the messages recently added through "/sms/queue", keyed by tenant and Mifos message id. A retry
+ * of the request gets the response of the original request without a DB read.
+ *
+ * Entries expire after a few minutes; the unique (mifosTenantIdentifier, internalId) key catches the retries that come
+ * later or go to another instance.
+ **/
+@Component
+public class IngestDeduplicationFilter {
+    public static final String DUPLICATES_FILTERED = "sms.ingest.duplicates.filtered";
+
+    private static final int MAXIMUM_SIZE = 50000;
+    private static final long TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final MetricsRegistry metricsRegistry;
+    // insertion ordered, the oldest entries come first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    @Autowired
+    public IngestDeduplicationFilter(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    /**
+     * @param mifosTenantIdentifier Mifos X tenant identifier e.g. demo
+     * @param internalId the id of the message in the Mifos tenant
+     * @return the response returned when the message was added, null if it was not added recently
+     **/
+    public SmsOutboundMessageResponseData get(final String mifosTenantIdentifier, final Long internalId) {
+        final long now = System.currentTimeMillis();
+        final Entry entry;
+
+        synchronized (this) {
+            entry = this.entries.get(key(mifosTenantIdentifier, internalId));
+        }
+
+        if (entry == null || now - entry.addedOnMillis >= TIME_TO_LIVE_MILLIS) {
+            return null;
+        }
+
+        this.metricsRegistry.counter(DUPLICATES_FILTERED, "tenant", mifosTenantIdentifier).increment();
+
+        return entry.responseData;
+    }
+
+    /**
+     * remember a message added to the queue
+     *
+     * @param mifosTenantIdentifier Mifos X tenant identifier e.g. demo
+     * @param responseData the response returned for the message
+     **/
+    public synchronized void put(final String mifosTenantIdentifier, final SmsOutboundMessageResponseData responseData) {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final Entry eldest = iterator.next().getValue();
+
+            if (now - eldest.addedOnMillis < TIME_TO_LIVE_MILLIS && this.entries.size() < MAXIMUM_SIZE) {
+                break;
+            }
+
+            iterator.remove();
+        }
+
+        this.entries.put(key(mifosTenantIdentifier, responseData.getId()), new Entry(responseData, now));
+    }
+
+    private static String key(final String mifosTenantIdentifier, final Long internalId) {
+        return mifosTenantIdentifier + '/' + internalId;
+    }
+
+    private static class Entry {
+        private final SmsOutboundMessageResponseData responseData;
+        private final long addedOnMillis;
+
+        private Entry(final SmsOutboundMessageResponseData responseData, final long addedOnMillis) {
+            this.responseData = responseData;
+            this.addedOnMillis = addedOnMillis;
+        }
+    }
+}
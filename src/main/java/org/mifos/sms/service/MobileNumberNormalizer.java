@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Normalizes the mobile numbers of "/sms/queue" to E.164: the country code and subscriber number, at most 15 digits,
+ * stored without the leading "+" as the gateways and the prefixes of the smsGatewayRoute table expect them. Spaces,
+ * dashes, dots and parentheses are dropped, and a leading "+" or "00" (international call prefix) is removed. A number
+ * starting with a single "0" is a national number: its trunk prefix is replaced by "api.mobileNumber.defaultCountryCode",
+ * or the number is invalid if no default country code is configured. Any other number must start with its country code.
+ *
+ * The tenants send the same numbers over and over, the results are kept in an LRU cache of
+ * "api.mobileNumber.cacheSize" entries.
+ **/
+@Component
+public class MobileNumberNormalizer {
+    // shortest numbers in use, e.g. +683 4xxx
+    private static final int MINIMUM_DIGITS = 7;
+    private static final int MAXIMUM_DIGITS = 15;
+    // cached result of an invalid number, null stands for a number that is not cached
+    private static final String INVALID = "";
+
+    private final String defaultCountryCode;
+    private final Map<String, String> cache;
+
+    @Autowired
+    public MobileNumberNormalizer(@Value("${api.mobileNumber.defaultCountryCode}") final String defaultCountryCode,
+            @Value("${api.mobileNumber.cacheSize}") final int cacheSize) {
+        this.defaultCountryCode = defaultCountryCode.trim();
+        // access ordered, the least recently used entry is evicted first
+        this.cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        // 1 to 3 digits, or none
+        if (!this.defaultCountryCode.matches("([1-9][0-9]{0,2})?")) {
+            throw new IllegalArgumentException("Invalid default country code " + defaultCountryCode);
+        }
+    }
+
+    /**
+     * @param mobileNumber the mobile number of a message, as sent by the tenant
+     * @return the number in E.164 format without "+", null if it is not a valid number
+     **/
+    public String normalize(final String mobileNumber) {
+        if (mobileNumber == null) {
+            return null;
+        }
+
+        String normalizedMobileNumber;
+
+        synchronized (this.cache) {
+            normalizedMobileNumber = this.cache.get(mobileNumber);
+        }
+
+        if (normalizedMobileNumber == null) {
+            normalizedMobileNumber = parse(mobileNumber);
+
+            synchronized (this.cache) {
+                this.cache.put(mobileNumber, normalizedMobileNumber);
+            }
+        }
+
+        return !normalizedMobileNumber.isEmpty() ? normalizedMobileNumber : null;
+    }
+
+    /**
+     * @return the number in E.164 format without "+", {@link #INVALID} if it is not a valid number
+     **/
+    private String parse(final String mobileNumber) {
+        final StringBuilder digits = new StringBuilder(MAXIMUM_DIGITS + 1);
+        boolean international = false;
+
+        for (int index = 0; index < mobileNumber.length(); index++) {
+            final char character = mobileNumber.charAt(index);
+
+            if (character >= '0' && character <= '9') {
+                digits.append(character);
+            }
+
+            else if (character == '+' && digits.length() == 0 && !international) {
+                international = true;
+            }
+
+            else if (character != ' ' && character != '-' && character != '.' && character != '(' && character != ')') {
+                return INVALID;
+            }
+        }
+
+        if (!international && digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            digits.delete(0, 2);
+            international = true;
+        }
+
+        if (!international && digits.length() > 0 && digits.charAt(0) == '0') {
+            if (this.defaultCountryCode.isEmpty()) {
+                return INVALID;
+            }
+
+            digits.replace(0, 1, this.defaultCountryCode);
+        }
+
+        // country codes do not start with 0
+        if (digits.length() < MINIMUM_DIGITS || digits.length() > MAXIMUM_DIGITS || digits.charAt(0) == '0') {
+            return INVALID;
+        }
+
+        return digits.toString();
+    }
+}
@@ -1,8 +1,10 @@
 package org.mifos.sms.service;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
+import org.mifos.sms.data.SmsOutboundMessageChangesData;
 import org.mifos.sms.data.SmsOutboundMessageResponseData;
 
 /** 
@@ -19,4 +21,33 @@ public interface ReadSmsOutboundMessageService {
 	 * mifosTenantIdentifier matches the one provided
 	 **/
 	public Collection<SmsOutboundMessageResponseData> findAll(List<Long> externalIds, String mifosTenantIdentifier);
+	
+	/**
+	 * same as {@link #findAll(List, String)}, but the IN list query is run in chunks and the results of each chunk 
+	 * are passed to the handler as soon as they are read
+	 * 
+	 * @param externalIds the list of external IDs
+	 * @param mifosTenantIdentifier mifos tenant identifier string
+	 * @param handler receives the results of each chunk
+	 **/
+	public void findAll(List<Long> externalIds, String mifosTenantIdentifier, ResultChunkHandler handler) throws IOException;
+	
+	/**
+	 * @param mifosTenantIdentifier mifos tenant identifier string
+	 * @param cursor the next cursor of the previous page, 0 for the first page
+	 * @param limit maximum number of messages to return
+	 * @return messages of the tenant added or whose status changed after the cursor, ordered by change
+	 **/
+	public SmsOutboundMessageChangesData findChangedSince(String mifosTenantIdentifier, Long cursor, Integer limit);
+	
+	/** 
+	 * Handler for the results of a chunked query 
+	 **/
+	public interface ResultChunkHandler {
+		
+		/** 
+		 * @param chunk results of one chunk of the IN list
+		 **/
+		void handle(Collection<SmsOutboundMessageResponseData> chunk) throws IOException;
+	}
 }
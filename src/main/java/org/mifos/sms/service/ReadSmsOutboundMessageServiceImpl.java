@@ -1,45 +1,103 @@
 package org.mifos.sms.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
-import org.joda.time.LocalDate;
+import org.mifos.sms.data.SmsOutboundMessageChangesData;
 import org.mifos.sms.data.SmsOutboundMessageResponseData;
-import org.mifos.sms.domain.SmsOutboundMessage;
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
 import org.mifos.sms.domain.SmsOutboundMessageRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ReadSmsOutboundMessageServiceImpl implements ReadSmsOutboundMessageService {
+	// maximum number of ids in a single IN list, keeps the statements and their result sets small
+	private static final int IN_LIST_CHUNK_SIZE = 1000;
+	
 	private final SmsOutboundMessageRepository smsOutboundMessageRepository;
+	private final SmsGatewayDataSource smsGatewayDataSource;
+	private final long holdBackMillis;
 	
 	@Autowired
-	public ReadSmsOutboundMessageServiceImpl(final SmsOutboundMessageRepository smsOutboundMessageRepository) {
+	public ReadSmsOutboundMessageServiceImpl(final SmsOutboundMessageRepository smsOutboundMessageRepository, 
+			final SmsGatewayDataSource smsGatewayDataSource, 
+			@Value("${api.reportChanges.holdBackMillis}") final long holdBackMillis) {
 		this.smsOutboundMessageRepository = smsOutboundMessageRepository;
+		this.smsGatewayDataSource = smsGatewayDataSource;
+		this.holdBackMillis = holdBackMillis;
 	}
 	
 	@Override
 	public Collection<SmsOutboundMessageResponseData> findAll(List<Long> idList, String mifosTenantIdentifier) {
-	    Collection<SmsOutboundMessageResponseData> smsOutboundMessageResponseDataCollection = new ArrayList<>();
-	    Collection<SmsOutboundMessage> smsOutboundMessageCollection = this.smsOutboundMessageRepository
-	            .findByIdInAndMifosTenantIdentifier(idList, mifosTenantIdentifier);
+	    final Collection<SmsOutboundMessageResponseData> smsOutboundMessageResponseDataCollection = new ArrayList<>();
 	    
-	    for (SmsOutboundMessage smsOutboundMessage : smsOutboundMessageCollection) {
-	        
-	        Long id = smsOutboundMessage.getInternalId();
-            Long externalId = smsOutboundMessage.getId();
-            LocalDate addedOnDate = smsOutboundMessage.getAddedOnDate();
-            LocalDate deliveredOnDate = smsOutboundMessage.getDeliveredOnDate();
-            Integer deliveryStatus = smsOutboundMessage.getDeliveryStatus();
-	        
-	        SmsOutboundMessageResponseData smsOutboundMessageResponseData = SmsOutboundMessageResponseData.getInstance(id, externalId, 
-	                addedOnDate.toString(), deliveredOnDate.toString(), deliveryStatus, false, "");
-	        
-	        smsOutboundMessageResponseDataCollection.add(smsOutboundMessageResponseData);
+	    for (int fromIndex = 0; fromIndex < idList.size(); fromIndex += IN_LIST_CHUNK_SIZE) {
+	        smsOutboundMessageResponseDataCollection.addAll(findChunk(idList, fromIndex, mifosTenantIdentifier));
 	    }
 	    
 		return smsOutboundMessageResponseDataCollection;
 	}
+	
+	@Override
+	public void findAll(List<Long> idList, String mifosTenantIdentifier, ResultChunkHandler handler) throws IOException {
+	    for (int fromIndex = 0; fromIndex < idList.size(); fromIndex += IN_LIST_CHUNK_SIZE) {
+	        handler.handle(findChunk(idList, fromIndex, mifosTenantIdentifier));
+	    }
+	}
+	
+	/** 
+	 * The status sequences are taken before the transactions commit, a change may commit after a change with a higher 
+	 * sequence. The changes from the first sequence taken in the last "api.reportChanges.holdBackMillis" on are held back 
+	 * until they are older, so a cursor never moves past a change that is still uncommitted, provided the transactions 
+	 * (and the replication to the replica) take less than that. The first held back sequence is looked up once and bounds 
+	 * the page, a change that commits in between is held back by its own timestamp. 
+	 **/
+	@Override
+	public SmsOutboundMessageChangesData findChangedSince(String mifosTenantIdentifier, Long cursor, Integer limit) {
+	    // reports are read from the replica when there is one, read one extra row to find out if there is another page
+	    final List<SmsOutboundMessageStatusData> smsOutboundMessages = DataSourceShardContext.callReadOnly(
+	            this.smsGatewayDataSource.getShard(mifosTenantIdentifier), () -> {
+	                // taken before the changes are read, a change older than this committed before the read started
+	                final Date heldBackAfter = new Date(this.smsOutboundMessageRepository.getDatabaseDateTime().getTime() 
+	                        - this.holdBackMillis);
+	                final Long heldBackStatusSequence = this.smsOutboundMessageRepository.findFirstHeldBackStatusSequence(
+	                        mifosTenantIdentifier, cursor, heldBackAfter);
+	                
+	                return this.smsOutboundMessageRepository.findStatusDataChangedSince(mifosTenantIdentifier, cursor, 
+	                        (heldBackStatusSequence != null) ? heldBackStatusSequence : Long.MAX_VALUE, heldBackAfter, 
+	                        new PageRequest(0, limit + 1));
+	            });
+	    final boolean hasMore = smsOutboundMessages.size() > limit;
+	    final List<SmsOutboundMessageResponseData> messages = new ArrayList<>();
+	    Long nextCursor = cursor;
+	    
+	    for (SmsOutboundMessageStatusData smsOutboundMessage : hasMore ? smsOutboundMessages.subList(0, limit) : smsOutboundMessages) {
+	        messages.add(smsOutboundMessage.toResponseData());
+	        nextCursor = smsOutboundMessage.getStatusSequence();
+	    }
+	    
+	    return SmsOutboundMessageChangesData.getInstance(messages, nextCursor, hasMore);
+	}
+	
+	private Collection<SmsOutboundMessageResponseData> findChunk(List<Long> idList, int fromIndex, String mifosTenantIdentifier) {
+	    final Collection<SmsOutboundMessageResponseData> smsOutboundMessageResponseDataCollection = new ArrayList<>();
+	    // reports are read from the replica when there is one, only the status and timestamps are selected
+	    final Collection<SmsOutboundMessageStatusData> smsOutboundMessageCollection = DataSourceShardContext.callReadOnly(
+	            this.smsGatewayDataSource.getShard(mifosTenantIdentifier), () -> this.smsOutboundMessageRepository
+	            .findStatusDataByIdInAndMifosTenantIdentifier(idList.subList(fromIndex, Math.min(fromIndex + IN_LIST_CHUNK_SIZE, 
+	                    idList.size())), mifosTenantIdentifier));
+	    
+	    for (SmsOutboundMessageStatusData smsOutboundMessage : smsOutboundMessageCollection) {
+	        smsOutboundMessageResponseDataCollection.add(smsOutboundMessage.toResponseData());
+	    }
+	    
+	    return smsOutboundMessageResponseDataCollection;
+	}
+	
 }
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Creates the tomcat-jdbc connection pools owned by the application, configured from datasource.properties (each
+ * property can be overridden with a JVM system property). Used instead of the container's JNDI pool when
+ * "datasource.url" is set, so that pool size, statement caching and validation are the same on every install.
+ *
+ * The MySQL driver is set up to cache server side prepared statements and to rewrite batched inserts and updates into
+ * multi-row statements. The size, active, idle and waiting connections of each pool are exported as gauges.
+ **/
+@Component
+public class SmsGatewayConnectionPoolFactory {
+    public static final String POOL_SIZE = "sms.db.pool.size";
+    public static final String POOL_ACTIVE = "sms.db.pool.active";
+    public static final String POOL_IDLE = "sms.db.pool.idle";
+    public static final String POOL_WAITING = "sms.db.pool.waiting";
+
+    private static final Logger logger = LoggerFactory.getLogger(SmsGatewayConnectionPoolFactory.class);
+
+    private static final String DRIVER_CLASS_NAME = "com.mysql.jdbc.Driver";
+    private static final String CONNECTION_PROPERTIES = "useServerPrepStmts=true;cachePrepStmts=true;"
+            + "prepStmtCacheSize=%d;prepStmtCacheSqlLimit=2048;rewriteBatchedStatements=true;useLocalSessionState=true;"
+            + "cacheServerConfiguration=true;characterEncoding=UTF-8";
+    private static final String VALIDATION_QUERY = "select 1";
+    // a borrowed connection is validated at most every 30 seconds
+    private static final long VALIDATION_INTERVAL_MILLIS = 30000;
+    private static final String JDBC_INTERCEPTORS = "ConnectionState;StatementFinalizer";
+
+    private final MetricsRegistry metricsRegistry;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int initialSize;
+    private final int maxActive;
+    private final int maxWait;
+    private final int preparedStatementCacheSize;
+    private final List<DataSource> dataSources = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public SmsGatewayConnectionPoolFactory(final MetricsRegistry metricsRegistry,
+            @Value("${datasource.url}") final String url,
+            @Value("${datasource.username}") final String username,
+            @Value("${datasource.password}") final String password,
+            @Value("${datasource.initialSize}") final int initialSize,
+            @Value("${datasource.maxActive}") final int maxActive,
+            @Value("${datasource.maxWait}") final int maxWait,
+            @Value("${datasource.preparedStatementCacheSize}") final int preparedStatementCacheSize) {
+        this.metricsRegistry = metricsRegistry;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.initialSize = initialSize;
+        this.maxActive = maxActive;
+        this.maxWait = maxWait;
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
+    }
+
+    /**
+     * @return true if the default database is accessed through a pool owned by the application
+     **/
+    public boolean isEnabled() {
+        return StringUtils.hasText(this.url);
+    }
+
+    /**
+     * @return a pool for the default database
+     **/
+    public javax.sql.DataSource createDefault() {
+        return create("default", this.url);
+    }
+
+    /**
+     * @param name the name of the pool, used as the "pool" tag of its gauges
+     * @param url the JDBC URL of the database, e.g. jdbc:mysql://localhost:3306/mifos_sms_gateway
+     * @return a pool for the database, with the credentials and settings of the default pool
+     **/
+    public javax.sql.DataSource create(final String name, final String url) {
+        final PoolProperties poolProperties = new PoolProperties();
+        poolProperties.setName(name);
+        poolProperties.setUrl(url);
+        poolProperties.setDriverClassName(DRIVER_CLASS_NAME);
+        poolProperties.setUsername(this.username);
+        poolProperties.setPassword(this.password);
+        poolProperties.setConnectionProperties(String.format(CONNECTION_PROPERTIES, this.preparedStatementCacheSize));
+        poolProperties.setInitialSize(this.initialSize);
+        poolProperties.setMinIdle(this.initialSize);
+        // idle connections are kept up to the maximum, the dispatchers borrow and return a connection per batch
+        poolProperties.setMaxIdle(this.maxActive);
+        poolProperties.setMaxActive(this.maxActive);
+        poolProperties.setMaxWait(this.maxWait);
+        poolProperties.setTestOnBorrow(true);
+        poolProperties.setTestWhileIdle(true);
+        poolProperties.setValidationQuery(VALIDATION_QUERY);
+        poolProperties.setValidationInterval(VALIDATION_INTERVAL_MILLIS);
+        poolProperties.setJdbcInterceptors(JDBC_INTERCEPTORS);
+        poolProperties.setJmxEnabled(false);
+
+        final DataSource dataSource = new DataSource(poolProperties);
+        this.dataSources.add(dataSource);
+
+        this.metricsRegistry.gauge(POOL_SIZE, dataSource::getSize, "pool", name);
+        this.metricsRegistry.gauge(POOL_ACTIVE, dataSource::getActive, "pool", name);
+        this.metricsRegistry.gauge(POOL_IDLE, dataSource::getIdle, "pool", name);
+        this.metricsRegistry.gauge(POOL_WAITING, dataSource::getWaitCount, "pool", name);
+
+        logger.info("Created connection pool '" + name + "' with a maximum of " + this.maxActive + " connections");
+
+        return dataSource;
+    }
+
+    /**
+     * close the pools, called when the application context is closed
+     **/
+    @PreDestroy
+    public void close() {
+        for (final DataSource dataSource : this.dataSources) {
+            dataSource.close();
+        }
+
+        this.dataSources.clear();
+    }
+}
@@ -2,30 +2,223 @@ package org.mifos.sms.service;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
+import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
 
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.lookup.JndiDataSourceLookup;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
+/** 
+ * Routes connections to the shard set in the {@link DataSourceShardContext} of the current thread. A shard is the JNDI 
+ * name of a DataSource, a separate database or a schema of the same database, e.g. "jdbc/mifos-sms-gateway-shard1", 
+ * or the JDBC URL of a database reached through a pool owned by the application. 
+ * 
+ * The default database is reached through the pool owned by the application when "datasource.url" is set, see 
+ * {@link SmsGatewayConnectionPoolFactory}, and through the container's pool otherwise. 
+ * 
+ * Tenants are mapped to a shard in the tenantShard table of the default database, tenants without an entry and the 
+ * global tables (configuration, tenantWebhook, tenantShard) stay in the default database. 
+ * 
+ * Read only work in the default shard (see {@link DataSourceShardContext#callReadOnly}) goes to the replica set in 
+ * "datasource.replica", a JNDI name or JDBC URL, as long as its replication lag is within 
+ * "datasource.replica.maxLagSeconds". Writes, and reads in a transaction that writes, always go to the primary. 
+ **/
 @Service(value = "smsGatewayDataSource")
 public class SmsGatewayDataSource extends AbstractDataSource {
+	private static final Logger logger = LoggerFactory.getLogger(SmsGatewayDataSource.class);
+	
+	public static final String REPLICA_LAG = "sms.db.replica.lag";
+	public static final String REPLICA_AVAILABLE = "sms.db.replica.available";
+	
+	private static final String JDBC_URL_PREFIX = "jdbc:";
+	
 	private final DataSource dataSource;
+	private final SmsGatewayConnectionPoolFactory connectionPoolFactory;
+	private final JndiDataSourceLookup jndiDataSourceLookup = new JndiDataSourceLookup();
+	private final ConcurrentMap<String, DataSource> shardDataSources = new ConcurrentHashMap<>();
+	
+	// tenant -> shard, replaced as a whole when the tenantShard table is reloaded
+	private volatile Map<String, String> tenantShards = Collections.emptyMap();
+	
+	// null if there is no replica
+	private final DataSource replicaDataSource;
+	private final long replicaMaximumLagSeconds;
+	// replication lag in seconds measured by the last check, -1 if it is unknown (replication stopped or check failed)
+	private volatile long replicaLagSeconds = -1;
 	
 	@Autowired
-	public SmsGatewayDataSource(final @Qualifier("smsGatewayDataSourceJndi") DataSource dataSource) {
-		this.dataSource = dataSource;
+	public SmsGatewayDataSource(final @Qualifier("smsGatewayDataSourceJndi") DataSource jndiDataSource, 
+			final SmsGatewayConnectionPoolFactory connectionPoolFactory, final MetricsRegistry metricsRegistry, 
+			@Value("${datasource.replica}") final String replica, 
+			@Value("${datasource.replica.maxLagSeconds}") final long replicaMaximumLagSeconds) {
+		this.connectionPoolFactory = connectionPoolFactory;
+		this.dataSource = connectionPoolFactory.isEnabled() ? connectionPoolFactory.createDefault() : jndiDataSource;
+		this.replicaDataSource = !StringUtils.hasText(replica) ? null : replica.startsWith(JDBC_URL_PREFIX) 
+				? connectionPoolFactory.create("replica", replica) : this.jndiDataSourceLookup.getDataSource(replica);
+		this.replicaMaximumLagSeconds = replicaMaximumLagSeconds;
+		
+		if (this.replicaDataSource != null) {
+			metricsRegistry.gauge(REPLICA_LAG, () -> this.replicaLagSeconds);
+			metricsRegistry.gauge(REPLICA_AVAILABLE, () -> isReplicaAvailable() ? 1 : 0);
+		}
+	}
+	
+	/** 
+	 * Measure the replication lag of the replica. Reads fall back to the primary while the lag is unknown or above the 
+	 * maximum, the user of the replica needs the REPLICATION CLIENT privilege. 
+	 **/
+	@PostConstruct
+	@Scheduled(fixedDelay = 5000)
+	public void checkReplicaLag() {
+		if (this.replicaDataSource == null) {
+			return;
+		}
+		
+		long replicaLagSeconds = -1;
+		
+		try {
+			final List<Map<String, Object>> rows = new JdbcTemplate(this.replicaDataSource).queryForList("show slave status");
+			final Object secondsBehindMaster = rows.isEmpty() ? null : rows.get(0).get("Seconds_Behind_Master");
+			
+			// null while replication is stopped, no row if the database is not a replica
+			if (secondsBehindMaster instanceof Number) {
+				replicaLagSeconds = ((Number) secondsBehindMaster).longValue();
+			}
+		}
+		
+		catch (Exception e) {
+			logger.error("Failed to check the replication lag of the replica: " + e.getMessage());
+		}
+		
+		// logged once when the replica becomes unavailable
+		if ((replicaLagSeconds < 0 || replicaLagSeconds > this.replicaMaximumLagSeconds) && isReplicaAvailable()) {
+			logger.warn("Reading from the primary, the replication lag of the replica is " 
+					+ ((replicaLagSeconds < 0) ? "unknown" : replicaLagSeconds + " seconds"));
+		}
+		
+		this.replicaLagSeconds = replicaLagSeconds;
+	}
+	
+	private boolean isReplicaAvailable() {
+		final long replicaLagSeconds = this.replicaLagSeconds;
+		
+		return replicaLagSeconds >= 0 && replicaLagSeconds <= this.replicaMaximumLagSeconds;
+	}
+	
+	/** 
+	 * Reload the tenant to shard mapping from the default database 
+	 **/
+	@PostConstruct
+	@Scheduled(fixedDelay = 60000)
+	public void refreshTenantShards() {
+		try {
+			final Map<String, String> tenantShards = new HashMap<>();
+			
+			for (Map<String, Object> row : new JdbcTemplate(this.dataSource).queryForList(
+					"select mifosTenantIdentifier, shard from tenantShard")) {
+				tenantShards.put((String) row.get("mifosTenantIdentifier"), (String) row.get("shard"));
+			}
+			
+			this.tenantShards = tenantShards;
+		}
+		
+		catch (Exception e) {
+			logger.error("Failed to load the tenant shards: " + e.getMessage());
+		}
+	}
+	
+	/** 
+	 * @param mifosTenantIdentifier Mifos X tenant identifier e.g. demo
+	 * @return the shard the messages of the tenant are stored in, null for the default shard
+	 **/
+	public String getShard(final String mifosTenantIdentifier) {
+		return (mifosTenantIdentifier != null) ? this.tenantShards.get(mifosTenantIdentifier) : null;
+	}
+	
+	/** 
+	 * @return all shards, the default shard (null) first
+	 **/
+	public List<String> getShards() {
+		final Set<String> shards = new LinkedHashSet<>();
+		shards.add(null);
+		shards.addAll(this.tenantShards.values());
+		
+		return new ArrayList<>(shards);
+	}
+	
+	/** 
+	 * run a lookup in each shard until it finds something, for lookups by a key that does not name the tenant 
+	 * 
+	 * @param lookup the lookup, null if nothing was found
+	 * @return the first result found, null if nothing was found in any shard
+	 **/
+	public <T> T findInShards(final Supplier<T> lookup) {
+		for (final String shard : getShards()) {
+			final T result = DataSourceShardContext.call(shard, lookup);
+			
+			if (result != null) {
+				return result;
+			}
+		}
+		
+		return null;
 	}
 
 	@Override
 	public Connection getConnection() throws SQLException {
-		return dataSource.getConnection();
+		return determineDataSource().getConnection();
 	}
 
 	@Override
 	public Connection getConnection(String username, String password) throws SQLException {
-		return dataSource.getConnection(username, password);
+		return determineDataSource().getConnection(username, password);
+	}
+	
+	private DataSource determineDataSource() {
+		final String shard = DataSourceShardContext.getShard();
+		
+		if (shard == null) {
+			return (this.replicaDataSource != null && DataSourceShardContext.isReadOnly() && isReplicaAvailable()) 
+					? this.replicaDataSource : this.dataSource;
+		}
+		
+		DataSource shardDataSource = this.shardDataSources.get(shard);
+		
+		if (shardDataSource == null) {
+			// created once per shard, a pool must not be created by two threads
+			synchronized (this.shardDataSources) {
+				shardDataSource = this.shardDataSources.get(shard);
+				
+				if (shardDataSource == null) {
+					// a JNDI name "jdbc/..." is resolved against "java:comp/env/", like the default DataSource
+					shardDataSource = shard.startsWith(JDBC_URL_PREFIX) ? this.connectionPoolFactory.create(shard, shard) 
+							: this.jndiDataSourceLookup.getDataSource(shard);
+					this.shardDataSources.put(shard, shardDataSource);
+				}
+			}
+		}
+		
+		return shardDataSource;
 	}
 }
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import org.mifos.sms.gateway.SmsGatewayExecutor;
+import org.mifos.sms.gateway.infobip.SmsGatewayHelper;
+import org.mifos.sms.scheduler.SmsOutboundMessageScheduledJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stops the message pipeline when the application context is closed, before the beans are destroyed, so that a rolling
+ * restart loses no message: no message is claimed anymore, the submits in flight end and their results are recorded,
+ * the delivery reports being processed and the queued webhook status changes are flushed and the SMPP session is
+ * unbound. The messages claimed but not submitted yet are given back (PENDING) to the other nodes right away.
+ *
+ * The waits share one deadline, "gateway.shutdown.timeoutMillis" (gateway.properties). The messages whose submit has
+ * not ended by then are not given back but marked FAILED, they may have reached the gateway.
+ **/
+@Service
+public class SmsGatewayLifecycleManager {
+    private static final Logger logger = LoggerFactory.getLogger(SmsGatewayLifecycleManager.class);
+
+    private final SmsOutboundMessageScheduledJobService smsOutboundMessageScheduledJobService;
+    private final SmsGatewayExecutor smsGatewayExecutor;
+    private final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher;
+    private final SmsGatewayHelper smsGatewayHelper;
+    private final long timeoutMillis;
+
+    @Autowired
+    public SmsGatewayLifecycleManager(final SmsOutboundMessageScheduledJobService smsOutboundMessageScheduledJobService,
+            final SmsGatewayExecutor smsGatewayExecutor,
+            final DeliveryStatusWebhookDispatcher deliveryStatusWebhookDispatcher,
+            final SmsGatewayHelper smsGatewayHelper,
+            @Value("${gateway.shutdown.timeoutMillis}") final long timeoutMillis) {
+        this.smsOutboundMessageScheduledJobService = smsOutboundMessageScheduledJobService;
+        this.smsGatewayExecutor = smsGatewayExecutor;
+        this.deliveryStatusWebhookDispatcher = deliveryStatusWebhookDispatcher;
+        this.smsGatewayHelper = smsGatewayHelper;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * stop the message pipeline, see the class comment
+     **/
+    public void shutdown() {
+        final long deadlineMillis = System.currentTimeMillis() + this.timeoutMillis;
+
+        this.smsOutboundMessageScheduledJobService.stop();
+
+        try {
+            if (!this.smsOutboundMessageScheduledJobService.awaitTermination(remainingMillis(deadlineMillis))) {
+                logger.warn("Submits still in flight after " + this.timeoutMillis + " milliseconds");
+            }
+
+            if (!this.smsGatewayExecutor.awaitIdle(SmsGatewayExecutor.DELIVERY_REPORT, remainingMillis(deadlineMillis))) {
+                logger.warn("Delivery reports still being processed after " + this.timeoutMillis + " milliseconds");
+            }
+
+            this.deliveryStatusWebhookDispatcher.drain(remainingMillis(deadlineMillis));
+        }
+
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // do not allow reconnection, the SMSC keeps the delivery reports of an unbound session for the other nodes
+        this.smsGatewayHelper.reconnect = false;
+        this.smsGatewayHelper.unbindAndCloseSession();
+
+        final int failed = this.smsOutboundMessageScheduledJobService.failInterruptedClaim();
+
+        if (failed > 0) {
+            logger.warn(failed + " messages whose submit did not end were marked FAILED");
+        }
+
+        logger.info("Message pipeline stopped");
+    }
+
+    private static long remainingMillis(final long deadlineMillis) {
+        return Math.max(deadlineMillis - System.currentTimeMillis(), 0);
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.mifos.sms.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mifos.sms.domain.SmsMessageBody;
+import org.mifos.sms.domain.SmsMessageBodyRepository;
+import org.mifos.sms.metrics.Counter;
+import org.mifos.sms.metrics.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Content-addressed storage of the message texts: each distinct text is stored once in the smsMessageBody table of the
+ * shard, keyed by its SHA-256 hash, and the messages refer to it by id (smsOutboundMessage.messageBodyId). The tenants
+ * send the same reminders to thousands of clients, the hot bodies are kept in LRU caches of "api.messageBody.cacheSize"
+ * entries keyed by shard and text, so that a cached text is neither hashed nor looked up in the DB and a body is not
+ * loaded again for each message, and all the messages sent with a body share one String instance.
+ *
+ * Works in the shard of the current thread (see {@link DataSourceShardContext}), outside any transaction: the new bodies
+ * are added with one multi-row insert per {@link #INSERT_CHUNK_SIZE} texts, each in a transaction of its own, so that
+ * they are visible to a concurrent request adding the same texts. A body whose messages were rolled back stays and is
+ * reused. Personalized texts are mostly distinct, a batch of them costs a few statements rather than one per text.
+ **/
+@Component
+public class SmsMessageBodyStore {
+    public static final String CACHE_HITS = "sms.message.body.cache.hits";
+    public static final String CACHE_MISSES = "sms.message.body.cache.misses";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int IN_LIST_CHUNK_SIZE = 1000;
+    // the texts can be long (MEDIUMTEXT), a chunk stays well below max_allowed_packet
+    private static final int INSERT_CHUNK_SIZE = 100;
+
+    private final SmsMessageBodyRepository smsMessageBodyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter hits;
+    private final Counter misses;
+    // shard and text to body id
+    private final Map<TextKey, Long> bodyIds;
+    // shard and body id to text
+    private final Map<String, String> messages;
+
+    @Autowired
+    public SmsMessageBodyStore(final SmsMessageBodyRepository smsMessageBodyRepository,
+            final SmsGatewayDataSource smsGatewayDataSource, final MetricsRegistry metricsRegistry,
+            @Value("${api.messageBody.cacheSize}") final int cacheSize) {
+        this.smsMessageBodyRepository = smsMessageBodyRepository;
+        this.jdbcTemplate = new JdbcTemplate(smsGatewayDataSource);
+        this.hits = metricsRegistry.counter(CACHE_HITS);
+        this.misses = metricsRegistry.counter(CACHE_MISSES);
+        this.bodyIds = new LruMap<>(cacheSize);
+        this.messages = new LruMap<>(cacheSize);
+    }
+
+    /**
+     * find the bodies of the texts, adding the texts that are not stored yet
+     *
+     * @param messages the texts
+     * @return the body id of each text
+     **/
+    public Map<String, Long> getBodyIds(final Collection<String> messages) {
+        final String shard = shardKey();
+        final Map<String, Long> bodyIds = new HashMap<>();
+        // hash to text of the texts that are not cached
+        final Map<String, String> missingMessages = new HashMap<>();
+
+        for (final String message : new HashSet<>(messages)) {
+            final Long bodyId;
+
+            synchronized (this.bodyIds) {
+                bodyId = this.bodyIds.get(new TextKey(shard, message));
+            }
+
+            if (bodyId != null) {
+                this.hits.increment();
+                bodyIds.put(message, bodyId);
+            }
+
+            else {
+                this.misses.increment();
+                missingMessages.put(hash(message), message);
+            }
+        }
+
+        if (!missingMessages.isEmpty()) {
+            findBodyIds(shard, missingMessages, bodyIds);
+
+            // the remaining texts are new, a concurrent request may add the same text in the meantime
+            insertIfAbsent(new ArrayList<>(missingMessages.entrySet()));
+
+            findBodyIds(shard, missingMessages, bodyIds);
+
+            if (!missingMessages.isEmpty()) {
+                throw new IllegalStateException("Failed to add " + missingMessages.size() + " message bodies");
+            }
+        }
+
+        return bodyIds;
+    }
+
+    /**
+     * @param bodyIds the body ids
+     * @return the text of each body
+     **/
+    public Map<Long, String> getMessages(final Collection<Long> bodyIds) {
+        final String shard = shardKey();
+        final Map<Long, String> messages = new HashMap<>();
+        final List<Long> missingBodyIds = new ArrayList<>();
+
+        for (final Long bodyId : new HashSet<>(bodyIds)) {
+            final String message;
+
+            synchronized (this.messages) {
+                message = this.messages.get(shard + bodyId);
+            }
+
+            if (message != null) {
+                this.hits.increment();
+                messages.put(bodyId, message);
+            }
+
+            else {
+                this.misses.increment();
+                missingBodyIds.add(bodyId);
+            }
+        }
+
+        for (int fromIndex = 0; fromIndex < missingBodyIds.size(); fromIndex += IN_LIST_CHUNK_SIZE) {
+            for (final SmsMessageBody smsMessageBody : this.smsMessageBodyRepository.findAll(
+                    missingBodyIds.subList(fromIndex, Math.min(fromIndex + IN_LIST_CHUNK_SIZE, missingBodyIds.size())))) {
+                cache(shard, smsMessageBody.getId(), smsMessageBody.getMessage());
+                messages.put(smsMessageBody.getId(), smsMessageBody.getMessage());
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * look up the bodies of the missing texts, the texts that were found are removed from the missing texts
+     **/
+    private void findBodyIds(final String shard, final Map<String, String> missingMessages, final Map<String, Long> bodyIds) {
+        final List<String> hashes = new ArrayList<>(missingMessages.keySet());
+
+        for (int fromIndex = 0; fromIndex < hashes.size(); fromIndex += IN_LIST_CHUNK_SIZE) {
+            for (final SmsMessageBody smsMessageBody : this.smsMessageBodyRepository.findByHashIn(
+                    hashes.subList(fromIndex, Math.min(fromIndex + IN_LIST_CHUNK_SIZE, hashes.size())))) {
+                final String message = missingMessages.remove(smsMessageBody.getHash());
+
+                if (message != null) {
+                    cache(shard, smsMessageBody.getId(), message);
+                    bodyIds.put(message, smsMessageBody.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * add the bodies of the texts unless a body with the same hash exists, one "insert ignore" statement per chunk
+     *
+     * @param messages hash and text of the texts
+     **/
+    private void insertIfAbsent(final List<Map.Entry<String, String>> messages) {
+        for (int fromIndex = 0; fromIndex < messages.size(); fromIndex += INSERT_CHUNK_SIZE) {
+            final List<Map.Entry<String, String>> chunk = messages.subList(fromIndex,
+                    Math.min(fromIndex + INSERT_CHUNK_SIZE, messages.size()));
+            final StringBuilder sql = new StringBuilder("insert ignore into smsMessageBody (hash, message) values ");
+            final Object[] parameters = new Object[chunk.size() * 2];
+
+            for (int index = 0; index < chunk.size(); index++) {
+                sql.append((index == 0) ? "(?, ?)" : ", (?, ?)");
+                parameters[index * 2] = chunk.get(index).getKey();
+                parameters[index * 2 + 1] = chunk.get(index).getValue();
+            }
+
+            this.jdbcTemplate.update(sql.toString(), parameters);
+        }
+    }
+
+    private void cache(final String shard, final Long bodyId, final String message) {
+        synchronized (this.bodyIds) {
+            this.bodyIds.put(new TextKey(shard, message), bodyId);
+        }
+
+        synchronized (this.messages) {
+            this.messages.put(shard + bodyId, message);
+        }
+    }
+
+    /**
+     * @return the prefix of the cache keys of the shard of the current thread
+     **/
+    private static String shardKey() {
+        final String shard = DataSourceShardContext.getShard();
+
+        return ((shard != null) ? shard : "") + '/';
+    }
+
+    /**
+     * @return the SHA-256 hash of the UTF-8 encoded text, in hex
+     **/
+    private static String hash(final String message) {
+        final byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(message.getBytes(StandardCharsets.UTF_8));
+        }
+
+        catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        final char[] hash = new char[digest.length * 2];
+
+        for (int index = 0; index < digest.length; index++) {
+            hash[index * 2] = HEX_DIGITS[(digest[index] >> 4) & 0xf];
+            hash[index * 2 + 1] = HEX_DIGITS[digest[index] & 0xf];
+        }
+
+        return new String(hash);
+    }
+
+    /**
+     * cache key of a text in a shard, the hash code of the text is computed once per String instance
+     **/
+    private static final class TextKey {
+        private final String shard;
+        private final String message;
+
+        private TextKey(final String shard, final String message) {
+            this.shard = shard;
+            this.message = message;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof TextKey)) {
+                return false;
+            }
+
+            final TextKey textKey = (TextKey) object;
+
+            return this.shard.equals(textKey.shard) && this.message.equals(textKey.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.shard.hashCode() + this.message.hashCode();
+        }
+    }
+
+    /**
+     * access ordered map that evicts the least recently used entry beyond its maximum size
+     **/
+    private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maximumSize;
+
+        private LruMap(final int maximumSize) {
+            super(16, 0.75f, true);
+
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > this.maximumSize;
+        }
+    }
+}
@@ -13,7 +13,8 @@ import org.mifos.sms.domain.SmsOutboundMessage;
 public interface WriteSmsOutboundMessageService {
 	
 	/** 
-	 * add a new outbound SMS message entry to the smsOutboundMessage table 
+	 * add a new outbound SMS message entry to the smsOutboundMessage table, unless a message with the same tenant and 
+	 * internal id was already added 
 	 **/
 	public List<SmsOutboundMessageResponseData> create(final List<SmsOutboundMessage> smsOutboundMessages);
 }
@@ -1,64 +1,263 @@
 package org.mifos.sms.service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.mifos.sms.data.SmsOutboundMessageResponseData;
+import org.mifos.sms.data.SmsOutboundMessageStatusData;
+import org.mifos.sms.domain.SmsMessageStatusType;
 import org.mifos.sms.domain.SmsOutboundMessage;
 import org.mifos.sms.domain.SmsOutboundMessageRepository;
+import org.mifos.sms.helper.HelperClass.DateTimeConverter;
+import org.mifos.sms.helper.SmsSegmenter;
+import org.mifos.sms.metrics.SmsPipelineMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 @Service
 public class WriteSmsOutboundMessageServiceImpl implements WriteSmsOutboundMessageService {
+	private static final Logger logger = LoggerFactory.getLogger(WriteSmsOutboundMessageServiceImpl.class);
+
+	private static final int IN_LIST_CHUNK_SIZE = 1000;
+
+	// a concurrent request may add the same message between the lookup and the insert, the second attempt finds it
+	private static final int MAXIMUM_ATTEMPTS = 2;
+
 	private final SmsOutboundMessageRepository smsOutboundMessageRepository;
-	
+	private final SmsPipelineMetrics smsPipelineMetrics;
+	private final IngestDeduplicationFilter ingestDeduplicationFilter;
+	private final TransactionTemplate transactionTemplate;
+	private final SmsGatewayDataSource smsGatewayDataSource;
+	private final MobileNumberNormalizer mobileNumberNormalizer;
+	private final SmsMessageBodyStore smsMessageBodyStore;
+
 	@Autowired
-	public WriteSmsOutboundMessageServiceImpl(SmsOutboundMessageRepository smsOutboundMessageRepository) {
+	public WriteSmsOutboundMessageServiceImpl(SmsOutboundMessageRepository smsOutboundMessageRepository,
+			SmsPipelineMetrics smsPipelineMetrics, IngestDeduplicationFilter ingestDeduplicationFilter,
+			PlatformTransactionManager transactionManager, SmsGatewayDataSource smsGatewayDataSource,
+			MobileNumberNormalizer mobileNumberNormalizer, SmsMessageBodyStore smsMessageBodyStore) {
 		this.smsOutboundMessageRepository = smsOutboundMessageRepository;
+		this.smsPipelineMetrics = smsPipelineMetrics;
+		this.ingestDeduplicationFilter = ingestDeduplicationFilter;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.smsGatewayDataSource = smsGatewayDataSource;
+		this.mobileNumberNormalizer = mobileNumberNormalizer;
+		this.smsMessageBodyStore = smsMessageBodyStore;
 	}
 
-	@Transactional
+	/**
+	 * add the messages that are not in the smsOutboundMessage table yet. A message is identified by its tenant and
+	 * internal id, for a message that was already added the id and status of the existing entry are returned. The mobile
+	 * numbers are normalized to E.164, a message to an invalid number or longer than the 255 segments of a concatenated
+	 * SMS is rejected without being added.
+	 **/
 	@Override
 	public List<SmsOutboundMessageResponseData> create(List<SmsOutboundMessage> smsOutboundMessages) {
-		
-		Iterator<SmsOutboundMessage> iterator = smsOutboundMessages.iterator();
-		List<SmsOutboundMessageResponseData> smsOutboundMessagesResponseData = new ArrayList<>();
-		
-		while(iterator.hasNext()) {
-			SmsOutboundMessage smsOutboundMessage = iterator.next();
-			
+		final SmsOutboundMessageResponseData[] smsOutboundMessagesResponseData =
+				new SmsOutboundMessageResponseData[smsOutboundMessages.size()];
+		// index of the first occurrence of each message that has to be looked up or added, by tenant and internal id
+		final Map<String, Map<Long, Integer>> pendingIndexes = new LinkedHashMap<>();
+		// index of a message repeated within the request, mapped to the index of its first occurrence
+		final Map<Integer, Integer> repeatedIndexes = new HashMap<>();
+
+		for (int index = 0; index < smsOutboundMessages.size(); index++) {
+			SmsOutboundMessage smsOutboundMessage = smsOutboundMessages.get(index);
+
 			// check if message object has values for mandatory parameters
-			if(!StringUtils.isEmpty(smsOutboundMessage.getInternalId()) && 
-					!StringUtils.isEmpty(smsOutboundMessage.getMifosTenantIdentifier()) && 
-					!StringUtils.isEmpty(smsOutboundMessage.getSourceAddress()) && 
-					!StringUtils.isEmpty(smsOutboundMessage.getMobileNumber()) && 
-					!StringUtils.isEmpty(smsOutboundMessage.getMessage())) {
-				
-				// set "addedOnDate" to today
-				smsOutboundMessage.setAddedOnDate(new Date());
-				
-				// insert to the sms outbound message into the "smsOutboundMessage" table
-				smsOutboundMessageRepository.save(smsOutboundMessage);
-				
-				// add a response data object to the "SmsOutboundMessageResponseData" list
-				smsOutboundMessagesResponseData.add(SmsOutboundMessageResponseData.getInstance(smsOutboundMessage.getInternalId(), 
-						smsOutboundMessage.getId(), smsOutboundMessage.getAddedOnDate().toString(), null, 
-						smsOutboundMessage.getDeliveryStatus(), false, null));
+			if(StringUtils.isEmpty(smsOutboundMessage.getInternalId()) ||
+					StringUtils.isEmpty(smsOutboundMessage.getMifosTenantIdentifier()) ||
+					StringUtils.isEmpty(smsOutboundMessage.getSourceAddress()) ||
+					StringUtils.isEmpty(smsOutboundMessage.getMobileNumber()) ||
+					StringUtils.isEmpty(smsOutboundMessage.getMessage())) {
+
+				// validation errors exist
+				smsOutboundMessagesResponseData[index] = SmsOutboundMessageResponseData.getInstance(smsOutboundMessage.getInternalId(),
+						smsOutboundMessage.getId(), null, null, null, null, null, null, null, null, true,
+						"Missing value for one or more mandatory parameters");
+				continue;
+			}
+
+			final String mobileNumber = this.mobileNumberNormalizer.normalize(smsOutboundMessage.getMobileNumber());
+
+			if (mobileNumber == null) {
+				smsOutboundMessagesResponseData[index] = SmsOutboundMessageResponseData.getInstance(smsOutboundMessage.getInternalId(),
+						smsOutboundMessage.getId(), null, null, null, null, null, null, null, null, true,
+						"Invalid mobile number " + smsOutboundMessage.getMobileNumber());
+				this.smsPipelineMetrics.messageRejected(smsOutboundMessage.getMifosTenantIdentifier());
+				continue;
+			}
+
+			if (SmsSegmenter.isTooLong(smsOutboundMessage.getMessage())) {
+				smsOutboundMessagesResponseData[index] = SmsOutboundMessageResponseData.getInstance(smsOutboundMessage.getInternalId(),
+						smsOutboundMessage.getId(), null, null, null, null, null, null, null, null, true,
+						"Message longer than " + SmsSegmenter.MAXIMUM_SEGMENTS + " segments");
+				this.smsPipelineMetrics.messageRejected(smsOutboundMessage.getMifosTenantIdentifier());
+				continue;
+			}
+
+			// the message is stored and sent with the normalized number
+			smsOutboundMessage.setMobileNumber(mobileNumber);
+
+			// a retry of a recent request is answered from memory
+			final SmsOutboundMessageResponseData recentResponseData = this.ingestDeduplicationFilter.get(
+					smsOutboundMessage.getMifosTenantIdentifier(), smsOutboundMessage.getInternalId());
+
+			if (recentResponseData != null) {
+				smsOutboundMessagesResponseData[index] = recentResponseData;
+				continue;
 			}
-			
+
+			Map<Long, Integer> tenantIndexes = pendingIndexes.get(smsOutboundMessage.getMifosTenantIdentifier());
+
+			if (tenantIndexes == null) {
+				tenantIndexes = new LinkedHashMap<>();
+				pendingIndexes.put(smsOutboundMessage.getMifosTenantIdentifier(), tenantIndexes);
+			}
+
+			final Integer firstIndex = tenantIndexes.get(smsOutboundMessage.getInternalId());
+
+			if (firstIndex != null) {
+				repeatedIndexes.put(index, firstIndex);
+			}
+
 			else {
-				// validation errors exist
-				// add a response data object to the "SmsOutboundMessageResponseData" list
-				smsOutboundMessagesResponseData.add(SmsOutboundMessageResponseData.getInstance(smsOutboundMessage.getInternalId(), 
-						smsOutboundMessage.getId(), null, null, null, true, "Missing value for one or more mandatory parameters"));
+				tenantIndexes.put(smsOutboundMessage.getInternalId(), index);
 			}
 		}
-		
-		return smsOutboundMessagesResponseData;
+
+		if (!pendingIndexes.isEmpty()) {
+			addPendingMessages(smsOutboundMessages, pendingIndexes, smsOutboundMessagesResponseData);
+		}
+
+		for (Map.Entry<Integer, Integer> repeatedIndex : repeatedIndexes.entrySet()) {
+			smsOutboundMessagesResponseData[repeatedIndex.getKey()] = smsOutboundMessagesResponseData[repeatedIndex.getValue()];
+		}
+
+		return Arrays.asList(smsOutboundMessagesResponseData);
+	}
+
+	/**
+	 * look up and add the pending messages, in one transaction per tenant in the shard of the tenant
+	 **/
+	private void addPendingMessages(final List<SmsOutboundMessage> smsOutboundMessages,
+			final Map<String, Map<Long, Integer>> pendingIndexes, final SmsOutboundMessageResponseData[] smsOutboundMessagesResponseData) {
+		final List<SmsOutboundMessage> addedMessages = new ArrayList<>();
+
+		for (Map.Entry<String, Map<Long, Integer>> tenantIndexes : pendingIndexes.entrySet()) {
+			DataSourceShardContext.run(this.smsGatewayDataSource.getShard(tenantIndexes.getKey()), () -> addPendingMessages(
+					smsOutboundMessages, tenantIndexes.getKey(), tenantIndexes.getValue(), smsOutboundMessagesResponseData, addedMessages));
+		}
+
+		for (SmsOutboundMessage addedMessage : addedMessages) {
+			smsPipelineMetrics.messageQueued(addedMessage.getMifosTenantIdentifier());
+		}
+
+		for (Map.Entry<String, Map<Long, Integer>> tenantIndexes : pendingIndexes.entrySet()) {
+			for (Integer index : tenantIndexes.getValue().values()) {
+				this.ingestDeduplicationFilter.put(tenantIndexes.getKey(), smsOutboundMessagesResponseData[index]);
+			}
+		}
+	}
+
+	/**
+	 * look up and add the pending messages of a tenant in one transaction, retried once if a concurrent request added one
+	 * of them. The texts are stored first, each distinct text once, outside the transaction.
+	 **/
+	private void addPendingMessages(final List<SmsOutboundMessage> smsOutboundMessages, final String mifosTenantIdentifier,
+			final Map<Long, Integer> indexes, final SmsOutboundMessageResponseData[] smsOutboundMessagesResponseData,
+			final List<SmsOutboundMessage> addedMessages) {
+		final List<SmsOutboundMessage> tenantAddedMessages = new ArrayList<>();
+		final List<String> messages = new ArrayList<>(indexes.size());
+
+		for (Integer index : indexes.values()) {
+			messages.add(smsOutboundMessages.get(index).getMessage());
+		}
+
+		final Map<String, Long> messageBodyIds = this.smsMessageBodyStore.getBodyIds(messages);
+
+		for (int attempt = 1; ; attempt++) {
+			tenantAddedMessages.clear();
+
+			try {
+				this.transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						addTenantMessages(smsOutboundMessages, mifosTenantIdentifier, indexes, messageBodyIds,
+								smsOutboundMessagesResponseData, tenantAddedMessages);
+					}
+				});
+				break;
+			}
+
+			catch (DataIntegrityViolationException e) {
+				if (attempt >= MAXIMUM_ATTEMPTS) {
+					throw e;
+				}
+
+				logger.info("A message was added by a concurrent request, looking up the existing messages again");
+			}
+		}
+
+		addedMessages.addAll(tenantAddedMessages);
+	}
+
+	private void addTenantMessages(final List<SmsOutboundMessage> smsOutboundMessages, final String mifosTenantIdentifier,
+			final Map<Long, Integer> indexes, final Map<String, Long> messageBodyIds,
+			final SmsOutboundMessageResponseData[] smsOutboundMessagesResponseData,
+			final List<SmsOutboundMessage> addedMessages) {
+		final List<Long> internalIds = new ArrayList<>(indexes.keySet());
+		final Map<Long, SmsOutboundMessageStatusData> existingMessages = new HashMap<>();
+
+		for (int fromIndex = 0; fromIndex < internalIds.size(); fromIndex += IN_LIST_CHUNK_SIZE) {
+			for (SmsOutboundMessageStatusData existingMessage : this.smsOutboundMessageRepository.findStatusDataByInternalIds(
+					mifosTenantIdentifier, internalIds.subList(fromIndex, Math.min(fromIndex + IN_LIST_CHUNK_SIZE, internalIds.size())))) {
+				existingMessages.put(existingMessage.getInternalId(), existingMessage);
+			}
+		}
+
+		for (Map.Entry<Long, Integer> index : indexes.entrySet()) {
+			final SmsOutboundMessageStatusData existingMessage = existingMessages.get(index.getKey());
+
+			if (existingMessage != null) {
+				// already added by an earlier request, return its id and status
+				smsOutboundMessagesResponseData[index.getValue()] = existingMessage.toResponseData(
+						SmsMessageStatusType.fromInt(existingMessage.getDeliveryStatus()), null);
+				continue;
+			}
+
+			final SmsOutboundMessage requestMessage = smsOutboundMessages.get(index.getValue());
+
+			// set "addedOnDate" to today and "queuedOnDateTime" to now, a new entity is saved each attempt so that a
+			// rolled back attempt does not leave an id behind
+			Date now = new Date();
+			SmsOutboundMessage smsOutboundMessage = SmsOutboundMessage.getPendingMessages(requestMessage.getExternalId(),
+					requestMessage.getInternalId(), mifosTenantIdentifier, requestMessage.getCreatedOnDate(), null, now, null,
+					null, requestMessage.getSourceAddress(), requestMessage.getMobileNumber(), null);
+			smsOutboundMessage.setMessageBodyId(messageBodyIds.get(requestMessage.getMessage()));
+			smsOutboundMessage.setQueuedOnDateTime(now);
+
+			// insert to the sms outbound message into the "smsOutboundMessage" table
+			smsOutboundMessageRepository.save(smsOutboundMessage);
+			addedMessages.add(smsOutboundMessage);
+
+			// add a response data object to the "SmsOutboundMessageResponseData" list
+			smsOutboundMessagesResponseData[index.getValue()] = SmsOutboundMessageResponseData.getInstance(
+					smsOutboundMessage.getInternalId(), smsOutboundMessage.getId(), smsOutboundMessage.getAddedOnDate().toString(),
+					null, DateTimeConverter.toDateTimeString(smsOutboundMessage.getQueuedOnDateTime()), null, null, null, null,
+					smsOutboundMessage.getDeliveryStatus(), false, null);
+		}
 	}
 }
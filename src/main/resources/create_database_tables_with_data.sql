@@ -11,12 +11,88 @@ create table if not exists smsOutboundMessage (
  submittedOnDate date null comment 'This is the date the message was submitted to the sms gateway',
  addedOnDate date not null comment 'This is the date the message was added to this table',
  deliveredOnDate date null comment 'This is the date that an attempt was made by the sms gateway to deliver the message',
+ queuedOnDateTime datetime(3) null comment 'This is the date and time the message was added to this table',
+ claimedOnDateTime datetime(3) null comment 'This is the date and time the message was picked up by the send job',
+ claimedBy varchar(36) null comment 'Identifies the send job run that claimed the message',
+ gateway varchar(50) null comment 'Name of the sms gateway the message was submitted to, e.g. infobip',
+ submittedOnDateTime datetime(3) null comment 'This is the date and time the message was submitted to the sms gateway',
+ acknowledgedOnDateTime datetime(3) null comment 'This is the date and time the sms gateway accepted the message',
+ deliveredOnDateTime datetime(3) null comment 'This is the date and time the message was delivered to the recipient phone',
+ statusSequence bigint(20) null comment 'Value of the status sequence when the message was added or its status last changed',
+ statusSequenceOnDateTime datetime(3) null comment 'Date and time the status sequence was taken, by the database clock',
  deliveryStatus int(5) not null default 100,
  deliveryErrorMessage varchar(200) null,
  mobileNumber varchar(50) not null,
  sourceAddress varchar(50) not null comment 'Sender of the SMS message.',
- message varchar(254) not null,
- unique key externalId (externalId)
+ message varchar(254) null comment 'Text of the messages added before smsMessageBody existed',
+ messageBodyId bigint(20) null comment 'Id of the text in the smsMessageBody table',
+ unique key externalId (externalId),
+ unique key mifosTenantIdentifier_internalId (mifosTenantIdentifier, internalId),
+ key mifosTenantIdentifier_statusSequence (mifosTenantIdentifier, statusSequence),
+ key mifosTenantIdentifier_statusSequenceOnDateTime (mifosTenantIdentifier, statusSequenceOnDateTime, statusSequence),
+ key deliveryStatus (deliveryStatus),
+ key claimedBy (claimedBy)
+);
+
+-- distinct texts of the messages, see SmsMessageBodyStore
+create table if not exists smsMessageBody (
+ id bigint(20) primary key not null auto_increment,
+ hash char(64) character set ascii not null comment 'SHA-256 hash of the UTF-8 encoded text, in hex',
+ message mediumtext not null comment 'Up to 255 segments, see SmsSegmenter',
+ unique key hash (hash)
+);
+
+-- ticket table of the status sequence, insert only so that taking a value locks neither the table nor a row until
+-- commit; the old tickets are deleted by the send job scheduler. The values are taken before commit,
+-- "/sms/report/changes" holds the recent ones back (statusSequenceOnDateTime)
+create table if not exists smsOutboundMessageStatusSequence (
+ id bigint(20) not null auto_increment,
+ stub char(1) not null default '',
+ primary key (id)
+) engine=InnoDB;
+
+delimiter $$
+
+create trigger smsOutboundMessage_statusSequence_insert before insert on smsOutboundMessage
+for each row
+begin
+ insert into smsOutboundMessageStatusSequence (stub) values ('a');
+ set new.statusSequence = last_insert_id();
+ set new.statusSequenceOnDateTime = sysdate(3);
+end$$
+
+create trigger smsOutboundMessage_statusSequence_update before update on smsOutboundMessage
+for each row
+begin
+ if new.deliveryStatus <> old.deliveryStatus then
+  insert into smsOutboundMessageStatusSequence (stub) values ('a');
+  set new.statusSequence = last_insert_id();
+  set new.statusSequenceOnDateTime = sysdate(3);
+ end if;
+end$$
+
+delimiter ;
+
+create table if not exists tenantWebhook (
+mifosTenantIdentifier varchar(100) primary key,
+url varchar(500) not null comment 'URL the status changes are POSTed to',
+authorizationHeader varchar(500) null comment 'Value of the Authorization header sent with each request',
+isEnabled tinyint(1) not null default 1
+);
+
+create table if not exists tenantShard (
+mifosTenantIdentifier varchar(100) primary key,
+shard varchar(200) not null comment 'JNDI name of the DataSource of the shard e.g. jdbc/mifos-sms-gateway-shard1'
+);
+
+create table if not exists smsGatewayRoute (
+id bigint(20) primary key not null auto_increment,
+mifosTenantIdentifier varchar(100) null comment 'Tenant the route applies to, null for all tenants',
+prefix varchar(15) null comment 'Leading digits of the mobile number (country code first, without +) the route applies to, null for all numbers',
+gateway varchar(50) not null comment 'Name of the sms gateway: infobip, smpp or simulator',
+cost decimal(10,5) not null default 0 comment 'Cost of a message on the route, the cheapest healthy route is used',
+weight int(11) not null default 100 comment 'Share of the traffic of the route among the healthy routes of the same prefix and cost, adjusted with its live statistics',
+isEnabled tinyint(1) not null default 1
 );
 
 create table if not exists configuration (
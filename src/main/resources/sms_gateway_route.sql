@@ -0,0 +1,9 @@
+-- Routes of the messages to the SMS gateways, see SmsGatewayRouter
+create table if not exists smsGatewayRoute (
+id bigint(20) primary key not null auto_increment,
+mifosTenantIdentifier varchar(100) null comment 'Tenant the route applies to, null for all tenants',
+prefix varchar(15) null comment 'Leading digits of the mobile number (country code first, without +) the route applies to, null for all numbers',
+gateway varchar(50) not null comment 'Name of the sms gateway: infobip, smpp or simulator',
+cost decimal(10,5) not null default 0 comment 'Cost of a message on the route, the cheapest healthy route is used',
+isEnabled tinyint(1) not null default 1
+);
@@ -0,0 +1,3 @@
+-- Weight of a route among the routes of the same prefix and cost, see SmsGatewayRouteTable
+ALTER TABLE `smsGatewayRoute`
+ ADD COLUMN `weight` INT(11) NOT NULL DEFAULT 100 COMMENT 'Share of the traffic of the route among the healthy routes of the same prefix and cost, adjusted with its live statistics' AFTER `cost`;
@@ -0,0 +1,20 @@
+-- Distinct texts of the SMS messages, stored once and referenced by smsOutboundMessage.messageBodyId, see
+-- SmsMessageBodyStore. Run in the default database and in every shard.
+CREATE TABLE IF NOT EXISTS `smsMessageBody` (
+ `id` BIGINT(20) PRIMARY KEY NOT NULL AUTO_INCREMENT,
+ `hash` CHAR(64) CHARACTER SET ascii NOT NULL COMMENT 'SHA-256 hash of the UTF-8 encoded text, in hex',
+ `message` VARCHAR(254) NOT NULL,
+ UNIQUE KEY `hash` (`hash`)
+);
+
+ALTER TABLE `smsOutboundMessage`
+ MODIFY COLUMN `message` VARCHAR(254) NULL COMMENT 'Text of the messages added before smsMessageBody existed',
+ ADD COLUMN `messageBodyId` BIGINT(20) NULL COMMENT 'Id of the text in the smsMessageBody table' AFTER `message`;
+
+-- Optional: move the texts of the existing messages to smsMessageBody, run it in chunks of ids on a large table
+INSERT IGNORE INTO `smsMessageBody` (`hash`, `message`)
+ SELECT DISTINCT SHA2(`message`, 256), `message` FROM `smsOutboundMessage` WHERE `message` IS NOT NULL;
+
+UPDATE `smsOutboundMessage` `outboundMessage` JOIN `smsMessageBody` `body` ON `body`.`hash` = SHA2(`outboundMessage`.`message`, 256)
+ SET `outboundMessage`.`messageBodyId` = `body`.`id`, `outboundMessage`.`message` = NULL
+ WHERE `outboundMessage`.`message` IS NOT NULL;
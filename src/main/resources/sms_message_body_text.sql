@@ -0,0 +1,4 @@
+-- Texts of up to 255 segments (about 17000 characters of UCS2 text, 4 bytes each in utf8mb4), see SmsSegmenter.
+-- Run in the default database and in every shard.
+ALTER TABLE `smsMessageBody`
+ MODIFY COLUMN `message` MEDIUMTEXT NOT NULL;
@@ -0,0 +1,4 @@
+-- Messages are claimed (deliveryStatus SUBMITTING, 120) by a send job run before they are submitted to the sms gateway
+ALTER TABLE `smsOutboundMessage`
+ ADD COLUMN `claimedBy` VARCHAR(36) NULL COMMENT 'Identifies the send job run that claimed the message' AFTER `claimedOnDateTime`,
+ ADD INDEX `claimedBy` (`claimedBy`);
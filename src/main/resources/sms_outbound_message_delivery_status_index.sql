@@ -0,0 +1,2 @@
+-- Used by the send job (pending messages) and the delivery report reconciliation (overdue messages, by id)
+ALTER TABLE `smsOutboundMessage` ADD INDEX `deliveryStatus` (`deliveryStatus`);
@@ -0,0 +1,3 @@
+-- Name of the SMS gateway (smsGatewayRoute.gateway) a message was submitted to, null for messages submitted before
+ALTER TABLE `smsOutboundMessage`
+ ADD COLUMN `gateway` VARCHAR(50) NULL COMMENT 'Name of the sms gateway the message was submitted to, e.g. infobip' AFTER `claimedBy`;
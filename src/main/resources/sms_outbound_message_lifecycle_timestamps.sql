@@ -0,0 +1,7 @@
+-- Millisecond precision lifecycle timestamps (requires MySQL 5.6.4 or later for fractional seconds)
+ALTER TABLE `smsOutboundMessage`
+ ADD COLUMN `queuedOnDateTime` DATETIME(3) NULL COMMENT 'This is the date and time the message was added to this table' AFTER `deliveredOnDate`,
+ ADD COLUMN `claimedOnDateTime` DATETIME(3) NULL COMMENT 'This is the date and time the message was picked up by the send job' AFTER `queuedOnDateTime`,
+ ADD COLUMN `submittedOnDateTime` DATETIME(3) NULL COMMENT 'This is the date and time the message was submitted to the sms gateway' AFTER `claimedOnDateTime`,
+ ADD COLUMN `acknowledgedOnDateTime` DATETIME(3) NULL COMMENT 'This is the date and time the sms gateway accepted the message' AFTER `submittedOnDateTime`,
+ ADD COLUMN `deliveredOnDateTime` DATETIME(3) NULL COMMENT 'This is the date and time the message was delivered to the recipient phone' AFTER `acknowledgedOnDateTime`;
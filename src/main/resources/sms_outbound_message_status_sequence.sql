@@ -0,0 +1,41 @@
+-- Monotonically increasing status sequence, used as the cursor of the "/sms/report/changes" API.
+-- Every insert and every status change of a smsOutboundMessage row takes the next value from the
+-- smsOutboundMessageStatusSequence ticket table. The ticket table is MyISAM so that the sequence update is not
+-- part of the (InnoDB) transaction and does not serialize concurrent status updates until commit.
+CREATE TABLE IF NOT EXISTS `smsOutboundMessageStatusSequence` (
+ `id` BIGINT(20) NOT NULL AUTO_INCREMENT,
+ `stub` CHAR(1) NOT NULL DEFAULT '',
+ PRIMARY KEY (`id`),
+ UNIQUE KEY `stub` (`stub`)
+) ENGINE=MyISAM;
+
+ALTER TABLE `smsOutboundMessage`
+ ADD COLUMN `statusSequence` BIGINT(20) NULL COMMENT 'Value of the status sequence when the message was added or its status last changed' AFTER `deliveredOnDateTime`,
+ ADD INDEX `mifosTenantIdentifier_statusSequence` (`mifosTenantIdentifier`, `statusSequence`);
+
+-- existing messages get their id as status sequence, new values start after the highest id
+UPDATE `smsOutboundMessage` SET `statusSequence` = `id`;
+REPLACE INTO `smsOutboundMessageStatusSequence` (`id`, `stub`) SELECT IFNULL(MAX(`id`), 0), 'a' FROM `smsOutboundMessage`;
+
+DROP TRIGGER IF EXISTS `smsOutboundMessage_statusSequence_insert`;
+DROP TRIGGER IF EXISTS `smsOutboundMessage_statusSequence_update`;
+
+DELIMITER $$
+
+CREATE TRIGGER `smsOutboundMessage_statusSequence_insert` BEFORE INSERT ON `smsOutboundMessage`
+FOR EACH ROW
+BEGIN
+ REPLACE INTO `smsOutboundMessageStatusSequence` (`stub`) VALUES ('a');
+ SET NEW.`statusSequence` = LAST_INSERT_ID();
+END$$
+
+CREATE TRIGGER `smsOutboundMessage_statusSequence_update` BEFORE UPDATE ON `smsOutboundMessage`
+FOR EACH ROW
+BEGIN
+ IF NEW.`deliveryStatus` <> OLD.`deliveryStatus` THEN
+  REPLACE INTO `smsOutboundMessageStatusSequence` (`stub`) VALUES ('a');
+  SET NEW.`statusSequence` = LAST_INSERT_ID();
+ END IF;
+END$$
+
+DELIMITER ;
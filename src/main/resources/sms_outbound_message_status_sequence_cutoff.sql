@@ -0,0 +1,34 @@
+-- "/sms/report/changes" looks up the first held back status sequence of a tenant once per page, with the
+-- mifosTenantIdentifier_statusSequenceOnDateTime index, and uses it as the upper bound of the page.
+-- The ticket table becomes an InnoDB table that only gets inserts: taking a sequence no longer locks the whole table
+-- (MyISAM) and does not lock a row until commit (REPLACE of the single row in InnoDB). The send job scheduler deletes
+-- the old tickets, the highest one stays so that the auto-increment value survives a restart.
+ALTER TABLE `smsOutboundMessage`
+ ADD INDEX `mifosTenantIdentifier_statusSequenceOnDateTime` (`mifosTenantIdentifier`, `statusSequenceOnDateTime`, `statusSequence`);
+
+ALTER TABLE `smsOutboundMessageStatusSequence` DROP INDEX `stub`, ENGINE=InnoDB;
+
+DROP TRIGGER IF EXISTS `smsOutboundMessage_statusSequence_insert`;
+DROP TRIGGER IF EXISTS `smsOutboundMessage_statusSequence_update`;
+
+DELIMITER $$
+
+CREATE TRIGGER `smsOutboundMessage_statusSequence_insert` BEFORE INSERT ON `smsOutboundMessage`
+FOR EACH ROW
+BEGIN
+ INSERT INTO `smsOutboundMessageStatusSequence` (`stub`) VALUES ('a');
+ SET NEW.`statusSequence` = LAST_INSERT_ID();
+ SET NEW.`statusSequenceOnDateTime` = SYSDATE(3);
+END$$
+
+CREATE TRIGGER `smsOutboundMessage_statusSequence_update` BEFORE UPDATE ON `smsOutboundMessage`
+FOR EACH ROW
+BEGIN
+ IF NEW.`deliveryStatus` <> OLD.`deliveryStatus` THEN
+  INSERT INTO `smsOutboundMessageStatusSequence` (`stub`) VALUES ('a');
+  SET NEW.`statusSequence` = LAST_INSERT_ID();
+  SET NEW.`statusSequenceOnDateTime` = SYSDATE(3);
+ END IF;
+END$$
+
+DELIMITER ;
@@ -0,0 +1,32 @@
+-- The status sequences are taken before the transactions commit, so rows can commit out of sequence order. The
+-- "/sms/report/changes" API only returns the changes whose sequence was taken longer than
+-- api.reportChanges.holdBackMillis ago, and none after a more recent one, see ReadSmsOutboundMessageServiceImpl.
+-- SYSDATE() is the time the sequence was taken, not the start of the statement; replicas need binlog_format ROW or
+-- MIXED to keep the primary's value.
+ALTER TABLE `smsOutboundMessage`
+ ADD COLUMN `statusSequenceOnDateTime` DATETIME(3) NULL COMMENT 'Date and time the status sequence was taken, by the database clock' AFTER `statusSequence`;
+
+DROP TRIGGER IF EXISTS `smsOutboundMessage_statusSequence_insert`;
+DROP TRIGGER IF EXISTS `smsOutboundMessage_statusSequence_update`;
+
+DELIMITER $$
+
+CREATE TRIGGER `smsOutboundMessage_statusSequence_insert` BEFORE INSERT ON `smsOutboundMessage`
+FOR EACH ROW
+BEGIN
+ REPLACE INTO `smsOutboundMessageStatusSequence` (`stub`) VALUES ('a');
+ SET NEW.`statusSequence` = LAST_INSERT_ID();
+ SET NEW.`statusSequenceOnDateTime` = SYSDATE(3);
+END$$
+
+CREATE TRIGGER `smsOutboundMessage_statusSequence_update` BEFORE UPDATE ON `smsOutboundMessage`
+FOR EACH ROW
+BEGIN
+ IF NEW.`deliveryStatus` <> OLD.`deliveryStatus` THEN
+  REPLACE INTO `smsOutboundMessageStatusSequence` (`stub`) VALUES ('a');
+  SET NEW.`statusSequence` = LAST_INSERT_ID();
+  SET NEW.`statusSequenceOnDateTime` = SYSDATE(3);
+ END IF;
+END$$
+
+DELIMITER ;
@@ -0,0 +1,7 @@
+-- A message of a Mifos tenant is only added once, retries of "/sms/queue" return the existing message
+-- Duplicates added before this change are removed first, the oldest entry of each message is kept
+DELETE duplicate FROM `smsOutboundMessage` duplicate
+ JOIN `smsOutboundMessage` original ON original.`mifosTenantIdentifier` = duplicate.`mifosTenantIdentifier`
+ AND original.`internalId` = duplicate.`internalId` AND original.`id` < duplicate.`id`;
+
+ALTER TABLE `smsOutboundMessage` ADD UNIQUE INDEX `mifosTenantIdentifier_internalId` (`mifosTenantIdentifier`, `internalId`);
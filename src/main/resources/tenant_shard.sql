@@ -0,0 +1,5 @@
+-- Shard the messages of a tenant are stored in, tenants without a row stay in the default database
+create table if not exists tenantShard (
+mifosTenantIdentifier varchar(100) primary key,
+shard varchar(200) not null comment 'JNDI name of the DataSource of the shard e.g. jdbc/mifos-sms-gateway-shard1'
+);
@@ -0,0 +1,7 @@
+-- Webhook the delivery status changes of a tenant's messages are pushed to
+create table if not exists tenantWebhook (
+mifosTenantIdentifier varchar(100) primary key,
+url varchar(500) not null comment 'URL the status changes are POSTed to',
+authorizationHeader varchar(500) null comment 'Value of the Authorization header sent with each request',
+isEnabled tinyint(1) not null default 1
+);